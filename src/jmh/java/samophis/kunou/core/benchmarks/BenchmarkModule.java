@@ -0,0 +1,67 @@
+package samophis.kunou.core.benchmarks;
+
+import samophis.kunou.core.modules.AbstractModuleBase;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.modules.State;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A module doing as little as possible, so benchmarks measure the loader instead of the module.
+ * <br><p>It counts the messages it handled; the counter is only ever written by the module's own mailbox, so a plain volatile is enough.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public class BenchmarkModule extends AbstractModuleBase {
+    private final String name;
+    private final Collection<String> dependencies;
+    private volatile long processed;
+    public BenchmarkModule(@Nonnull ModuleLoader loader, @Nonnull String name, @Nonnull String... dependencies) {
+        super(loader);
+        this.name = name;
+        this.dependencies = dependencies.length == 0 ? Collections.emptySet() : Arrays.asList(dependencies);
+    }
+    public long getProcessed() {
+        return processed;
+    }
+    @Override
+    public String getName() {
+        return name;
+    }
+    @Override
+    public String getVersion() {
+        return "v0.2";
+    }
+    @Override
+    public String getAuthor() {
+        return "SamOphis";
+    }
+    @Override
+    public String getUrl() {
+        return "";
+    }
+    @Nonnull
+    @Override
+    public Collection<String> getDependencies() {
+        return dependencies;
+    }
+    @Override
+    public void onStart(@Nullable String... args) {
+        state = State.READY;
+    }
+    @Override
+    @SuppressWarnings("NonAtomicOperationOnVolatileField")
+    public void onMessage(@Nonnull String... args) {
+        processed++;
+    }
+    @Override
+    public void onDeath() {
+        state = State.DEAD;
+    }
+}
@@ -0,0 +1,39 @@
+package samophis.kunou.core.benchmarks;
+
+import samophis.kunou.core.util.ModuleExecutor;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Helpers shared by every benchmark.
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class BenchmarkSupport {
+    private BenchmarkSupport() {}
+
+    /**
+     * Creates the {@link ModuleExecutor ModuleExecutor} named by a benchmark's {@code executor} parameter.
+     * <br><p>{@code virtual} is supported but left out of the default parameter lists, since it needs Java 21+. Pass it with {@code -p executor=virtual}.</p>
+     */
+    @Nonnull
+    static ModuleExecutor newExecutor(@Nonnull String name) {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        switch (name) {
+            case "default":
+                return ModuleExecutor.getDefault();
+            case "fixed":
+                return ModuleExecutor.newFixedThreadPool(threads);
+            case "fair":
+                return ModuleExecutor.newFairThreadPool(threads);
+            case "stealing":
+                return ModuleExecutor.newWorkStealingPool(threads);
+            case "virtual":
+                return ModuleExecutor.newVirtualThreadExecutor();
+            default:
+                throw new IllegalArgumentException("Unknown executor: " + name);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package samophis.kunou.core.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import samophis.kunou.core.modules.Message;
+import samophis.kunou.core.modules.ModuleHandle;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.util.ModuleExecutor;
+import samophis.kunou.core.util.MpscQueue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures {@link ModuleLoader#sendMessage(samophis.kunou.core.modules.Module, String...)} throughput with one and with many producers,
+ * and the round-trip latency of a single message. The handle benchmarks send through a pre-resolved {@link ModuleHandle ModuleHandle} instead;
+ * run with {@code -prof gc} they should report close to zero bytes allocated per operation.
+ * <br><p>Mailboxes are unbounded, so throughput benchmarks apply a coarse window: every {@value #WINDOW} sends, a producer waits until the module is
+ * no more than {@value #BACKLOG} messages behind. Otherwise the benchmark would only measure how fast the heap fills up.
+ * The window keeps even four producers within the preallocated part of the mailbox queue ({@link MpscQueue#DEFAULT_CAPACITY}), so what's measured is the steady state.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+    private static final int WINDOW = 128;
+    private static final int BACKLOG = MpscQueue.DEFAULT_CAPACITY - 4 * WINDOW;
+    private static final String[] ARGS = {"benchmark"};
+    private static final Message<String[]> MESSAGE = Message.ofStrings(ARGS);
+    @Param({"default", "fixed", "stealing"})
+    public String executor;
+    private ModuleExecutor moduleExecutor;
+    private ModuleLoader loader;
+    private BenchmarkModule module;
+    private ModuleHandle handle;
+    private LongAdder sent;
+    @Setup(Level.Trial)
+    public void setUp() {
+        moduleExecutor = BenchmarkSupport.newExecutor(executor);
+        loader = ModuleLoader.newInstance(moduleExecutor);
+        module = new BenchmarkModule(loader, "Benchmark Module");
+        handle = loader.addModule(module);
+        loader.startModuleAsync(module).toCompletableFuture().join();
+        sent = new LongAdder();
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        loader.stopAll().toCompletableFuture().join();
+        moduleExecutor.shutdown();
+        moduleExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    @State(Scope.Thread)
+    public static class Producer {
+        private int count;
+    }
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void sendSingleProducer(Producer producer) {
+        loader.sendMessage(module, ARGS);
+        throttle(producer);
+    }
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void sendManyProducers(Producer producer) {
+        loader.sendMessage(module, ARGS);
+        throttle(producer);
+    }
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void sendThroughHandle(Producer producer) {
+        handle.sendMessage(ARGS);
+        throttle(producer);
+    }
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void sendTypedThroughHandle(Producer producer) {
+        handle.sendTypedMessage(MESSAGE);
+        throttle(producer);
+    }
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void sendThroughHandleManyProducers(Producer producer) {
+        handle.sendMessage(ARGS);
+        throttle(producer);
+    }
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object sendAndAwait() {
+        return loader.sendMessageAsync(module, ARGS).toCompletableFuture().join();
+    }
+    private void throttle(Producer producer) {
+        if (++producer.count % WINDOW != 0)
+            return;
+        sent.add(WINDOW);
+        long allowed = sent.sum() - BACKLOG;
+        while (module.getProcessed() < allowed)
+            Thread.yield();
+    }
+}
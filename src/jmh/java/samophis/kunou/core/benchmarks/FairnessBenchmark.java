@@ -0,0 +1,105 @@
+package samophis.kunou.core.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import samophis.kunou.core.modules.MailboxConfig;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.modules.SchedulingClass;
+import samophis.kunou.core.util.ModuleExecutor;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round-trip latency of a {@link SchedulingClass#CRITICAL CRITICAL} module while {@link SchedulingClass#BULK BULK} modules keep every thread busy,
+ * on a plain fixed pool (which drains mailboxes in arrival order and ignores scheduling classes) against a fair one of the same size.
+ * <br><p>There are twice as many bulk modules as threads, each with a backlog of messages burning {@value #BULK_WORK_MICROS} microseconds of CPU apiece, topped up before every iteration.
+ * On the fixed pool, a critical message waits behind a drain of every other saturated module; on the fair pool, it waits for at most one message in progress.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class FairnessBenchmark {
+    private static final long BULK_WORK_MICROS = 100;
+    /* -- more than an iteration's worth of work, so the bulk modules never run dry -- */
+    private static final int BULK_BACKLOG = 20_000;
+    private static final String[] ARGS = {"ping"};
+    @Param({"fixed", "fair"})
+    public String executor;
+    private ModuleExecutor moduleExecutor;
+    private ModuleLoader loader;
+    private BenchmarkModule critical;
+    private BusyModule[] bulk;
+    @Setup(Level.Trial)
+    public void setUp() {
+        moduleExecutor = BenchmarkSupport.newExecutor(executor);
+        loader = ModuleLoader.newInstance(moduleExecutor);
+        critical = new BenchmarkModule(loader, "Critical");
+        loader.addModule(critical, MailboxConfig.unbounded().withScheduling(SchedulingClass.CRITICAL, 1));
+        bulk = new BusyModule[2 * Math.max(2, Runtime.getRuntime().availableProcessors())];
+        for (int i = 0; i < bulk.length; i++) {
+            bulk[i] = new BusyModule(loader, "Bulk-" + i);
+            loader.addModule(bulk[i], MailboxConfig.unbounded().withScheduling(SchedulingClass.BULK, 1));
+        }
+        loader.startAll().toCompletableFuture().join();
+    }
+    @Setup(Level.Iteration)
+    public void saturate() {
+        for (BusyModule module : bulk) {
+            module.busy = true;
+            for (int i = 0; i < BULK_BACKLOG; i++)
+                loader.sendMessage(module, ARGS);
+        }
+    }
+    @TearDown(Level.Iteration)
+    public void drain() {
+        /* -- whatever is left of the backlog is skipped rather than worked through -- */
+        for (BusyModule module : bulk)
+            module.busy = false;
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        loader.stopAll().toCompletableFuture().join();
+        moduleExecutor.shutdown();
+        moduleExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object criticalRoundTrip() {
+        return loader.sendMessageAsync(critical, ARGS).toCompletableFuture().join();
+    }
+    public static class BusyModule extends BenchmarkModule {
+        private volatile boolean busy;
+        public BusyModule(@Nonnull ModuleLoader loader, @Nonnull String name) {
+            super(loader, name);
+        }
+        @Override
+        public void onMessage(@Nonnull String... args) {
+            if (!busy)
+                return;
+            long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(BULK_WORK_MICROS);
+            while (System.nanoTime() < end) {
+                /* -- burning CPU like an encoder would, without ever yielding the thread -- */
+            }
+        }
+    }
+}
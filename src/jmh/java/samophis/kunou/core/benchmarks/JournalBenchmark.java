@@ -0,0 +1,91 @@
+package samophis.kunou.core.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import samophis.kunou.core.modules.JournalConfig;
+import samophis.kunou.core.modules.MailboxConfig;
+import samophis.kunou.core.modules.ModuleHandle;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.modules.SyncPolicy;
+import samophis.kunou.core.util.ModuleExecutor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures sending messages to a {@link MailboxConfig#withJournal(JournalConfig) durable} module, for every {@link SyncPolicy SyncPolicy} but
+ * {@link SyncPolicy#ALWAYS ALWAYS} (which only measures the disk), against a plain module as the baseline.
+ * <br><p>Like {@link DispatchBenchmark DispatchBenchmark}, the producer waits every so often for the module to catch up, so the journal never grows past a few segments
+ * and acknowledgements are part of the cost. Journals are written to a fresh temporary directory, deleted after the trial.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+    private static final int WINDOW = 64;
+    private static final int BACKLOG = 4096;
+    private static final String[] MESSAGE = {"play", "never gonna give you up"};
+    @Param({"plain", "NONE", "BATCHED"})
+    public String journal;
+    @Param({"fixed"})
+    public String executor;
+    private Path directory;
+    private ModuleExecutor moduleExecutor;
+    private ModuleLoader loader;
+    private BenchmarkModule module;
+    private ModuleHandle handle;
+    private long sent;
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("kunou-journal");
+        moduleExecutor = BenchmarkSupport.newExecutor(executor);
+        loader = ModuleLoader.newInstance(moduleExecutor);
+        module = new BenchmarkModule(loader, "Journaled");
+        MailboxConfig config = MailboxConfig.unbounded();
+        if (!journal.equals("plain"))
+            config = config.withJournal(JournalConfig.of(directory).withSyncPolicy(SyncPolicy.valueOf(journal)));
+        handle = loader.addModule(module, config);
+        loader.startAll().toCompletableFuture().join();
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException, IOException {
+        loader.stopAll().toCompletableFuture().join();
+        moduleExecutor.shutdown();
+        moduleExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+    @Benchmark
+    @Threads(1)
+    public void send() {
+        handle.sendMessage(MESSAGE);
+        if (++sent % WINDOW != 0)
+            return;
+        while (module.getProcessed() < sent - BACKLOG)
+            Thread.yield();
+    }
+}
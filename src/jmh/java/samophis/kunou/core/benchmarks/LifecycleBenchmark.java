@@ -0,0 +1,74 @@
+package samophis.kunou.core.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.util.ModuleExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes {@link ModuleLoader#startAll()} to bring {@code modules} fresh modules to {@link samophis.kunou.core.modules.State#READY READY}.
+ * <br><p>Every measurement is a single shot on a brand new loader, so nothing is ever restarted. {@code flat} modules have no dependencies at all,
+ * while {@code layered} ones are split into layers of eight, each module depending on every module of the previous layer.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+@Fork(1)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class LifecycleBenchmark {
+    private static final int LAYER_SIZE = 8;
+    @Param({"1", "16", "64"})
+    public int modules;
+    @Param({"flat", "layered"})
+    public String topology;
+    @Param({"default", "fixed", "stealing"})
+    public String executor;
+    private ModuleExecutor moduleExecutor;
+    private ModuleLoader loader;
+    @Setup(Level.Trial)
+    public void setUpExecutor() {
+        moduleExecutor = BenchmarkSupport.newExecutor(executor);
+    }
+    @Setup(Level.Iteration)
+    public void setUpLoader() {
+        loader = ModuleLoader.newInstance(moduleExecutor);
+        for (int i = 0; i < modules; i++) {
+            int layer = i / LAYER_SIZE;
+            String[] dependencies = new String[topology.equals("layered") && layer > 0 ? LAYER_SIZE : 0];
+            for (int j = 0; j < dependencies.length; j++)
+                dependencies[j] = "Module-" + ((layer - 1) * LAYER_SIZE + j);
+            loader.addModule(new BenchmarkModule(loader, "Module-" + i, dependencies));
+        }
+    }
+    @TearDown(Level.Iteration)
+    public void tearDownLoader() {
+        loader.stopAll().toCompletableFuture().join();
+    }
+    @TearDown(Level.Trial)
+    public void tearDownExecutor() throws InterruptedException {
+        moduleExecutor.shutdown();
+        moduleExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    @Benchmark
+    public Object startAllToReady() {
+        return loader.startAll().toCompletableFuture().join();
+    }
+}
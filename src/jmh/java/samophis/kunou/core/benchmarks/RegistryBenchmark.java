@@ -0,0 +1,76 @@
+package samophis.kunou.core.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ModuleLoader;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of registry lookups ({@link ModuleLoader#getModuleByName(String)}) under contention.
+ * <br><p>{@code lookup} runs readers only, while the {@code contended} group pits seven readers against one thread constantly re-adding modules,
+ * which republishes the registry on every call.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class RegistryBenchmark {
+    @Param({"8", "64"})
+    public int modules;
+    private ModuleLoader loader;
+    private String[] names;
+    private Module[] instances;
+    @Setup(Level.Trial)
+    public void setUp() {
+        loader = ModuleLoader.newInstance();
+        names = new String[modules];
+        instances = new Module[modules];
+        for (int i = 0; i < modules; i++) {
+            names[i] = "Module-" + i;
+            instances[i] = new BenchmarkModule(loader, names[i]);
+            loader.addModule(instances[i]);
+        }
+    }
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index;
+    }
+    @Benchmark
+    @Threads(8)
+    public Module lookup(Cursor cursor) {
+        return loader.getModuleByName(names[cursor.index++ & (modules - 1)]);
+    }
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(7)
+    public Module contendedLookup(Cursor cursor) {
+        return loader.getModuleByName(names[cursor.index++ & (modules - 1)]);
+    }
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedWrite(Cursor cursor) {
+        loader.addModule(instances[cursor.index++ & (modules - 1)]);
+    }
+}
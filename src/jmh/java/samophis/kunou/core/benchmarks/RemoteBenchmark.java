@@ -0,0 +1,98 @@
+package samophis.kunou.core.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import samophis.kunou.core.modules.Message;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.remote.RemoteLink;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures sending messages to, and asking, a module hosted in a child JVM behind a {@link RemoteLink RemoteLink}, against the same module running locally.
+ * <br><p>Every {@value #WINDOW} sends, the producer asks the module how many messages it handled, which waits for everything sent before it -- so the link is measured
+ * with a full pipeline, and the child is never more than one window behind.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class RemoteBenchmark {
+    private static final int WINDOW = 4096;
+    private static final String[] ARGS = {"benchmark"};
+    private static final Message<String> PING = Message.of("ping");
+    @Param({"local", "remote"})
+    public String hosting;
+    private ModuleLoader loader;
+    private RemoteLink link;
+    private Module module;
+    private long sent;
+    @Setup(Level.Trial)
+    public void setUp() {
+        loader = ModuleLoader.newInstance();
+        if (hosting.equals("remote")) {
+            link = RemoteLink.launch(loader, EchoModule.class.getName());
+            module = link.getModules().get(0);
+        } else {
+            module = new EchoModule(loader);
+        }
+        loader.addModule(module);
+        loader.startModuleAsync(module).toCompletableFuture().join();
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loader.stopAll().toCompletableFuture().join();
+        if (link != null)
+            link.close();
+    }
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void send() {
+        loader.sendMessage(module, ARGS);
+        if (++sent % WINDOW == 0)
+            loader.ask(module, PING, String.class, 30, TimeUnit.SECONDS).toCompletableFuture().join();
+    }
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object askRoundTrip() {
+        return loader.ask(module, PING, String.class, 30, TimeUnit.SECONDS).toCompletableFuture().join();
+    }
+
+    /**
+     * A {@link BenchmarkModule BenchmarkModule} answering every ask with the amount of messages it handled so far. Public, so a child JVM can construct it.
+     */
+    public static class EchoModule extends BenchmarkModule {
+        public EchoModule(@Nonnull ModuleLoader loader) {
+            super(loader, "Echo Module");
+        }
+        @Override
+        public void onTypedMessage(@Nonnull Message<?> message) {
+            if (message.expectsReply())
+                message.reply(Long.toString(getProcessed()));
+            else
+                super.onTypedMessage(message);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package samophis.kunou.core.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import samophis.kunou.core.util.HashedWheelTimer;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scheduling and cancelling one timeout while {@code pending} others are waiting, on a {@link HashedWheelTimer HashedWheelTimer}
+ * and, as a baseline, on a {@link ScheduledThreadPoolExecutor ScheduledThreadPoolExecutor} removing cancelled tasks.
+ * <br><p>This is the life of almost every timeout (an ask answered in time, a heartbeat reset by traffic). The wheel should stay flat as {@code pending} grows,
+ * while the executor pays for its heap on both ends.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class TimerBenchmark {
+    private static final Runnable TASK = () -> {};
+    @Param({"0", "10000", "100000"})
+    public int pending;
+    private HashedWheelTimer wheel;
+    private ScheduledThreadPoolExecutor executor;
+    @Setup(Level.Trial)
+    public void setUp() {
+        wheel = new HashedWheelTimer("benchmark-wheel");
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        /* -- spread over the next hour, so none of them expire during the run -- */
+        for (int i = 0; i < pending; i++) {
+            long delay = TimeUnit.MINUTES.toMillis(10) + i % TimeUnit.MINUTES.toMillis(50);
+            wheel.newTimeout(TASK, delay, TimeUnit.MILLISECONDS);
+            executor.schedule(TASK, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        wheel.stop();
+        executor.shutdownNow();
+    }
+    @Benchmark
+    @Threads(1)
+    public boolean wheel() {
+        return wheel.newTimeout(TASK, 30, TimeUnit.SECONDS).cancel();
+    }
+    @Benchmark
+    @Threads(1)
+    public boolean executor() {
+        return executor.schedule(TASK, 30, TimeUnit.SECONDS).cancel(false);
+    }
+}
@@ -0,0 +1,125 @@
+package samophis.kunou.core.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import samophis.kunou.core.modules.Message;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.util.ModuleExecutor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures broadcasting one event to {@value #SUBSCRIBERS} interested modules out of a growing total, through {@link ModuleLoader#publish(String, Message)}
+ * and, as a baseline, by looping over every module and sending to the interested ones one by one.
+ * <br><p>{@code publish} should barely move as {@code modules} grows, while the baseline pays for every module. {@code publishBatch} sends {@value #BATCH} events per operation.
+ * Like {@link DispatchBenchmark DispatchBenchmark}, the producer waits every so often for the slowest subscriber to catch up.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class TopicBenchmark {
+    private static final int SUBSCRIBERS = 15;
+    private static final int BATCH = 16;
+    private static final int WINDOW = 64;
+    private static final int BACKLOG = 512;
+    private static final String TOPIC = "events";
+    private static final Message<String[]> MESSAGE = Message.ofStrings("event");
+    private static final List<Message<String[]>> MESSAGES = Collections.nCopies(BATCH, MESSAGE);
+    @Param({"16", "256"})
+    public int modules;
+    @Param({"fixed"})
+    public String executor;
+    private ModuleExecutor moduleExecutor;
+    private ModuleLoader loader;
+    private BenchmarkModule[] subscribers;
+    private long sent;
+    private int count;
+    @Setup(Level.Trial)
+    public void setUp() {
+        moduleExecutor = BenchmarkSupport.newExecutor(executor);
+        loader = ModuleLoader.newInstance(moduleExecutor);
+        subscribers = new BenchmarkModule[SUBSCRIBERS];
+        for (int i = 0; i < modules; i++) {
+            BenchmarkModule module = new BenchmarkModule(loader, "Module-" + i);
+            loader.addModule(module);
+            /* -- spread the subscribers out, so the baseline can't get lucky with iteration order -- */
+            if (i % (modules / SUBSCRIBERS) == 0 && i / (modules / SUBSCRIBERS) < SUBSCRIBERS) {
+                subscribers[i / (modules / SUBSCRIBERS)] = module;
+                loader.subscribe(module, TOPIC);
+            }
+        }
+        loader.startAll().toCompletableFuture().join();
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        loader.stopAll().toCompletableFuture().join();
+        moduleExecutor.shutdown();
+        moduleExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    @Benchmark
+    @Threads(1)
+    public int publish() {
+        int delivered = loader.publish(TOPIC, MESSAGE);
+        throttle(1);
+        return delivered;
+    }
+    @Benchmark
+    @Threads(1)
+    public int publishBatch() {
+        int delivered = loader.publishBatch(TOPIC, MESSAGES);
+        throttle(BATCH);
+        return delivered;
+    }
+    @Benchmark
+    @Threads(1)
+    public int sendToEach() {
+        int delivered = 0;
+        for (Module module : loader.getModulesAsList()) {
+            if (isSubscriber(module)) {
+                loader.sendTypedMessage(module, MESSAGE);
+                delivered++;
+            }
+        }
+        throttle(1);
+        return delivered;
+    }
+    private boolean isSubscriber(Module module) {
+        for (BenchmarkModule subscriber : subscribers) {
+            if (subscriber == module)
+                return true;
+        }
+        return false;
+    }
+    private void throttle(int events) {
+        sent += events;
+        if (++count % WINDOW != 0)
+            return;
+        long allowed = sent - BACKLOG;
+        for (BenchmarkModule subscriber : subscribers) {
+            while (subscriber.getProcessed() < allowed)
+                Thread.yield();
+        }
+    }
+}
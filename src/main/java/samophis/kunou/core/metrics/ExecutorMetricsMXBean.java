@@ -0,0 +1,26 @@
+package samophis.kunou.core.metrics;
+
+/**
+ * The runtime metrics of the {@link samophis.kunou.core.util.ModuleExecutor ModuleExecutor} a {@link samophis.kunou.core.modules.ModuleLoader ModuleLoader} runs on.
+ * <br><p>Pool statistics are point-in-time estimates taken from the underlying pools; custom executors that can't tell report {@code -1}.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public interface ExecutorMetricsMXBean {
+    /** @return The amount of threads currently in the executor's pools. */
+    int getPoolSize();
+
+    /** @return The approximate amount of threads currently running module code. */
+    int getActiveThreads();
+
+    /** @return The approximate amount of tasks (mailbox drains) waiting for a thread. */
+    long getQueuedTasks();
+
+    /** @return The approximate amount of tasks (mailbox drains) completed so far. */
+    long getCompletedTasks();
+
+    /** @return The amount of live module threads in the whole JVM, across every executor and the {@link samophis.kunou.core.modules.Module#runAsync(Runnable) runAsync} pool. */
+    int getLiveModuleThreads();
+}
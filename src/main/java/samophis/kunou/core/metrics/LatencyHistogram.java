@@ -0,0 +1,104 @@
+package samophis.kunou.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free latency histogram with power-of-two nanosecond buckets.
+ * <br><p>All buckets are preallocated primitives: recording a value is one bit-scan and a couple of atomic increments, and never allocates.
+ * Bucket {@code i} holds values in {@code [2^i, 2^(i+1))} nanoseconds (bucket 0 also holds zero), and the last bucket holds everything larger.
+ * Percentiles are therefore approximate, reported as the upper bound of the bucket they fall into (capped by the highest recorded value).</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class LatencyHistogram {
+    /** The amount of buckets in every histogram. The last one starts at 2^39 nanoseconds, a bit over nine minutes. */
+    public static final int BUCKETS = 40;
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong total;
+    private final AtomicLong max;
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.count = new AtomicLong();
+        this.total = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a single latency. Negative values are treated as zero.
+     * @param nanos The latency, in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int bucket = value == 0 ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(value));
+        buckets.getAndIncrement(bucket);
+        count.getAndIncrement();
+        total.getAndAdd(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value));
+    }
+
+    /**
+     * Returns the amount of latencies recorded so far.
+     * @return The amount of recorded latencies.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean of every latency recorded so far, in nanoseconds.
+     * @return The mean latency, or 0 if nothing was recorded yet.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    /**
+     * Returns the highest latency recorded so far, in nanoseconds.
+     * @return The highest latency, or 0 if nothing was recorded yet.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns an approximation of a percentile, in nanoseconds: the upper bound of the bucket the percentile falls into, capped by {@link #getMax()}.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The approximated percentile, or 0 if nothing was recorded yet.
+     * @throws IllegalArgumentException If {@code percentile} isn't between 0 and 100.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("percentile out of range: " + percentile);
+        long[] snapshot = getBuckets();
+        long n = 0;
+        for (long bucket : snapshot)
+            n += bucket;
+        if (n == 0)
+            return 0;
+        long rank = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && seen > 0)
+                return i == BUCKETS - 1 ? max.get() : Math.min((1L << (i + 1)) - 1, max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Returns a copy of the bucket counts. Bucket {@code i} counts latencies in {@code [2^i, 2^(i+1))} nanoseconds.
+     * @return A brand new array of {@value #BUCKETS} bucket counts.
+     */
+    public long[] getBuckets() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            snapshot[i] = buckets.get(i);
+        return snapshot;
+    }
+}
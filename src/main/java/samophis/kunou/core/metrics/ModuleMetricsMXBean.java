@@ -0,0 +1,88 @@
+package samophis.kunou.core.metrics;
+
+/**
+ * The runtime metrics a {@link samophis.kunou.core.modules.ModuleLoader ModuleLoader} keeps for each of its {@link samophis.kunou.core.modules.Module Modules}.
+ * <br><p>Counters are exact. Execution latency (how long a callback ran) is recorded for every event, while dispatch latency
+ * (how long an event waited in the mailbox before running) is sampled, so producers don't pay for a clock read on every send.
+ * All latencies are in nanoseconds; see {@link LatencyHistogram LatencyHistogram} for how they're bucketed.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public interface ModuleMetricsMXBean {
+    /** @return The name of the module. */
+    String getModuleName();
+
+    /** @return The version of the module. */
+    String getModuleVersion();
+
+    /** @return The lifecycle state the loader tracks for the module, as a String. */
+    String getState();
+
+    /** @return The amount of messages accepted for the module (every message of a batch counts). */
+    long getMessagesReceived();
+
+    /** @return The amount of events (start-ups, messages, batches and shut-downs) queued in the module's mailbox so far. */
+    long getEventsQueued();
+
+    /** @return The amount of events the module finished handling, successfully or not. */
+    long getEventsProcessed();
+
+    /** @return The amount of events that threw an uncaught exception. */
+    long getEventsFailed();
+
+    /** @return The amount of messages refused because the module's mailbox was full. */
+    long getMessagesRejected();
+
+    /** @return The amount of messages dropped to make room for newer ones. */
+    long getMessagesDropped();
+
+    /** @return The amount of messages merged into an older message with the same key. */
+    long getMessagesCoalesced();
+
+    /** @return The amount of unacknowledged messages replayed from the module's journal after a crash. */
+    long getMessagesReplayed();
+
+    /** @return The amount of journaled messages not acknowledged yet, or -1 if the mailbox isn't durable. */
+    long getJournalBacklog();
+
+    /** @return The amount of events currently waiting in the module's mailbox. */
+    long getQueueDepth();
+
+    /** @return The maximum amount of messages waiting in the module's mailbox, or {@link Integer#MAX_VALUE} if it's unbounded. */
+    int getMailboxCapacity();
+
+    /** @return The amount of messages counted against the mailbox capacity right now, or -1 if the mailbox is unbounded (and doesn't count them). */
+    int getPendingMessages();
+
+    /** @return The mean dispatch latency. */
+    double getDispatchLatencyMean();
+
+    /** @return The approximate median dispatch latency. */
+    long getDispatchLatencyP50();
+
+    /** @return The approximate 99th percentile dispatch latency. */
+    long getDispatchLatencyP99();
+
+    /** @return The highest sampled dispatch latency. */
+    long getDispatchLatencyMax();
+
+    /** @return The dispatch latency bucket counts. */
+    long[] getDispatchLatencyBuckets();
+
+    /** @return The mean execution latency. */
+    double getExecutionLatencyMean();
+
+    /** @return The approximate median execution latency. */
+    long getExecutionLatencyP50();
+
+    /** @return The approximate 99th percentile execution latency. */
+    long getExecutionLatencyP99();
+
+    /** @return The highest execution latency. */
+    long getExecutionLatencyMax();
+
+    /** @return The execution latency bucket counts. */
+    long[] getExecutionLatencyBuckets();
+}
@@ -0,0 +1,5 @@
+/**
+ * Contains the runtime metrics KunouCore keeps for its loaders and modules, published as JMX MXBeans.
+ */
+
+package samophis.kunou.core.metrics;
\ No newline at end of file
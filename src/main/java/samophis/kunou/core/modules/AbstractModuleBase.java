@@ -41,7 +41,9 @@ public abstract class AbstractModuleBase implements Module {
     }
     @Override
     public void onMessage(@Nonnull String... args) {
-        LOGGER.info("Sending {} to EMPTY {} {} by {} on Thread: {}", Arrays.toString(args), getName(), getVersion(), getAuthor(), Thread.currentThread().getName());
+        /* -- messages are the hot path; only pay for formatting them when someone actually reads debug logs -- */
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Sending {} to EMPTY {} {} by {} on Thread: {}", Arrays.toString(args), getName(), getVersion(), getAuthor(), Thread.currentThread().getName());
     }
     @Override
     public void onDeath() {
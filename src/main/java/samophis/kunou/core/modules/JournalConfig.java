@@ -0,0 +1,150 @@
+package samophis.kunou.core.modules;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable description of the journal making a mailbox durable, attached through {@link MailboxConfig#withJournal(JournalConfig)}.
+ * <br><p>A durable mailbox writes every message it accepts to a memory-mapped, segmented log on the local disk, in a directory of its own under {@link #getDirectory() directory}
+ * (named after the module). Once the module has handled a message, it's acknowledged; if the JVM dies before that, the next {@link ModuleLoader#startModule(Module) start} of
+ * the module replays every message that was never acknowledged, in order, before accepting anything new. Delivery is <b>at-least-once</b>: a message handled right before a crash
+ * may be handled again after it.
+ * <br><br>Only payloads the journal knows how to store can be sent to a durable module: String arguments (single or batched) and {@link Message Messages} carrying a {@code String},
+ * a {@code String[]} or a {@link java.nio.ByteBuffer ByteBuffer} -- anything else is refused. Replayed messages lose their follow-up code and {@link ReplyChannel reply channel}.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class JournalConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalConfig.class);
+    /** The size of a segment used by {@link #of(Path)}, in bytes. */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    /** The amount of messages forcing a sync used by {@link #of(Path)}. */
+    public static final int DEFAULT_SYNC_BATCH = 1024;
+    /** The longest time between two syncs used by {@link #of(Path)}, in milliseconds. */
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
+    private final Path directory;
+    private final int segmentSize;
+    private final SyncPolicy syncPolicy;
+    private final int syncBatch;
+    private final long syncIntervalNanos;
+    private JournalConfig(@Nonnull Path directory, int segmentSize, @Nonnull SyncPolicy syncPolicy, int syncBatch, long syncIntervalNanos) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncPolicy = syncPolicy;
+        this.syncBatch = syncBatch;
+        this.syncIntervalNanos = syncIntervalNanos;
+    }
+
+    /**
+     * Creates a config storing journals under a directory, with {@value #DEFAULT_SEGMENT_SIZE}-byte segments and the {@link SyncPolicy#BATCHED BATCHED} sync policy
+     * (every {@value #DEFAULT_SYNC_BATCH} messages or {@value #DEFAULT_SYNC_INTERVAL_MILLIS} milliseconds).
+     * @param directory The <b>not-null</b> directory to store journals in. Created if it doesn't exist yet.
+     * @return A brand new JournalConfig.
+     * @throws NullPointerException If {@code directory} is null.
+     */
+    @Nonnull
+    public static JournalConfig of(@Nonnull Path directory) {
+        Objects.requireNonNull(directory);
+        return new JournalConfig(directory, DEFAULT_SEGMENT_SIZE, SyncPolicy.BATCHED, DEFAULT_SYNC_BATCH, TimeUnit.MILLISECONDS.toNanos(DEFAULT_SYNC_INTERVAL_MILLIS));
+    }
+
+    /**
+     * Creates a copy of this config with another sync policy, keeping the batch size and interval.
+     * @param policy The <b>not-null</b> {@link SyncPolicy SyncPolicy}.
+     * @return A brand new JournalConfig.
+     * @throws NullPointerException If {@code policy} is null.
+     */
+    @Nonnull
+    public JournalConfig withSyncPolicy(@Nonnull SyncPolicy policy) {
+        return new JournalConfig(directory, segmentSize, Objects.requireNonNull(policy), syncBatch, syncIntervalNanos);
+    }
+
+    /**
+     * Creates a copy of this config using the {@link SyncPolicy#BATCHED BATCHED} sync policy with another batch size and interval.
+     * @param messages The amount of messages written since the last sync that forces another one. Must be positive.
+     * @param interval The longest time between two syncs. Must be positive.
+     * @param unit The <b>not-null</b> unit of {@code interval}.
+     * @return A brand new JournalConfig.
+     * @throws NullPointerException If {@code unit} is null.
+     * @throws IllegalArgumentException If {@code messages} or {@code interval} aren't positive.
+     */
+    @Nonnull
+    public JournalConfig withSyncBatch(int messages, long interval, @Nonnull TimeUnit unit) {
+        Objects.requireNonNull(unit);
+        if (messages <= 0 || interval <= 0) {
+            LOGGER.warn("Attempt to create a journal config with a non-positive sync batch or interval!");
+            throw new IllegalArgumentException("messages <= 0 || interval <= 0");
+        }
+        return new JournalConfig(directory, segmentSize, SyncPolicy.BATCHED, messages, unit.toNanos(interval));
+    }
+
+    /**
+     * Creates a copy of this config with another segment size.
+     * <br><p>Segments are mapped whole, so they should be large enough to make rolling over rare, but each one costs that much address space (and, once written to, disk space)
+     * until every message in it was acknowledged. A message larger than a segment gets a segment of its own.</p>
+     * @param bytes The size of a segment in bytes. Must be at least 4096.
+     * @return A brand new JournalConfig.
+     * @throws IllegalArgumentException If {@code bytes} is smaller than 4096.
+     */
+    @Nonnull
+    public JournalConfig withSegmentSize(int bytes) {
+        if (bytes < 4096) {
+            LOGGER.warn("Attempt to create a journal config with segments smaller than 4096 bytes!");
+            throw new IllegalArgumentException("bytes < 4096");
+        }
+        return new JournalConfig(directory, bytes, syncPolicy, syncBatch, syncIntervalNanos);
+    }
+
+    /**
+     * Returns the directory journals are stored under, one sub-directory per module.
+     * @return The <b>not-null</b> directory.
+     */
+    @Nonnull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the size of a journal segment.
+     * @return The size of a segment in bytes.
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Returns when the journal is forced to disk.
+     * @return The <b>not-null</b> {@link SyncPolicy SyncPolicy}.
+     */
+    @Nonnull
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * Returns the amount of messages forcing a sync with the {@link SyncPolicy#BATCHED BATCHED} policy.
+     * @return The batch size.
+     */
+    public int getSyncBatch() {
+        return syncBatch;
+    }
+
+    /**
+     * Returns the longest time between two syncs with the {@link SyncPolicy#BATCHED BATCHED} policy. Acknowledgements are also synced this often with {@link SyncPolicy#ALWAYS ALWAYS}.
+     * @return The interval in nanoseconds.
+     */
+    public long getSyncIntervalNanos() {
+        return syncIntervalNanos;
+    }
+    @Override
+    public String toString() {
+        return "JournalConfig{" + directory + ", " + syncPolicy + ", segments of " + segmentSize + " bytes}";
+    }
+}
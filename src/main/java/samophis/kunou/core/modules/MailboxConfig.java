@@ -0,0 +1,238 @@
+package samophis.kunou.core.modules;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * An immutable description of the mailbox a {@link Module Module} gets when it's {@link ModuleLoader#addModule(Module, MailboxConfig) added} to a loader.
+ * <br><p>Mailboxes are {@link #unbounded() unbounded} by default. A bounded mailbox holds at most {@link #getCapacity() capacity} messages waiting to be handled,
+ * and applies its {@link OverloadPolicy OverloadPolicy} to anything sent beyond that -- so one slow module can fall behind without taking the whole process down with it.
+ * Producers can check {@link ModuleHandle#isSaturated()} to back off before that happens.
+ * <br><br>Any config can also be made {@link #withJournal(JournalConfig) durable}, so the messages waiting in the mailbox survive the JVM dying,
+ * and be given a {@link #withScheduling(SchedulingClass, int) scheduling class and weight}, which fair executors use to share their threads between modules.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class MailboxConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MailboxConfig.class);
+    /** The largest {@link #getWeight() weight} a module can be given within its scheduling class. */
+    public static final int MAX_WEIGHT = 100;
+    private static final MailboxConfig UNBOUNDED = new MailboxConfig(Integer.MAX_VALUE, OverloadPolicy.REJECT, 0, null, null, SchedulingClass.NORMAL, 1);
+    private final int capacity;
+    private final OverloadPolicy policy;
+    private final long blockTimeoutNanos;
+    private final Function<? super Message<?>, ?> coalescingKey;
+    private final JournalConfig journal;
+    private final SchedulingClass schedulingClass;
+    private final int weight;
+    private MailboxConfig(int capacity, @Nonnull OverloadPolicy policy, long blockTimeoutNanos, @Nullable Function<? super Message<?>, ?> coalescingKey, @Nullable JournalConfig journal,
+                          @Nonnull SchedulingClass schedulingClass, int weight) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.blockTimeoutNanos = blockTimeoutNanos;
+        this.coalescingKey = coalescingKey;
+        this.journal = journal;
+        this.schedulingClass = schedulingClass;
+        this.weight = weight;
+    }
+
+    /**
+     * Returns the default config: a mailbox that never refuses a message.
+     * @return The <b>not-null</b> unbounded config.
+     */
+    @Nonnull
+    public static MailboxConfig unbounded() {
+        return UNBOUNDED;
+    }
+
+    /**
+     * Creates a config for a bounded mailbox {@link OverloadPolicy#REJECT refusing} messages once full.
+     * @param capacity The maximum amount of messages waiting in the mailbox. Must be positive.
+     * @return A brand new MailboxConfig.
+     * @throws IllegalArgumentException If {@code capacity} isn't positive.
+     */
+    @Nonnull
+    public static MailboxConfig rejecting(int capacity) {
+        return new MailboxConfig(checkCapacity(capacity), OverloadPolicy.REJECT, 0, null, null, SchedulingClass.NORMAL, 1);
+    }
+
+    /**
+     * Creates a config for a bounded mailbox {@link OverloadPolicy#BLOCK blocking} senders once full.
+     * <br><p>A module must never block on its own mailbox (or on a cycle of full mailboxes leading back to it): the senders would only be released by the timeout.</p>
+     * @param capacity The maximum amount of messages waiting in the mailbox. Must be positive.
+     * @param timeout How long a sender waits for room before being refused. Must be positive.
+     * @param unit The <b>not-null</b> unit of {@code timeout}.
+     * @return A brand new MailboxConfig.
+     * @throws NullPointerException If {@code unit} is null.
+     * @throws IllegalArgumentException If {@code capacity} or {@code timeout} aren't positive.
+     */
+    @Nonnull
+    public static MailboxConfig blocking(int capacity, long timeout, @Nonnull TimeUnit unit) {
+        Objects.requireNonNull(unit);
+        if (timeout <= 0) {
+            LOGGER.warn("Attempt to create a blocking mailbox config with a non-positive timeout!");
+            throw new IllegalArgumentException("timeout <= 0");
+        }
+        return new MailboxConfig(checkCapacity(capacity), OverloadPolicy.BLOCK, unit.toNanos(timeout), null, null, SchedulingClass.NORMAL, 1);
+    }
+
+    /**
+     * Creates a config for a bounded mailbox {@link OverloadPolicy#DROP_OLDEST dropping} its oldest message once full.
+     * @param capacity The maximum amount of messages waiting in the mailbox. Must be positive.
+     * @return A brand new MailboxConfig.
+     * @throws IllegalArgumentException If {@code capacity} isn't positive.
+     */
+    @Nonnull
+    public static MailboxConfig droppingOldest(int capacity) {
+        return new MailboxConfig(checkCapacity(capacity), OverloadPolicy.DROP_OLDEST, 0, null, null, SchedulingClass.NORMAL, 1);
+    }
+
+    /**
+     * Creates a config for a bounded mailbox {@link OverloadPolicy#COALESCE coalescing} messages by key.
+     * <br><p>String messages are keyed as {@link Message#ofStrings(String...) String Messages}. The key function runs on the sender's thread, so it should be cheap and thread-safe.</p>
+     * @param capacity The maximum amount of messages waiting in the mailbox. Must be positive.
+     * @param key The <b>not-null</b> function extracting the coalescing key of a message; a <b>possibly-null</b> key means the message is never coalesced.
+     * @return A brand new MailboxConfig.
+     * @throws NullPointerException If {@code key} is null.
+     * @throws IllegalArgumentException If {@code capacity} isn't positive.
+     */
+    @Nonnull
+    public static MailboxConfig coalescing(int capacity, @Nonnull Function<? super Message<?>, ?> key) {
+        return new MailboxConfig(checkCapacity(capacity), OverloadPolicy.COALESCE, 0, Objects.requireNonNull(key), null, SchedulingClass.NORMAL, 1);
+    }
+
+    /**
+     * Creates a copy of this config whose mailboxes write every message to a journal before queueing it, and replay whatever wasn't handled after a crash.
+     * <br><p>Journaling costs a copy of every message into a memory-mapped file and an acknowledgement once it's handled, so it's meant for modules whose messages
+     * can't be lost, not for every module. See {@link JournalConfig JournalConfig} for what can be journaled.</p>
+     * @param journal The <b>not-null</b> {@link JournalConfig JournalConfig}.
+     * @return A brand new MailboxConfig.
+     * @throws NullPointerException If {@code journal} is null.
+     * @throws IllegalArgumentException If this config {@link OverloadPolicy#COALESCE coalesces} messages, which a journal can't follow.
+     */
+    @Nonnull
+    public MailboxConfig withJournal(@Nonnull JournalConfig journal) {
+        Objects.requireNonNull(journal);
+        if (policy == OverloadPolicy.COALESCE) {
+            LOGGER.warn("Attempt to journal a coalescing mailbox!");
+            throw new IllegalArgumentException("policy == COALESCE");
+        }
+        return new MailboxConfig(capacity, policy, blockTimeoutNanos, coalescingKey, journal, schedulingClass, weight);
+    }
+
+    /**
+     * Creates a copy of this config whose mailboxes are drained with another urgency and share of the threads.
+     * <br><p>Only {@link samophis.kunou.core.util.ModuleExecutor#newFairThreadPool(int) fair executors} (including the {@link samophis.kunou.core.util.ModuleExecutor#getDefault() default} one)
+     * look at this; every other executor drains mailboxes in the order they have work.</p>
+     * @param schedulingClass The <b>not-null</b> {@link SchedulingClass SchedulingClass} of the module.
+     * @param weight The share of its class the module gets, relative to the other modules of the class. Must be between 1 and {@value #MAX_WEIGHT}.
+     * @return A brand new MailboxConfig.
+     * @throws NullPointerException If {@code schedulingClass} is null.
+     * @throws IllegalArgumentException If {@code weight} is out of range.
+     */
+    @Nonnull
+    public MailboxConfig withScheduling(@Nonnull SchedulingClass schedulingClass, int weight) {
+        Objects.requireNonNull(schedulingClass);
+        if (weight <= 0 || weight > MAX_WEIGHT) {
+            LOGGER.warn("Attempt to create a mailbox config with a weight out of range!");
+            throw new IllegalArgumentException("weight <= 0 || weight > " + MAX_WEIGHT);
+        }
+        return new MailboxConfig(capacity, policy, blockTimeoutNanos, coalescingKey, journal, schedulingClass, weight);
+    }
+
+    /**
+     * Checks whether or not mailboxes created from this config ever refuse, drop or coalesce anything.
+     * @return Whether or not the capacity is limited.
+     */
+    public boolean isBounded() {
+        return capacity != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the maximum amount of messages waiting in a mailbox created from this config.
+     * @return The capacity, or {@link Integer#MAX_VALUE} if {@link #isBounded() unbounded}.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns what happens to messages sent to a full mailbox.
+     * @return The <b>not-null</b> policy. Meaningless if {@link #isBounded() unbounded}.
+     */
+    @Nonnull
+    public OverloadPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns how long senders wait for room with the {@link OverloadPolicy#BLOCK BLOCK} policy.
+     * @return The timeout in nanoseconds, or 0 for every other policy.
+     */
+    public long getBlockTimeoutNanos() {
+        return blockTimeoutNanos;
+    }
+
+    /**
+     * Returns the function extracting coalescing keys with the {@link OverloadPolicy#COALESCE COALESCE} policy.
+     * @return The <b>possibly-null</b> key function; null for every other policy.
+     */
+    @Nullable
+    public Function<? super Message<?>, ?> getCoalescingKey() {
+        return coalescingKey;
+    }
+    /**
+     * Checks whether or not mailboxes created from this config journal their messages.
+     * @return Whether or not a journal was {@link #withJournal(JournalConfig) attached}.
+     */
+    public boolean isDurable() {
+        return journal != null;
+    }
+
+    /**
+     * Returns the journal making mailboxes created from this config durable.
+     * @return The <b>possibly-null</b> {@link JournalConfig JournalConfig}; null if the mailbox isn't {@link #isDurable() durable}.
+     */
+    @Nullable
+    public JournalConfig getJournalConfig() {
+        return journal;
+    }
+
+    /**
+     * Returns how urgently mailboxes created from this config are drained by fair executors.
+     * @return The <b>not-null</b> {@link SchedulingClass SchedulingClass}; {@link SchedulingClass#NORMAL NORMAL} unless {@link #withScheduling(SchedulingClass, int) changed}.
+     */
+    @Nonnull
+    public SchedulingClass getSchedulingClass() {
+        return schedulingClass;
+    }
+
+    /**
+     * Returns the share of its scheduling class a module gets from fair executors, relative to the other modules of the class.
+     * @return The weight, between 1 (the default) and {@value #MAX_WEIGHT}.
+     */
+    public int getWeight() {
+        return weight;
+    }
+    @Override
+    public String toString() {
+        String durable = journal == null ? "" : ", durable";
+        String scheduling = schedulingClass == SchedulingClass.NORMAL && weight == 1 ? "" : ", " + schedulingClass + " x" + weight;
+        return isBounded() ? "MailboxConfig{" + policy + ", capacity = " + capacity + durable + scheduling + "}" : "MailboxConfig{unbounded" + durable + scheduling + "}";
+    }
+    private static int checkCapacity(int capacity) {
+        if (capacity <= 0) {
+            LOGGER.warn("Attempt to create a mailbox config with a non-positive capacity!");
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,172 @@
+package samophis.kunou.core.modules;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An immutable envelope carrying a typed payload to a {@link Module Module}.
+ * <br><p>Unlike the String-based {@link Module#onMessage(String...)} API, a Message can carry any object as-is, so nothing has to be turned into text
+ * and parsed again on the other side. Binary data is carried as a {@link ByteBuffer ByteBuffer} <b>slice</b> of the sender's buffer: the bytes themselves
+ * are never copied, no matter if the buffer is a heap or a direct one.
+ * <br><br>The String API is a thin adapter on top of this one -- String messages are simply Messages with a {@code String[]} payload.
+ * <br>Messages sent through {@link ModuleLoader#ask(Module, Message, Class, long, java.util.concurrent.TimeUnit) ask} carry a {@link ReplyChannel ReplyChannel},
+ * which the receiving module answers through {@link #reply(Object)}.</p>
+ *
+ * @param <T> The type of the payload.
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class Message<T> {
+    private final T payload;
+    private final ReplyChannel replyChannel;
+    private Message(@Nonnull T payload, @Nullable ReplyChannel replyChannel) {
+        this.payload = payload;
+        this.replyChannel = replyChannel;
+    }
+
+    /**
+     * Wraps any object in a new Message. The payload is stored by reference, not copied.
+     * <br><p>{@link ByteBuffer ByteBuffers} should be wrapped with {@link #ofBuffer(ByteBuffer)} instead, so later changes to the sender's position and limit don't leak into the module.</p>
+     * @param payload The <b>not-null</b> payload. If it's a {@code String[]}, it must not be empty.
+     * @param <T> The type of the payload.
+     * @return A brand new Message carrying {@code payload}.
+     * @throws NullPointerException If {@code payload} is null.
+     * @throws IllegalArgumentException If {@code payload} is an empty {@code String[]}.
+     */
+    @Nonnull
+    public static <T> Message<T> of(@Nonnull T payload) {
+        Objects.requireNonNull(payload);
+        if (payload instanceof String[] && ((String[]) payload).length == 0)
+            throw new IllegalArgumentException("length of args = 0");
+        return new Message<>(payload, null);
+    }
+
+    /**
+     * Wraps String arguments in a new Message, exactly as {@link ModuleLoader#sendMessage(Module, String...)} does internally.
+     * @param args The <b>not-null and not-empty</b> arguments.
+     * @return A brand new Message carrying {@code args}.
+     * @throws NullPointerException If {@code args} is null.
+     * @throws IllegalArgumentException If {@code args} has a length of 0.
+     */
+    @Nonnull
+    public static Message<String[]> ofStrings(@Nonnull String... args) {
+        return of(args);
+    }
+
+    /**
+     * Wraps the remaining bytes of a buffer in a new Message <b>without copying them</b>.
+     * <br><p>The payload is a {@link ByteBuffer#slice() slice} of {@code buffer}: it shares the same memory (direct buffers stay direct)
+     * but has its own position and limit, so the sender can keep using {@code buffer} right away. The bytes themselves must not be changed until the module is done with them.</p>
+     * @param buffer The <b>not-null</b> buffer whose remaining bytes are the payload.
+     * @return A brand new Message carrying a zero-copy slice of {@code buffer}.
+     * @throws NullPointerException If {@code buffer} is null.
+     */
+    @Nonnull
+    public static Message<ByteBuffer> ofBuffer(@Nonnull ByteBuffer buffer) {
+        return new Message<>(Objects.requireNonNull(buffer).slice(), null);
+    }
+
+    /**
+     * Returns the payload of this Message, by reference.
+     * <br><p>For buffers, prefer {@link #asBuffer()} so several readers don't move each other's position.</p>
+     * @return The <b>not-null</b> payload.
+     */
+    @Nonnull
+    public T getPayload() {
+        return payload;
+    }
+
+    /**
+     * Returns the payload of this Message cast to a given type.
+     * @param type The <b>not-null</b> type the payload is expected to be.
+     * @param <P> The type the payload is expected to be.
+     * @return The <b>not-null</b> payload.
+     * @throws NullPointerException If {@code type} is null.
+     * @throws ClassCastException If the payload isn't an instance of {@code type}.
+     */
+    @Nonnull
+    public <P> P getPayload(@Nonnull Class<P> type) {
+        return type.cast(payload);
+    }
+
+    /**
+     * Returns the runtime type of the payload, so modules can react to different kinds of messages.
+     * @return The <b>not-null</b> class of the payload.
+     */
+    @Nonnull
+    public Class<?> getPayloadType() {
+        return payload.getClass();
+    }
+
+    /**
+     * Checks whether or not the payload of this Message is a {@link ByteBuffer ByteBuffer}.
+     * @return Whether or not the payload is a buffer.
+     */
+    public boolean isBuffer() {
+        return payload instanceof ByteBuffer;
+    }
+
+    /**
+     * Returns a new view of the buffer payload with its own position and limit, sharing the same bytes (no copy).
+     * <br><p>Every call returns an independent {@link ByteBuffer#duplicate() duplicate}, so the same Message can safely be read by many modules at once.
+     * Like any duplicate, the returned view uses big-endian byte order until told otherwise.</p>
+     * @return A <b>not-null</b> view of the buffer payload.
+     * @throws IllegalStateException If the payload isn't a buffer.
+     */
+    @Nonnull
+    public ByteBuffer asBuffer() {
+        if (!(payload instanceof ByteBuffer))
+            throw new IllegalStateException("Payload is not a ByteBuffer! Type = " + payload.getClass().getName());
+        return ((ByteBuffer) payload).duplicate();
+    }
+
+    /**
+     * Returns a copy of this Message carrying the same payload (by reference) and a given reply channel, replacing any channel this one had.
+     * @param replyChannel The <b>not-null</b> channel the receiving module should reply through.
+     * @return A brand new Message expecting a reply.
+     * @throws NullPointerException If {@code replyChannel} is null.
+     */
+    @Nonnull
+    public Message<T> withReplyChannel(@Nonnull ReplyChannel replyChannel) {
+        return new Message<>(payload, Objects.requireNonNull(replyChannel));
+    }
+
+    /**
+     * Returns the channel the sender of this Message waits for a reply on, if any.
+     * @return The <b>possibly-null</b> reply channel; null for plain, fire-and-forget messages.
+     */
+    @Nullable
+    public ReplyChannel getReplyChannel() {
+        return replyChannel;
+    }
+
+    /**
+     * Checks whether or not the sender of this Message waits for a reply.
+     * @return Whether or not this Message carries a {@link ReplyChannel ReplyChannel}.
+     */
+    public boolean expectsReply() {
+        return replyChannel != null;
+    }
+
+    /**
+     * Replies to the sender of this Message. Shorthand for {@code getReplyChannel().reply(value)}.
+     * @param value The <b>not-null</b> reply.
+     * @return Whether or not this reply was the one that completed the request (false if it was already answered or timed out).
+     * @throws NullPointerException If {@code value} is null.
+     * @throws IllegalStateException If this Message doesn't expect a reply.
+     */
+    public boolean reply(@Nonnull Object value) {
+        if (replyChannel == null)
+            throw new IllegalStateException("Message does not expect a reply!");
+        return replyChannel.reply(value);
+    }
+    @Override
+    public String toString() {
+        String content = payload instanceof String[] ? Arrays.toString((String[]) payload) : String.valueOf(payload);
+        return "Message{" + content + "}";
+    }
+}
@@ -1,19 +1,26 @@
 package samophis.kunou.core.modules;
 
+import samophis.kunou.core.exceptions.ModuleException;
 import samophis.kunou.core.util.ModuleThreadExecutor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * A completely independent, asynchronous container with events to handle start-ups, shut-downs and incoming messages.
  * <br><p>Modules should usually have minimal dependencies and serve clear, explicitly-defined tasks to isolate an application's entry point and its "active parts".
- * If a module is too big, break it up into smaller modules dependent on the main one. These modules should all be contained inside the same {@link ModuleLoader ModuleLoader}
- * where they manage their state and react to events from the loader.
+ * If a module is too big, break it up into smaller modules dependent on the main one (see {@link #getDependencies()}). These modules should all be contained inside the same
+ * {@link ModuleLoader ModuleLoader} where they react to events from the loader.
  *
  * <br>A helper class is present to take some weight off the backs of module developers: {@link AbstractModuleBase AbstractModuleBase}.
- * Additionally, a module is expected to <b>completely</b> manage its own state effectively and be fault-tolerant to some degree, usually in response to events from the loader.
- * Every single callback method is fired in different threads from a static, cached thread pool as defined in the {@link samophis.kunou.core.util.ModuleThreadExecutor ModuleThreadExecutor} class.</p>
+ * Additionally, a module is expected to be fault-tolerant to some degree. Its lifecycle {@link State State} is tracked atomically by the loader, but modules may still report their own.
+ * Every single callback method is queued in the module's own mailbox and fired, in the order it was accepted, on a thread of the
+ * {@link samophis.kunou.core.util.ModuleExecutor ModuleExecutor} of the module's {@link ModuleLoader ModuleLoader}. Callbacks of the same module never run concurrently, but may run on different threads.</p>
  *
  * @author SamOphis
  * @since 0.1
@@ -54,10 +61,32 @@ public interface Module {
      */
     String getUrl();
 
+    /**
+     * Returns the names of the modules this module depends on, which must belong to the same {@link ModuleLoader ModuleLoader}.
+     * <br><p>{@link ModuleLoader#startAll()} only starts a module once all of its dependencies are ready, and {@link ModuleLoader#stopAll()} only stops it
+     * before any of them. By default, a module has no dependencies.</p>
+     * @return The <b>not-null</b>, possibly-empty names of the modules this module depends on.
+     */
+    @Nonnull
+    default Collection<String> getDependencies() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Returns the module this one actually hands its callbacks to, if it merely stands in for another one.
+     * <br><p>The {@link ModuleLoader ModuleLoader} accepts the target wherever it accepts this module, so a module that only knows itself can still send to, ask or kill
+     * whatever it's registered as. By default, a module is its own target.</p>
+     * @return The <b>not-null</b> target of this module.
+     */
+    @Nonnull
+    default Module getTarget() {
+        return this;
+    }
+
     /**
      * Returns the {@link State State} this module is currently in.
-     * <br><p><b>Note: Please be aware that KunouCore will NOT manage the state of your modules. This is entirely dependent on the developer to set in response to events
-     * in an asynchronous, modular environment.</b></p>
+     * <br><p><b>Note: This is the state as reported by the module itself. The {@link ModuleLoader ModuleLoader} tracks the authoritative lifecycle state on its own
+     * (see {@link ModuleLoader#getState(Module)}) and checks every event against that instead.</b></p>
      * @return The current {@link State State} of this module.
      */
     State getState();
@@ -68,12 +97,50 @@ public interface Module {
      */
     void onStart(@Nullable String... args);
 
+    /**
+     * What the {@link ModuleLoader ModuleLoader} actually calls to start this module up; the module only becomes {@link State#READY READY} once the returned stage completes.
+     * <br><p>By default, this just runs {@link #onStart(String...)} and returns a completed stage. Modules whose start-up waits on something else -- another process, the network --
+     * should override it and complete the stage once that's done, so no dispatcher thread sits waiting meanwhile. A stage that fails leaves the module {@link State#DEAD DEAD}.</p>
+     * @param args <b>Possibly-null or possibly-empty</b> array of String arguments, which modules can react to as they wish.
+     * @return A <b>not-null</b> stage completed once the start-up has finished.
+     */
+    @Nonnull
+    default CompletionStage<?> onStartAsync(@Nullable String... args) {
+        onStart(args);
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * The method that fires (with <b>definitely-not-null</b> arguments) in response to a message from the {@link ModuleLoader ModuleLoader} being issued to it.
+     * <br><p>This is called by the default {@link #onTypedMessage(Message)} for every message carrying a {@code String[]} payload.</p>
      * @param args <b>Definitely-not-null</b> array of String arguments, which modules can react to as they wish.
      */
     void onMessage(@Nonnull String... args);
 
+    /**
+     * The method that fires (with a <b>definitely-not-null</b> message) in response to a typed {@link Message Message} from the {@link ModuleLoader ModuleLoader} being issued to it.
+     * <br><p>Every String message goes through here too, as a Message with a {@code String[]} payload, and by default it's simply handed to {@link #onMessage(String...)}.
+     * Modules accepting other payloads should override this and hand anything they don't recognize back to {@code Module.super.onTypedMessage(message)}.</p>
+     * @param message <b>Definitely-not-null</b> message carrying the payload, which modules can react to as they wish.
+     * @throws samophis.kunou.core.exceptions.ModuleException By default, if the payload isn't a {@code String[]}.
+     */
+    default void onTypedMessage(@Nonnull Message<?> message) {
+        Object payload = message.getPayload();
+        if (!(payload instanceof String[]))
+            throw new ModuleException(String.format("%s %s by %s does not accept %s payloads!", getName(), getVersion(), getAuthor(), payload.getClass().getName()));
+        onMessage((String[]) payload);
+    }
+
+    /**
+     * The method that fires (with a <b>definitely-not-null and definitely-not-empty</b> batch) in response to {@link ModuleLoader#sendMessages(Module, java.util.Collection)}.
+     * <br><p>By default, this just hands every message of the batch to {@link #onMessage(String...)} in order. Override it to handle the whole batch at once.</p>
+     * @param batch <b>Definitely-not-null</b>, unmodifiable list of <b>definitely-not-null</b> argument arrays, in the order they were sent.
+     */
+    default void onMessageBatch(@Nonnull List<String[]> batch) {
+        for (String[] args : batch)
+            onMessage(args);
+    }
+
     /**
      * The method that fires when the {@link ModuleLoader ModuleLoader} this module belongs to requests it to shutdown gracefully.
      * <br><p>No information is provided in this callback.
@@ -81,15 +148,27 @@ public interface Module {
      */
     void onDeath();
 
+    /**
+     * What the {@link ModuleLoader ModuleLoader} actually calls to shut this module down; the module only becomes {@link State#DEAD DEAD} once the returned stage completes.
+     * <br><p>By default, this just runs {@link #onDeath()} and returns a completed stage. Like {@link #onStartAsync(String...)}, override it if shutting down means waiting on
+     * something else. The module counts as dead even if the stage fails.</p>
+     * @return A <b>not-null</b> stage completed once the shut-down has finished.
+     */
+    @Nonnull
+    default CompletionStage<?> onDeathAsync() {
+        onDeath();
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Runs ordinary code in a cached, module thread pool (obviously asynchronously).
      * <br><p>This can be used for module interfaces with methods that KunouCore doesn't automatically run in different threads.
-     * All module code should be asynchronous so as to not block any other operations using the same module.</p>
+     * All module code should be asynchronous so as to not block any other operations using the same module.
+     * <br>Uncaught exceptions are wrapped in a {@link samophis.kunou.core.exceptions.ModuleException ModuleException} and logged by the module thread.</p>
      * @param runnable The <b>not-null</b> code to run asynchronously.
      * @throws NullPointerException If {@code 'runnable'} is null.
-     * @throws samophis.kunou.core.exceptions.ModuleException If an uncaught exception occurs inside a module thread.
      */
     static void runAsync(@Nonnull Runnable runnable) {
-        ModuleThreadExecutor.runModuleMethod(runnable, false);
+        ModuleThreadExecutor.runModuleMethod(runnable);
     }
 }
\ No newline at end of file
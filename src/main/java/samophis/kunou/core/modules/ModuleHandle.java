@@ -0,0 +1,71 @@
+package samophis.kunou.core.modules;
+
+import samophis.kunou.core.exceptions.ModuleException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A pre-resolved reference to a {@link Module Module} registered in a {@link ModuleLoader ModuleLoader}, returned by {@link ModuleLoader#addModule(Module)}.
+ * <br><p>Sending through a handle skips everything {@link ModuleLoader#sendMessage(Module, String...)} has to do before it can even look at the module:
+ * there's no lookup by name, no ownership check and no metadata read. On the steady-state path, a send only checks the module's state
+ * and hands the payload over to its mailbox -- it allocates nothing beyond the payload itself (the {@code String[]} or the {@link Message Message}) apart from
+ * the occasional latency sample, which makes handles the right tool for hot paths that send many messages to the same module.
+ * <br><br>Messages sent through a handle and through the loader share the same mailbox, so they're delivered in the order they were accepted, just like before.
+ * A handle stays bound to its module: once another module with the same name is added, the handle becomes {@link #isValid() invalid} and refuses new messages.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public interface ModuleHandle {
+    /**
+     * Returns the module this handle refers to.
+     * @return The <b>not-null</b> {@link Module Module}.
+     */
+    @Nonnull Module getModule();
+
+    /**
+     * Returns the lifecycle {@link State State} the loader tracks for the module, exactly like {@link ModuleLoader#getState(Module)}.
+     * @return The <b>not-null</b> state of the module.
+     */
+    @Nonnull State getState();
+
+    /**
+     * Checks whether or not the module is still registered in its loader under this handle.
+     * @return Whether or not this handle can still be used to send messages.
+     */
+    boolean isValid();
+
+    /**
+     * Returns the config of the module's mailbox, as given when the module was {@link ModuleLoader#addModule(Module, MailboxConfig) added}.
+     * @return The <b>not-null</b> {@link MailboxConfig MailboxConfig} of the module.
+     */
+    @Nonnull MailboxConfig getMailboxConfig();
+
+    /**
+     * Checks whether or not the module's mailbox is full, without blocking.
+     * <br><p>A saturated mailbox applies its {@link OverloadPolicy OverloadPolicy} to the next message, so producers able to slow down (or to send somewhere else)
+     * should check this first. Unbounded mailboxes are never saturated. The answer may already be stale by the time it's returned.</p>
+     * @return Whether or not the mailbox holds as many messages as its capacity allows.
+     */
+    boolean isSaturated();
+
+    /**
+     * Sends String arguments to the module, exactly like {@link ModuleLoader#sendMessage(Module, String...)}.
+     * <br><p>The arguments array is handed to the module as-is, so it must not be changed after this call.</p>
+     * @param args The <b>not-null and not-empty</b> arguments.
+     * @throws NullPointerException If {@code args} is null.
+     * @throws IllegalArgumentException If {@code args} has a length of 0.
+     * @throws ModuleException If this handle is no longer valid, the module isn't ready to accept new messages or its mailbox refused the message.
+     */
+    void sendMessage(@Nonnull String... args);
+
+    /**
+     * Sends a typed {@link Message Message} to the module, exactly like {@link ModuleLoader#sendTypedMessage(Module, Message)}.
+     * <br><p>Messages are immutable, so the same one can be sent again and again without allocating anything at all.</p>
+     * @param message The <b>not-null</b> message.
+     * @throws NullPointerException If {@code message} is null.
+     * @throws ModuleException If this handle is no longer valid, the module isn't ready to accept new messages or its mailbox refused the message.
+     */
+    void sendTypedMessage(@Nonnull Message<?> message);
+}
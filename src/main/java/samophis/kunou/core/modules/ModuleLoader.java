@@ -1,11 +1,19 @@
 package samophis.kunou.core.modules;
 
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.metrics.ExecutorMetricsMXBean;
+import samophis.kunou.core.metrics.ModuleMetricsMXBean;
 import samophis.kunou.core.modules.internal.ModuleLoaderImpl;
+import samophis.kunou.core.util.ModuleExecutor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 
 /**
@@ -20,22 +28,30 @@ import java.util.function.BiConsumer;
 
 public interface ModuleLoader {
     /**
-     * Returns an unmodifiable view of the internal module map used to track {@link Module Modules}, verify ownership of them and more.
-     * @return An unmodifiable view of the internal module map.
+     * Returns the {@link ModuleExecutor ModuleExecutor} this loader drains the mailboxes of its modules on.
+     * @return The <b>not-null</b> execution engine of this loader.
+     */
+    @Nonnull ModuleExecutor getExecutor();
+
+    /**
+     * Returns an unmodifiable snapshot of the internal module map used to track {@link Module Modules}, verify ownership of them and more.
+     * <br><p>The snapshot is cached and only rebuilt when a module is added, so repeated calls are free. It does <b>not</b> reflect changes made after it was fetched.</p>
+     * @return An unmodifiable snapshot of the internal module map.
      */
     Map<String, Module> getModules();
 
     /**
-     * Creates and returns an unmodifiable view of the values contained inside the internal module map.
-     * <br><p>This isn't too intensive but it does use explicit casting for each call.
-     * <br>However, since it's a view and backed internally by the value list, there's no need to make repeated calls.</p>
-     * @return An unmodifiable view of the values contained inside the internal module map.
+     * Returns an unmodifiable snapshot of the values contained inside the internal module map.
+     * <br><p>Like {@link #getModules()}, the list is cached and only rebuilt when a module is added, so repeated calls are free.
+     * It does <b>not</b> reflect changes made after it was fetched.</p>
+     * @return An unmodifiable snapshot of the values contained inside the internal module map.
      */
     List<Module> getModulesAsList();
 
     /**
      * Returns a <b>possibly-null</b> {@link Module Module} contained in the internal module map.
-     * <br><p>This operation is very fast -- it only null-checks a parameter and does an O(1) HashMap {@code get}.</p>
+     * <br><p>This operation is very fast and wait-free -- it only null-checks a parameter and does an O(1) HashMap {@code get} on the current registry snapshot.
+     * It's safe to call from any thread, including module threads.</p>
      * @param name The <b>non-null</b> name of the {@link Module Module}.
      * @throws NullPointerException If {@code name} is null.
      * @return A <b>possibly-null</b> module from the internal module map.
@@ -44,17 +60,117 @@ public interface ModuleLoader {
 
     /**
      * Adds a new {@link Module Module} to the internal module map, overriding a pre-existing one if it has the same name.
-     * <br><p>Note: This method <b>does NOT</b> start the module; it only adds it to a HashMap.
+     * <br><p>Note: This method <b>does NOT</b> start the module; it only publishes a new copy of the internal module map containing it.
+     * It's safe to call from any thread, including module threads.
      * <br>Module designers who actually care about tracking their own state in their callbacks should initialize
-     * themselves as being {@link State#DEAD} at construction until their {@link Module#onStart(String...)} method is called.</p>
+     * themselves as being {@link State#DEAD} at construction until their {@link Module#onStart(String...)} method is called.
+     * <br><br>The returned {@link ModuleHandle ModuleHandle} sends messages straight to the module's mailbox, skipping the lookups every other send performs.
+     * Adding another module with the same name invalidates the handles of the one it overrides.
+     * <br>The module gets an {@link MailboxConfig#unbounded() unbounded} mailbox; see {@link #addModule(Module, MailboxConfig)} to limit it.</p>
      * @param module The <b>not-null</b> {@link Module Module} object.
+     * @return A <b>not-null</b> handle to send messages to {@code module} through.
      * @throws NullPointerException If {@code module} is actually null.
      */
-    void addModule(@Nonnull Module module);
+    @Nonnull ModuleHandle addModule(@Nonnull Module module);
+
+    /**
+     * Adds a new {@link Module Module} exactly like {@link #addModule(Module)} does, giving it a mailbox built from a given config.
+     * <br><p>With a bounded mailbox, a flood of messages to a slow module can't grow without limit: once the module is {@link MailboxConfig#getCapacity() capacity} messages behind,
+     * new messages are refused, block their sender, drop older ones or are coalesced, depending on the {@link OverloadPolicy OverloadPolicy}. A replacement
+     * {@link #replaceModule(Module, Module, String...) hot-swapped} in for the module keeps the same config.
+     * <br>With a {@link MailboxConfig#isDurable() durable} mailbox, the module's journal is opened (or created) right away, and whatever it holds that was never
+     * acknowledged is replayed on the next {@link #startModule(Module) start}, right after {@link Module#onStart(String...)} and before any new message.</p>
+     * @param module The <b>not-null</b> {@link Module Module} object.
+     * @param config The <b>not-null</b> {@link MailboxConfig MailboxConfig} of the module's mailbox.
+     * @return A <b>not-null</b> handle to send messages to {@code module} through.
+     * @throws NullPointerException If {@code module} or {@code config} are null.
+     * @throws ModuleException If the mailbox is durable and its journal can't be opened.
+     */
+    @Nonnull ModuleHandle addModule(@Nonnull Module module, @Nonnull MailboxConfig config);
+
+    /**
+     * Returns the {@link ModuleHandle ModuleHandle} of one of this loader's {@link Module Modules}, the same one {@link #addModule(Module)} returned.
+     * <br><p>Handles are meant to be resolved once and kept; looking one up costs as much as a single {@link #sendMessage(Module, String...)} call.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to get the handle of.
+     * @return The <b>not-null</b> handle of {@code module}.
+     * @throws NullPointerException If {@code module} is null.
+     * @throws ModuleException If the module does not belong to this loader.
+     */
+    @Nonnull ModuleHandle getHandle(@Nonnull Module module);
+
+    /**
+     * Returns the lifecycle {@link State State} this loader tracks for one of its {@link Module Modules}.
+     * <br><p>Unlike {@link Module#getState()}, this is owned and updated by the loader alone, through atomic compare-and-set transitions:
+     * {@code DEAD -> STARTING} when a start-up is accepted, {@code STARTING -> READY} once {@link Module#onStart(String...)} returns (or back to {@code DEAD} if it throws),
+     * {@code READY -> SHUTTING_DOWN} when a shut-down is accepted and {@code SHUTTING_DOWN -> DEAD} once {@link Module#onDeath()} returns.
+     * Every start-up, shut-down and message is checked against this state, so two concurrent start-ups can never both succeed.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to get the state of.
+     * @return The <b>not-null</b> current state of {@code module}.
+     * @throws NullPointerException If {@code module} is null.
+     * @throws samophis.kunou.core.exceptions.ModuleException If the module does not belong to this loader.
+     */
+    @Nonnull State getState(@Nonnull Module module);
+
+    /**
+     * Registers a {@link StateListener StateListener} to be notified of every state transition of every {@link Module Module} owned by this loader.
+     * @param listener The <b>not-null</b> listener to register.
+     * @throws NullPointerException If {@code listener} is null.
+     */
+    void addStateListener(@Nonnull StateListener listener);
+
+    /**
+     * Unregisters a previously registered {@link StateListener StateListener}. Does nothing if it was never registered.
+     * @param listener The <b>not-null</b> listener to unregister.
+     * @throws NullPointerException If {@code listener} is null.
+     */
+    void removeStateListener(@Nonnull StateListener listener);
+
+    /**
+     * Returns a {@link CompletionStage CompletionStage} completed once a {@link Module Module} reaches a given {@link State State} -- a replacement for spin-polling {@link #getState(Module)}.
+     * <br><p>If the module is already in that state, the stage is completed right away. It completes exceptionally with a {@link ModuleException ModuleException}
+     * if the module does not belong to this loader, or if a start-up fails and the module falls back to {@link State#DEAD DEAD} before reaching that state.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to wait for.
+     * @param state The <b>not-null</b> {@link State State} to wait for.
+     * @return A <b>not-null</b> stage completed with {@code module} once it's in {@code state}.
+     * @throws NullPointerException If {@code module} or {@code state} are null.
+     */
+    @Nonnull CompletionStage<Module> awaitState(@Nonnull Module module, @Nonnull State state);
+
+    /**
+     * Returns the live runtime metrics this loader keeps for one of its {@link Module Modules}: message and event counters, queue depth and latency histograms.
+     * <br><p>Metrics are always collected -- this doesn't turn anything on. Use {@link #registerMBeans(String)} to also publish them over JMX.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to get the metrics of.
+     * @return The <b>not-null</b>, live metrics of {@code module}.
+     * @throws NullPointerException If {@code module} is null.
+     * @throws samophis.kunou.core.exceptions.ModuleException If the module does not belong to this loader.
+     */
+    @Nonnull ModuleMetricsMXBean getMetrics(@Nonnull Module module);
+
+    /**
+     * Returns the live runtime metrics of the {@link ModuleExecutor ModuleExecutor} this loader runs on.
+     * @return The <b>not-null</b>, live metrics of this loader's executor.
+     */
+    @Nonnull ExecutorMetricsMXBean getExecutorMetrics();
+
+    /**
+     * Publishes the metrics of this loader's executor and of every one of its {@link Module Modules} -- including modules added later -- as MXBeans on the platform MBean server.
+     * <br><p>MXBeans live under the {@code samophis.kunou.core} domain, e.g. {@code samophis.kunou.core:type=Module,loader="Main",name="Audio Module"},
+     * so they can be scraped by any JMX client without a metrics library. Calling this again re-publishes everything under the new name.</p>
+     * @param loaderName The <b>not-null</b> name identifying this loader in the MXBean names. Must be unique within the JVM.
+     * @throws NullPointerException If {@code loaderName} is null.
+     * @throws samophis.kunou.core.exceptions.ModuleException If the MXBeans couldn't be registered.
+     */
+    void registerMBeans(@Nonnull String loaderName);
+
+    /**
+     * Removes every MXBean published by {@link #registerMBeans(String)}. Does nothing if they were never published.
+     * @throws samophis.kunou.core.exceptions.ModuleException If the MXBeans couldn't be unregistered.
+     */
+    void unregisterMBeans();
 
     /**
      * Internally calls the sendMessage overload and provides {@code null} for its {@code andThen} parameter.
-     * <br><p>Note: Modules are <b>expected to handle their own state for every event that occurs. The ModuleLoader has no obligation to do this automatically.</b></p>
+     * <br><p>Note: The state checked here is the one the loader tracks itself (see {@link #getState(Module)}), not the one a module reports.</p>
      * @param module The <b>not-null</b> {@link Module Module} to send a message to. <b>MUST</b> be in the {@link State#READY READY} state to accept messages.
      * @param args The <b>not-null and not-empty</b> arguments to pass to the {@link Module Module} for it to handle.
      * @throws NullPointerException If {@code module} or {@code args} are null.
@@ -66,7 +182,7 @@ public interface ModuleLoader {
 
     /**
      * Sends a message to a {@link Module Module} with possible follow-up code (due to the asynchronous nature of modules).
-     * <br><p>Note: Modules are <b>expected to handle their own state for every event that occurs. The ModuleLoader has no obligation to do this automatically.</b></p>
+     * <br><p>Note: The state checked here is the one the loader tracks itself (see {@link #getState(Module)}), not the one a module reports.</p>
      * @param module The <b>non-null</b> {@link Module Module} to send a message to. <b>MUST</b> be in the {@link State#READY READY} state to accept messages.
      * @param andThen The <b>possibly-null</b> follow-up code, executing in the same thread right after. Set this value to null for no code to run.
      * @param args The <b>not-null and not-empty</b> arguments to pass to the {@link Module Module} for it to handle.
@@ -77,9 +193,236 @@ public interface ModuleLoader {
      */
     void sendMessage(@Nonnull Module module, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nonnull String... args);
 
+    /**
+     * Sends a message to a {@link Module Module}, returning a {@link CompletionStage CompletionStage} completed once the module has handled it.
+     * <br><p>The stage completes with the module itself, so further steps can be composed with {@code thenCompose} instead of nesting {@code andThen} callbacks.
+     * If the module doesn't belong to this loader, isn't ready or throws while handling the message, the stage completes exceptionally with a {@link ModuleException ModuleException}.
+     * <br>Dependent stages that aren't explicitly asynchronous run in the module thread right after the message, just like {@code andThen} code.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to send a message to. <b>MUST</b> be in the {@link State#READY READY} state to accept messages.
+     * @param args The <b>not-null and not-empty</b> arguments to pass to the {@link Module Module} for it to handle.
+     * @return A <b>not-null</b> stage completed with {@code module} once the message has been handled.
+     * @throws NullPointerException If {@code module} or {@code args} are null.
+     * @throws IllegalArgumentException If {@code args} has a length of 0.
+     * @see ModuleLoader#sendMessage(Module, BiConsumer, String...)
+     */
+    @Nonnull CompletionStage<Module> sendMessageAsync(@Nonnull Module module, @Nonnull String... args);
+
+    /**
+     * Internally calls the sendTypedMessage overload and provides {@code null} for its {@code andThen} parameter.
+     * @param module The <b>not-null</b> {@link Module Module} to send a message to. <b>MUST</b> be in the {@link State#READY READY} state to accept messages.
+     * @param message The <b>not-null</b> {@link Message Message} to pass to the {@link Module Module} for it to handle.
+     * @throws NullPointerException If {@code module} or {@code message} are null.
+     * @throws samophis.kunou.core.exceptions.ModuleException If the module does not belong to this loader, if it's not ready or if its mailbox refused the message.
+     * @see ModuleLoader#sendTypedMessage(Module, BiConsumer, Message)
+     */
+    void sendTypedMessage(@Nonnull Module module, @Nonnull Message<?> message);
+
+    /**
+     * Sends a typed {@link Message Message} to a {@link Module Module} with possible follow-up code, delivering it to {@link Module#onTypedMessage(Message)}.
+     * <br><p>The payload is handed over by reference and never copied or converted, which makes this the preferred way to send binary data (see {@link Message#ofBuffer(java.nio.ByteBuffer)}).
+     * Every String message is sent through this method too.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to send a message to. <b>MUST</b> be in the {@link State#READY READY} state to accept messages.
+     * @param andThen The <b>possibly-null</b> follow-up code, executing in the same thread right after. Set this value to null for no code to run.
+     * @param message The <b>not-null</b> {@link Message Message} to pass to the {@link Module Module} for it to handle.
+     * @throws NullPointerException If {@code module} or {@code message} are null.
+     * @throws samophis.kunou.core.exceptions.ModuleException If the module does not belong to this loader, if it's not ready or if its mailbox refused the message.
+     * @see ModuleLoader#sendTypedMessage(Module, Message)
+     */
+    void sendTypedMessage(@Nonnull Module module, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nonnull Message<?> message);
+
+    /**
+     * Sends a typed {@link Message Message} to a {@link Module Module}, returning a {@link CompletionStage CompletionStage} completed once the module has handled it.
+     * <br><p>Failures are reported exactly like {@link #sendMessageAsync(Module, String...)} does.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to send a message to. <b>MUST</b> be in the {@link State#READY READY} state to accept messages.
+     * @param message The <b>not-null</b> {@link Message Message} to pass to the {@link Module Module} for it to handle.
+     * @return A <b>not-null</b> stage completed with {@code module} once the message has been handled.
+     * @throws NullPointerException If {@code module} or {@code message} are null.
+     * @see ModuleLoader#sendTypedMessage(Module, BiConsumer, Message)
+     */
+    @Nonnull CompletionStage<Module> sendTypedMessageAsync(@Nonnull Module module, @Nonnull Message<?> message);
+
+    /**
+     * Sends a typed {@link Message Message} to a {@link Module Module} and waits for it to reply, returning a {@link CompletionStage CompletionStage} completed with the reply.
+     * <br><p>The module receives a copy of {@code message} carrying a {@link ReplyChannel ReplyChannel} in {@link Module#onTypedMessage(Message)}, and answers through
+     * {@link Message#reply(Object)} -- right away or later, from any thread. String payloads work too, but only if the module overrides {@code onTypedMessage} (otherwise it never sees the channel).
+     * <br>Pending requests are tracked by a numeric correlation id and expired by one shared timer, so an unanswered request costs no thread while it waits.
+     * The stage completes exceptionally with a {@link ModuleException ModuleException} if the module doesn't belong to this loader, isn't ready, throws while handling the message,
+     * replies with something that isn't a {@code replyType}, or doesn't reply within the timeout (caused by a {@link java.util.concurrent.TimeoutException TimeoutException} in that case).
+     * <br>Dependent stages that aren't explicitly asynchronous run on whichever thread replied (the module thread, usually), so they should be short and must never block.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to ask. <b>MUST</b> be in the {@link State#READY READY} state to accept messages.
+     * @param message The <b>not-null</b> {@link Message Message} to pass to the {@link Module Module}. Any reply channel it already carries is replaced.
+     * @param replyType The <b>not-null</b> type the reply is expected to be.
+     * @param timeout How long to wait for the reply. Must be positive.
+     * @param unit The <b>not-null</b> unit of {@code timeout}.
+     * @param <R> The type of the reply.
+     * @return A <b>not-null</b> stage completed with the reply.
+     * @throws NullPointerException If {@code module}, {@code message}, {@code replyType} or {@code unit} are null.
+     * @throws IllegalArgumentException If {@code timeout} isn't positive.
+     * @see ReplyChannel
+     */
+    @Nonnull <R> CompletionStage<R> ask(@Nonnull Module module, @Nonnull Message<?> message, @Nonnull Class<R> replyType, long timeout, @Nonnull TimeUnit unit);
+
+    /**
+     * Internally wraps {@code args} in a {@link Message Message} and calls the typed scheduleTypedMessage overload.
+     * @param module The <b>not-null</b> {@link Module Module} to send the message to. <b>MUST</b> be {@link State#STARTING STARTING} or {@link State#READY READY}.
+     * @param delay How long to wait before delivering the message. Zero or negative delays deliver it on the next tick of the timer.
+     * @param unit The <b>not-null</b> unit of {@code delay}.
+     * @param args The <b>not-null and not-empty</b> arguments.
+     * @return A <b>not-null</b> {@link ScheduledMessage ScheduledMessage} that can cancel the delivery.
+     * @throws NullPointerException If {@code module}, {@code unit} or {@code args} are null.
+     * @throws IllegalArgumentException If {@code args} has a length of 0.
+     * @throws ModuleException If the module does not belong to this loader or is neither starting up nor ready.
+     * @see ModuleLoader#scheduleTypedMessage(Module, long, TimeUnit, Message)
+     */
+    @Nonnull ScheduledMessage scheduleMessage(@Nonnull Module module, long delay, @Nonnull TimeUnit unit, @Nonnull String... args);
+
+    /**
+     * Delivers a typed {@link Message Message} to a {@link Module Module} once, after a delay.
+     * <br><p>Every loader owns one hashed-wheel timer thread, ticking every few milliseconds: scheduling and cancelling take constant time no matter how many messages are pending,
+     * and a pending message costs no thread. Messages are delivered on the first tick at or after their deadline -- never early, but up to one tick late.
+     * <br>When it fires, the message goes through the module's mailbox like any other, but the timer never waits: if the module isn't {@link State#READY READY} by then
+     * (or its bounded mailbox refuses the message, whatever its {@link OverloadPolicy OverloadPolicy}), the delivery is skipped.
+     * Scheduled messages are cancelled on their own once the module is killed, and move over to its replacement on a {@link #replaceModule(Module, Module, String...) hot swap}.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to send the message to. <b>MUST</b> be {@link State#STARTING STARTING} or {@link State#READY READY}, so modules can schedule their own messages in {@link Module#onStart(String...)}.
+     * @param delay How long to wait before delivering the message. Zero or negative delays deliver it on the next tick of the timer.
+     * @param unit The <b>not-null</b> unit of {@code delay}.
+     * @param message The <b>not-null</b> {@link Message Message} to pass to the {@link Module Module}.
+     * @return A <b>not-null</b> {@link ScheduledMessage ScheduledMessage} that can cancel the delivery.
+     * @throws NullPointerException If {@code module}, {@code unit} or {@code message} are null.
+     * @throws ModuleException If the module does not belong to this loader or is neither starting up nor ready.
+     * @see ModuleLoader#scheduleTypedAtFixedRate(Module, long, long, TimeUnit, Message)
+     */
+    @Nonnull ScheduledMessage scheduleTypedMessage(@Nonnull Module module, long delay, @Nonnull TimeUnit unit, @Nonnull Message<?> message);
+
+    /**
+     * Internally wraps {@code args} in a {@link Message Message} and calls the typed scheduleTypedAtFixedRate overload.
+     * @param module The <b>not-null</b> {@link Module Module} to send the message to. <b>MUST</b> be {@link State#STARTING STARTING} or {@link State#READY READY}.
+     * @param initialDelay How long to wait before the first delivery.
+     * @param period How long to wait between deliveries. Must be positive.
+     * @param unit The <b>not-null</b> unit of {@code initialDelay} and {@code period}.
+     * @param args The <b>not-null and not-empty</b> arguments, delivered as the very same array every time.
+     * @return A <b>not-null</b> {@link ScheduledMessage ScheduledMessage} that can stop the deliveries.
+     * @throws NullPointerException If {@code module}, {@code unit} or {@code args} are null.
+     * @throws IllegalArgumentException If {@code args} has a length of 0 or {@code period} isn't positive.
+     * @throws ModuleException If the module does not belong to this loader or is neither starting up nor ready.
+     * @see ModuleLoader#scheduleTypedAtFixedRate(Module, long, long, TimeUnit, Message)
+     */
+    @Nonnull ScheduledMessage scheduleAtFixedRate(@Nonnull Module module, long initialDelay, long period, @Nonnull TimeUnit unit, @Nonnull String... args);
+
+    /**
+     * Delivers a typed {@link Message Message} to a {@link Module Module} periodically, until it's cancelled or the module is killed.
+     * <br><p>Deliveries aim at {@code initialDelay + n * period} from now, so the rate doesn't drift however long each delivery takes to hand over.
+     * Deliveries are skipped exactly like with {@link #scheduleTypedMessage(Module, long, TimeUnit, Message)}, and so are deliveries the timer fell a whole period behind on,
+     * rather than being delivered in a burst. A module that's restarted after being killed has to schedule its messages again.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to send the message to. <b>MUST</b> be {@link State#STARTING STARTING} or {@link State#READY READY}.
+     * @param initialDelay How long to wait before the first delivery.
+     * @param period How long to wait between deliveries. Must be positive; periods shorter than a tick of the timer are effectively rounded up to one.
+     * @param unit The <b>not-null</b> unit of {@code initialDelay} and {@code period}.
+     * @param message The <b>not-null</b> {@link Message Message} to pass to the {@link Module Module}, the very same instance every time.
+     * @return A <b>not-null</b> {@link ScheduledMessage ScheduledMessage} that can stop the deliveries.
+     * @throws NullPointerException If {@code module}, {@code unit} or {@code message} are null.
+     * @throws IllegalArgumentException If {@code period} isn't positive.
+     * @throws ModuleException If the module does not belong to this loader or is neither starting up nor ready.
+     * @see ModuleLoader#scheduleTypedMessage(Module, long, TimeUnit, Message)
+     */
+    @Nonnull ScheduledMessage scheduleTypedAtFixedRate(@Nonnull Module module, long initialDelay, long period, @Nonnull TimeUnit unit, @Nonnull Message<?> message);
+
+    /**
+     * Subscribes a {@link Module Module} to a topic, so it receives every message {@link #publish(String, Message) published} to it from now on.
+     * <br><p>Subscriptions survive restarts of the module (it just doesn't receive anything while it isn't {@link State#READY READY}) and move over to its replacement
+     * on a {@link #replaceModule(Module, Module, String...) hot swap}. They're dropped if another module with the same name is {@link #addModule(Module) added}.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to subscribe.
+     * @param topic The <b>not-null</b> name of the topic.
+     * @return Whether or not {@code module} wasn't already subscribed to {@code topic}.
+     * @throws NullPointerException If {@code module} or {@code topic} are null.
+     * @throws ModuleException If {@code module} doesn't belong to this loader.
+     */
+    boolean subscribe(@Nonnull Module module, @Nonnull String topic);
+
+    /**
+     * Unsubscribes a {@link Module Module} from a topic.
+     * @param module The <b>not-null</b> {@link Module Module} to unsubscribe.
+     * @param topic The <b>not-null</b> name of the topic.
+     * @return Whether or not {@code module} was subscribed to {@code topic}.
+     * @throws NullPointerException If {@code module} or {@code topic} are null.
+     * @throws ModuleException If {@code module} doesn't belong to this loader.
+     */
+    boolean unsubscribe(@Nonnull Module module, @Nonnull String topic);
+
+    /**
+     * Returns the {@link Module Modules} currently subscribed to a topic, in the order they subscribed.
+     * @param topic The <b>not-null</b> name of the topic.
+     * @return A <b>not-null</b>, unmodifiable and possibly-empty snapshot of the subscribers.
+     * @throws NullPointerException If {@code topic} is null.
+     */
+    @Nonnull List<Module> getSubscribers(@Nonnull String topic);
+
+    /**
+     * Internally wraps {@code args} in a {@link Message Message} and calls the typed publish overload.
+     * @param topic The <b>not-null</b> name of the topic.
+     * @param args The <b>not-null and not-empty</b> arguments to pass to every subscriber.
+     * @return The amount of subscribers the message was delivered to.
+     * @throws NullPointerException If {@code topic} or {@code args} are null.
+     * @throws IllegalArgumentException If {@code args} has a length of 0.
+     * @see ModuleLoader#publish(String, Message)
+     */
+    int publish(@Nonnull String topic, @Nonnull String... args);
+
+    /**
+     * Broadcasts a typed {@link Message Message} to every {@link Module Module} subscribed to a topic, delivering it to {@link Module#onTypedMessage(Message)}.
+     * <br><p>Subscribers are looked up once, in a precomputed index, so the cost of a publish grows with the amount of subscribers, not with the amount of modules this loader owns.
+     * Every subscriber receives the very same {@code message} instance -- nothing is copied -- so it should be treated as read-only.
+     * Subscribers that aren't {@link State#READY READY} are skipped rather than failing the whole publish.</p>
+     * @param topic The <b>not-null</b> name of the topic.
+     * @param message The <b>not-null</b> {@link Message Message} to pass to every subscriber.
+     * @return The amount of subscribers the message was delivered to.
+     * @throws NullPointerException If {@code topic} or {@code message} are null.
+     */
+    int publish(@Nonnull String topic, @Nonnull Message<?> message);
+
+    /**
+     * Broadcasts a batch of typed {@link Message Messages} to every {@link Module Module} subscribed to a topic.
+     * <br><p>Each subscriber gets the whole batch as a <b>single</b> mailbox event, handing the messages to {@link Module#onTypedMessage(Message)} one after the other, in order.
+     * The batch is copied once and shared by every subscriber. Like {@link Module#onMessageBatch(List)}, a message that throws skips the rest of the batch for that subscriber.</p>
+     * @param topic The <b>not-null</b> name of the topic.
+     * @param batch The <b>not-null and not-empty</b> collection of <b>not-null</b> messages, in the order they should be handled.
+     * @return The amount of subscribers the batch was delivered to.
+     * @throws NullPointerException If {@code topic}, {@code batch} or any of its messages are null.
+     * @throws IllegalArgumentException If {@code batch} is empty.
+     * @see ModuleLoader#publish(String, Message)
+     */
+    int publishBatch(@Nonnull String topic, @Nonnull Collection<? extends Message<?>> batch);
+
+    /**
+     * Internally calls the sendMessages overload and provides {@code null} for its {@code andThen} parameter.
+     * <br><p>Note: The state checked here is the one the loader tracks itself (see {@link #getState(Module)}), not the one a module reports.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to send the batch to. <b>MUST</b> be in the {@link State#READY READY} state to accept messages.
+     * @param batch The <b>not-null and not-empty</b> collection of <b>not-null and not-empty</b> argument arrays, in the order they should be handled.
+     * @throws NullPointerException If {@code module}, {@code batch} or any of its argument arrays are null.
+     * @throws IllegalArgumentException If {@code batch} or any of its argument arrays are empty.
+     * @throws samophis.kunou.core.exceptions.ModuleException If the module does not belong to this loader, if it's not ready or if its mailbox refused the message.
+     * @see ModuleLoader#sendMessages(Module, BiConsumer, Collection)
+     */
+    void sendMessages(@Nonnull Module module, @Nonnull Collection<String[]> batch);
+
+    /**
+     * Sends a whole batch of messages to a {@link Module Module} as one event, with possible follow-up code.
+     * <br><p>The ownership and state checks and the mailbox hand-off are only paid once for the entire batch, which is then delivered to {@link Module#onMessageBatch(List)}.
+     * Modules that don't override it simply receive every message of the batch through {@link Module#onMessage(String...)}, in order.
+     * <br>Note: The state checked here is the one the loader tracks itself (see {@link #getState(Module)}), not the one a module reports.</p>
+     * @param module The <b>not-null</b> {@link Module Module} to send the batch to. <b>MUST</b> be in the {@link State#READY READY} state to accept messages.
+     * @param andThen The <b>possibly-null</b> follow-up code, executing in the same thread right after the whole batch. Set this value to null for no code to run.
+     * @param batch The <b>not-null and not-empty</b> collection of <b>not-null and not-empty</b> argument arrays, in the order they should be handled.
+     * @throws NullPointerException If {@code module}, {@code batch} or any of its argument arrays are null.
+     * @throws IllegalArgumentException If {@code batch} or any of its argument arrays are empty.
+     * @throws samophis.kunou.core.exceptions.ModuleException If the module does not belong to this loader, if it's not ready or if its mailbox refused the message.
+     * @see ModuleLoader#sendMessages(Module, Collection)
+     */
+    void sendMessages(@Nonnull Module module, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nonnull Collection<String[]> batch);
+
     /**
      * Starts a {@link Module Module} with possible follow-up code (due to the asynchronous nature of modules) and arguments.
-     * <br><p>Note: Modules are <b>expected to handle their own state for every event that occurs. The ModuleLoader has no obligation to do this automatically.</b></p>
+     * <br><p>Note: The state checked here is the one the loader tracks itself (see {@link #getState(Module)}), not the one a module reports.</p>
      * @param module The <b>non-null</b> {@link Module Module} to start. <b>MUST</b> be in the {@link State#DEAD DEAD} state to start again.
      * @param andThen The <b>possibly-null</b> follow-up code, executing in the same thread right after. Set this value to null for no code to run.
      * @param args The <b>possibly-null and possibly-empty</b> arguments to pass to the {@link Module Module} for it to handle.
@@ -93,7 +436,7 @@ public interface ModuleLoader {
 
     /**
      * Starts a {@link Module Module} with possible follow-up code (due to the asynchronous nature of modules) and no additional arguments.
-     * <br><p>Note: Modules are <b>expected to handle their own state for every event that occurs. The ModuleLoader has no obligation to do this automatically.</b></p>
+     * <br><p>Note: The state checked here is the one the loader tracks itself (see {@link #getState(Module)}), not the one a module reports.</p>
      * @param module The <b>non-null</b> {@link Module Module} to start. <b>MUST</b> be in the {@link State#DEAD DEAD} state to start again.
      * @param andThen The <b>possibly-null</b> follow-up code, executing in the same thread right after. Set this value to null for no code to run.
      * @throws NullPointerException If {@code module} is null.
@@ -105,7 +448,7 @@ public interface ModuleLoader {
 
     /**
      * Starts a {@link Module Module} with no follow-up code or additional arguments.
-     * <br><p>Note: Modules are <b>expected to handle their own state for every event that occurs. The ModuleLoader has no obligation to do this automatically.</b></p>
+     * <br><p>Note: The state checked here is the one the loader tracks itself (see {@link #getState(Module)}), not the one a module reports.</p>
      * @param module The <b>non-null</b> {@link Module Module} to start. <b>MUST</b> be in the {@link State#DEAD DEAD} state to start again.
      * @throws NullPointerException If {@code module} is null.
      * @throws samophis.kunou.core.exceptions.ModuleException If the module does not belong to this loader, if it's not dead or if an uncaught exception occurs in the Module Thread.
@@ -114,9 +457,22 @@ public interface ModuleLoader {
      */
     void startModule(@Nonnull Module module);
 
+    /**
+     * Starts a {@link Module Module} with arguments, returning a {@link CompletionStage CompletionStage} completed once its {@link Module#onStart(String...)} has returned.
+     * <br><p>The stage completes with the module itself, so startup of many modules can be fanned out and joined with
+     * {@link java.util.concurrent.CompletableFuture#allOf(java.util.concurrent.CompletableFuture[]) CompletableFuture#allOf} without polling {@link Module#getState()}.
+     * If the module doesn't belong to this loader, isn't dead or throws while starting, the stage completes exceptionally with a {@link ModuleException ModuleException}.</p>
+     * @param module The <b>non-null</b> {@link Module Module} to start. <b>MUST</b> be in the {@link State#DEAD DEAD} state to start again.
+     * @param args The <b>possibly-null and possibly-empty</b> arguments to pass to the {@link Module Module} for it to handle.
+     * @return A <b>not-null</b> stage completed with {@code module} once it has started.
+     * @throws NullPointerException If {@code module} is null.
+     * @see ModuleLoader#startModule(Module, BiConsumer, String...)
+     */
+    @Nonnull CompletionStage<Module> startModuleAsync(@Nonnull Module module, @Nullable String... args);
+
     /**
      * Kills a {@link Module Module} with no follow-up code.
-     * <br><p>Note: Modules, when dead or shutting down, should properly set their {@link State State} so that the loader can manage it properly. It has no obligation to do this automatically.</p>
+     * <br><p>Note: The loader moves the module to {@link State#SHUTTING_DOWN SHUTTING_DOWN} atomically before queueing the shut-down, and to {@link State#DEAD DEAD} once it's done.</p>
      * @param module The <b>non-null</b> {@link Module Module} to kill. <b>MUST</b> be in the {@link State#READY READY} <b>ONLY (NOT {@link State#STARTED STARTED}</b> before it can be killed.
      * @throws NullPointerException If {@code module} is null.
      * @throws samophis.kunou.core.exceptions.ModuleException If the module does not belong to this loader, if it's not ready or if an uncaught exception occurs in the Module Thread.
@@ -126,7 +482,7 @@ public interface ModuleLoader {
 
     /**
      * Kills a {@link Module Module} with possible follow-up code.
-     * <br><p>Note: Modules, when dead or shutting down, should properly set their {@link State State} so that the loader can manage it properly. It has no obligation to do this automatically.</p>
+     * <br><p>Note: The loader moves the module to {@link State#SHUTTING_DOWN SHUTTING_DOWN} atomically before queueing the shut-down, and to {@link State#DEAD DEAD} once it's done.</p>
      * @param module The <b>non-null</b> {@link Module Module} to kill. <b>MUST</b> be in the {@link State#READY} <b>ONLY (NOT {@link State#STARTED STARTED}</b> before it can be killed.
      * @param andThen The <b>possibly-null</b> follow-up code to run in the exact same thread after the shutdown. Set to null for no follow-up code.
      * @throws NullPointerException If {@code module} is null.
@@ -135,12 +491,98 @@ public interface ModuleLoader {
      */
     void killModule(@Nonnull Module module, @Nullable BiConsumer<ModuleLoader, Module> andThen);
 
+    /**
+     * Kills a {@link Module Module}, returning a {@link CompletionStage CompletionStage} completed once its {@link Module#onDeath()} has returned.
+     * <br><p>If the module doesn't belong to this loader, isn't ready or throws while shutting down, the stage completes exceptionally with a {@link ModuleException ModuleException}.</p>
+     * @param module The <b>non-null</b> {@link Module Module} to kill. <b>MUST</b> be in the {@link State#READY READY} <b>ONLY (NOT {@link State#STARTED STARTED}</b> before it can be killed.
+     * @return A <b>not-null</b> stage completed with {@code module} once it has shut down.
+     * @throws NullPointerException If {@code module} is null.
+     * @see ModuleLoader#killModule(Module, BiConsumer)
+     */
+    @Nonnull CompletionStage<Module> killModuleAsync(@Nonnull Module module);
+
+    /**
+     * Atomically swaps a running {@link Module Module} for another one with the same name, without losing a single message.
+     * <br><p>The replacement is started first, while {@code module} keeps serving traffic. Once it's {@link State#READY READY}, it takes {@code module}'s place in one atomic step
+     * and buffers every message sent to it, while {@code module} delivers whatever it had already accepted and is then killed. The buffered messages are delivered to the replacement
+     * right after, in the order they were sent. Senders are never blocked or rejected along the way: messages sent to {@code module} itself (through the loader or its {@link ModuleHandle ModuleHandle})
+     * are redirected to the replacement, and so is anything that slips into {@code module}'s mailbox after it died.
+     * <br>Only messages are redirected, though: once the swap completed, every other call made with {@code module} -- starting, killing, awaiting or replacing it, reading its state --
+     * fails with a {@link ModuleException ModuleException} as if it never belonged to this loader, so a stale reference can't act on the replacement.
+     * <br>If the replacement fails to start, nothing is swapped and {@code module} keeps running. If {@code module} throws in {@link Module#onDeath()}, the swap still completes.</p>
+     * @param module The <b>not-null</b>, {@link State#READY READY} {@link Module Module} to replace.
+     * @param replacement The <b>not-null</b>, dead {@link Module Module} to replace it with. Must have the same name as {@code module}.
+     * @param args <b>Possibly-null or possibly-empty</b> arguments to start {@code replacement} with.
+     * @return A <b>not-null</b> stage completed with {@code replacement} once it has taken over and started receiving buffered messages,
+     * or exceptionally with a {@link ModuleException ModuleException} if {@code module} doesn't belong to this loader or isn't ready, or the replacement fails to start.
+     * @throws NullPointerException If {@code module} or {@code replacement} are null.
+     * @throws IllegalArgumentException If {@code replacement} doesn't have the same name as {@code module}.
+     */
+    @Nonnull CompletionStage<Module> replaceModule(@Nonnull Module module, @Nonnull Module replacement, @Nullable String... args);
+
+    /**
+     * Starts every {@link Module Module} of this loader in dependency order, starting all modules of the same dependency layer in parallel.
+     * <br><p>Modules are topologically sorted by their {@link Module#getDependencies() dependencies}: a module is only started once every module it depends on is
+     * {@link State#READY READY}. Modules that are already ready are left alone, and modules that are currently starting are waited for.
+     * <br>If any module fails to start, later layers are never started and the stage completes exceptionally with a {@link ModuleException ModuleException}.</p>
+     * @return A <b>not-null</b> stage completed once every module is ready.
+     * @throws samophis.kunou.core.exceptions.ModuleException If a dependency doesn't belong to this loader, or if the dependencies form a cycle.
+     * @see ModuleLoader#stopAll()
+     */
+    @Nonnull CompletionStage<Void> startAll();
+
+    /**
+     * Stops every {@link Module Module} of this loader in reverse dependency order, stopping all modules of the same dependency layer in parallel.
+     * <br><p>A module is only stopped once every module depending on it is {@link State#DEAD DEAD}. Modules that are already dead are left alone,
+     * modules that are currently starting are stopped once they're ready, and modules that are currently shutting down are waited for.</p>
+     * @return A <b>not-null</b> stage completed once every module is dead.
+     * @throws samophis.kunou.core.exceptions.ModuleException If a dependency doesn't belong to this loader, or if the dependencies form a cycle.
+     * @see ModuleLoader#startAll()
+     */
+    @Nonnull CompletionStage<Void> stopAll();
+
+    /**
+     * Gracefully shuts the whole loader down, waiting at most {@code timeout} for its {@link Module Modules} to finish.
+     * <br><p>From the moment this is called, the loader refuses to add, start, replace or schedule anything, and every module stops accepting new messages.
+     * Every module that's alive is then killed, all of them in parallel and regardless of their {@link Module#getDependencies() dependencies} (use {@link #stopAll()} first for an ordered stop):
+     * each one handles whatever was already in its mailbox before running {@link Module#onDeath()}. Modules that are starting up are killed once they're ready, or count as stopped if their start-up fails.
+     * <br>Once every module is {@link State#DEAD DEAD} or the deadline passes, whichever comes first, requests still waiting for a {@link #ask(Module, Message, Class, long, TimeUnit) reply}
+     * fail, scheduled messages are dropped and durable mailboxes are flushed to disk. Modules that didn't make it keep running on their own and are listed in the report;
+     * their mailboxes are only flushed once they die.
+     * <br><br>The {@link #getExecutor() executor} is left alone, since it may be shared: shut a dedicated one down yourself once the report is in.
+     * Loaders that are still running when the JVM exits are shut down this way automatically, with a timeout of ten seconds, before the module threads are stopped.
+     * <br>Calling this more than once is harmless: later calls return the same stage, and their timeout is ignored.</p>
+     * @param timeout The <b>not-null</b>, non-negative time to wait for every module to die.
+     * @return A <b>not-null</b> stage completed with a {@link ShutdownReport ShutdownReport} once every module died or the deadline passed.
+     * @throws NullPointerException If {@code timeout} is null.
+     * @throws IllegalArgumentException If {@code timeout} is negative.
+     */
+    @Nonnull CompletionStage<ShutdownReport> shutdown(@Nonnull Duration timeout);
+
+    /**
+     * Checks whether or not {@link #shutdown(Duration)} was called on this loader.
+     * @return Whether or not this loader is shutting down or shut down.
+     */
+    boolean isShutdown();
+
     /**
      * Fetches a new ModuleLoader instance -- is directly equivalent to the code: {@code new ModuleLoaderImpl()}
-     * <br><p>You should keep any new ModuleLoaders few. The whole point of a ModuleLoader is to track and manage modules in general, not to spawn one module and multiple "cores".</p>
+     * <br><p>You should keep any new ModuleLoaders few. The whole point of a ModuleLoader is to track and manage modules in general, not to spawn one module and multiple "cores".
+     * <br>Loaders created this way share the JVM-wide {@link ModuleExecutor#getDefault() default executor}.</p>
      * @return A brand new ModuleLoader instance.
      */
     static ModuleLoader newInstance() {
         return new ModuleLoaderImpl();
     }
+
+    /**
+     * Fetches a new ModuleLoader instance running on its own execution engine -- is directly equivalent to the code: {@code new ModuleLoaderImpl(executor)}
+     * <br><p>Use this to tune blocking-heavy and CPU-heavy deployments separately, or to keep several loaders in one JVM from competing for the same threads.</p>
+     * @param executor The <b>not-null</b> {@link ModuleExecutor ModuleExecutor} the new loader should run its modules on.
+     * @return A brand new ModuleLoader instance.
+     * @throws NullPointerException If {@code executor} is null.
+     */
+    static ModuleLoader newInstance(@Nonnull ModuleExecutor executor) {
+        return new ModuleLoaderImpl(executor);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package samophis.kunou.core.modules;
+
+/**
+ * What a bounded mailbox does with a new message once it already holds as many as its {@link MailboxConfig#getCapacity() capacity} allows.
+ * <br><p>Only messages count towards the capacity: start-ups, shut-downs and other loader events always get through.
+ * A batch ({@link ModuleLoader#sendMessages(Module, java.util.Collection) sent} or {@link ModuleLoader#publishBatch(String, java.util.Collection) published}) counts as one message.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ * @see MailboxConfig
+ */
+
+public enum OverloadPolicy {
+    /** The message is refused: sends throw a {@link samophis.kunou.core.exceptions.ModuleException ModuleException}, asynchronous sends and asks fail, and publishes skip the module. */
+    REJECT,
+    /** The sender waits until there's room again, up to a {@link MailboxConfig#getBlockTimeoutNanos() timeout}, and is then refused just like with {@link #REJECT}. */
+    BLOCK,
+    /** The message is accepted and the oldest message still waiting is dropped instead. Stages waiting on a dropped message fail with a {@link samophis.kunou.core.exceptions.ModuleException ModuleException}. */
+    DROP_OLDEST,
+    /**
+     * A message with the same {@link MailboxConfig#getCoalescingKey() key} as one that's still waiting replaces it, keeping its place in the queue; only the latest one is handled.
+     * <br>Messages without a key (or sent with follow-up code, or in batches) are never coalesced, and are refused like with {@link #REJECT} when the mailbox is full.
+     */
+    COALESCE
+}
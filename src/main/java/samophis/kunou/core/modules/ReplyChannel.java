@@ -0,0 +1,36 @@
+package samophis.kunou.core.modules;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The way back to whoever {@link ModuleLoader#ask(Module, Message, Class, long, java.util.concurrent.TimeUnit) asked} a {@link Module Module} something.
+ * <br><p>A channel accepts exactly one outcome: the first reply or failure wins, and everything after it (including a reply arriving after the request timed out) is ignored.
+ * Channels are thread-safe, so a module can keep the {@link Message Message} around and reply later, from any thread.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public interface ReplyChannel {
+    /**
+     * Completes the request with a value.
+     * @param value The <b>not-null</b> reply. If it isn't of the type the asker expects, the asker fails with a {@link samophis.kunou.core.exceptions.ModuleException ModuleException} instead.
+     * @return Whether or not this reply was the one that completed the request.
+     * @throws NullPointerException If {@code value} is null.
+     */
+    boolean reply(@Nonnull Object value);
+
+    /**
+     * Completes the request exceptionally.
+     * @param cause The <b>not-null</b> reason the request failed.
+     * @return Whether or not this failure was the one that completed the request.
+     * @throws NullPointerException If {@code cause} is null.
+     */
+    boolean fail(@Nonnull Throwable cause);
+
+    /**
+     * Checks whether or not the request is still waiting for a reply, i.e. it hasn't been replied to, failed or timed out yet.
+     * @return Whether or not a reply would still be accepted.
+     */
+    boolean isOpen();
+}
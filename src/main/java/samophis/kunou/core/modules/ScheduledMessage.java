@@ -0,0 +1,44 @@
+package samophis.kunou.core.modules;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A message {@link ModuleLoader#scheduleMessage(Module, long, java.util.concurrent.TimeUnit, String...) scheduled} for later (or for every so often) delivery to a {@link Module Module}.
+ * <br><p>Scheduled messages belong to the module they're sent to: they're cancelled on their own once it's killed (or fails to start), move over to its replacement
+ * on a {@link ModuleLoader#replaceModule(Module, Module, String...) hot swap}, and are dropped if another module with the same name is {@link ModuleLoader#addModule(Module) added}.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public interface ScheduledMessage {
+    /**
+     * Returns the module the message is scheduled for.
+     * @return The <b>not-null</b> {@link Module Module} the message was scheduled for, even if it has been replaced since.
+     */
+    @Nonnull Module getModule();
+
+    /**
+     * Checks whether or not the message is delivered periodically rather than once.
+     * @return Whether or not the message was scheduled at a fixed rate.
+     */
+    boolean isPeriodic();
+
+    /**
+     * Cancels every delivery that hasn't happened yet. A delivery that's already on its way to the mailbox isn't taken back.
+     * @return Whether or not this call cancelled the message (false if it was already cancelled or, for one-shot messages, already delivered).
+     */
+    boolean cancel();
+
+    /**
+     * Checks whether or not the message was cancelled, either explicitly or because its module was killed.
+     * @return Whether or not the message was cancelled.
+     */
+    boolean isCancelled();
+
+    /**
+     * Checks whether or not the message won't be delivered ever again, because it was cancelled or, for one-shot messages, already delivered.
+     * @return Whether or not the message is done.
+     */
+    boolean isDone();
+}
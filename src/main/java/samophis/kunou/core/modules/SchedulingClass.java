@@ -0,0 +1,33 @@
+package samophis.kunou.core.modules;
+
+/**
+ * How urgently the mailbox of a {@link Module Module} is drained when it competes with other modules for the threads of a {@link samophis.kunou.core.util.ModuleExecutor#newFairThreadPool(int) fair executor}.
+ * <br><p>Whenever a thread frees up, it serves the most urgent class that still has time left in the current round. Each class gets {@link #getWeight() weight} time slices per round,
+ * and a new round only begins once every class with work has used up its own, so even {@link #BULK BULK} modules keep making progress while the others are saturated.
+ * Within a class, modules share the time in proportion to their {@link MailboxConfig#getWeight() weight}.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ * @see MailboxConfig#withScheduling(SchedulingClass, int)
+ */
+
+public enum SchedulingClass {
+    /** Latency-sensitive modules (voice, heartbeats) that should be drained as soon as a thread frees up. */
+    CRITICAL(8),
+    /** The default for every module. */
+    NORMAL(4),
+    /** Throughput-oriented modules whose backlog can wait, like encoders or bulk imports. */
+    BULK(1);
+    private final int weight;
+    SchedulingClass(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Returns how many time slices this class gets per scheduling round.
+     * @return The positive weight of this class.
+     */
+    public int getWeight() {
+        return weight;
+    }
+}
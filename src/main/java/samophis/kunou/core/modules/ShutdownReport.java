@@ -0,0 +1,46 @@
+package samophis.kunou.core.modules;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * What a {@link ModuleLoader#shutdown(Duration) loader shutdown} achieved before its deadline.
+ * <br><p>Every {@link Module Module} the loader held when the shutdown began ends up in exactly one of the three lists: stopped cleanly, stopped with {@link Module#onDeath()} throwing,
+ * or still not {@link State#DEAD DEAD} when the deadline passed -- usually because it was still draining its mailbox or stuck in a handler.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public interface ShutdownReport {
+    /**
+     * Returns the modules that drained their mailbox and ran {@link Module#onDeath()} without throwing in time, or were already dead -- including modules whose start-up failed while the loader was shutting down.
+     * @return A <b>not-null</b>, unmodifiable list of {@link Module Modules}.
+     */
+    @Nonnull List<Module> getStopped();
+
+    /**
+     * Returns the modules that died in time, but threw while shutting down.
+     * @return A <b>not-null</b>, unmodifiable list of {@link Module Modules}.
+     */
+    @Nonnull List<Module> getFailed();
+
+    /**
+     * Returns the modules that weren't {@link State#DEAD DEAD} yet when the deadline passed. They keep running on their own until they're done.
+     * @return A <b>not-null</b>, unmodifiable list of {@link Module Modules}.
+     */
+    @Nonnull List<Module> getUnfinished();
+
+    /**
+     * Returns how long the shutdown took, from the call to {@link ModuleLoader#shutdown(Duration)} to the last module dying or the deadline passing.
+     * @return The <b>not-null</b> elapsed time.
+     */
+    @Nonnull Duration getElapsed();
+
+    /**
+     * Checks whether or not every module died before the deadline.
+     * @return Whether or not {@link #getUnfinished()} is empty.
+     */
+    boolean isComplete();
+}
@@ -17,5 +17,28 @@ public enum State {
     /** Represents a state where a {@link samophis.kunou.core.modules.Module Module} is completely ready to accept events and function as intended. */
     READY,
     /** Represents a state where a {@link samophis.kunou.core.modules.Module Module} has been ordered to shut down and is stopping all of its active code. */
-    SHUTTING_DOWN
+    SHUTTING_DOWN;
+
+    /**
+     * Checks whether or not a {@link samophis.kunou.core.modules.Module Module} may legally move from this state to another one.
+     * <br><p>The lifecycle is: {@code DEAD -> STARTING -> (STARTED ->) READY -> SHUTTING_DOWN -> DEAD}. A module that fails while starting may fall straight back to {@code DEAD}.</p>
+     * @param next The <b>not-null</b> state to move to.
+     * @return Whether or not the transition is legal.
+     */
+    public boolean canTransitionTo(State next) {
+        switch (this) {
+            case DEAD:
+                return next == STARTING;
+            case STARTING:
+                return next == STARTED || next == READY || next == DEAD;
+            case STARTED:
+                return next == READY || next == DEAD;
+            case READY:
+                return next == SHUTTING_DOWN;
+            case SHUTTING_DOWN:
+                return next == DEAD;
+            default:
+                return false;
+        }
+    }
 }
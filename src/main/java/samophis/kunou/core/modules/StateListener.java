@@ -0,0 +1,23 @@
+package samophis.kunou.core.modules;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Listens for {@link State State} transitions of the {@link Module Modules} owned by a {@link ModuleLoader ModuleLoader}.
+ * <br><p>Listeners are called synchronously, on the thread that performed the transition (the caller for accepted start-ups and shut-downs, a module thread otherwise),
+ * so they should be short and must never block. Exceptions thrown by a listener are logged and otherwise ignored.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+@FunctionalInterface
+public interface StateListener {
+    /**
+     * The method that fires right after a {@link Module Module} moved from one {@link State State} to another.
+     * @param module The <b>not-null</b> {@link Module Module} that changed state.
+     * @param from The <b>not-null</b> {@link State State} the module was in.
+     * @param to The <b>not-null</b> {@link State State} the module is now in.
+     */
+    void onTransition(@Nonnull Module module, @Nonnull State from, @Nonnull State to);
+}
@@ -0,0 +1,23 @@
+package samophis.kunou.core.modules;
+
+/**
+ * When a durable mailbox forces its {@link JournalConfig journal} from the page cache to disk.
+ * <br><p>Every message is written to a memory-mapped file before it's queued, so once the send returns it survives the JVM crashing or being killed, whatever the policy.
+ * The policy only decides how much can be lost if the whole machine goes down (power loss, kernel panic) before the operating system wrote the pages back on its own.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ * @see JournalConfig
+ */
+
+public enum SyncPolicy {
+    /** The journal is never forced; the operating system writes it back whenever it likes. The fastest, and enough to survive crashes of the JVM itself. */
+    NONE,
+    /**
+     * The journal is forced in the background once {@link JournalConfig#getSyncBatch() enough} messages were written since the last time, or every
+     * {@link JournalConfig#getSyncIntervalNanos() interval}, whichever comes first. Senders never wait for the disk; at most one batch or interval of messages can be lost.
+     */
+    BATCHED,
+    /** The journal is forced after every single message, before the send returns. Nothing acknowledged to a sender is ever lost, but every send waits for the disk. */
+    ALWAYS
+}
@@ -0,0 +1,35 @@
+package samophis.kunou.core.modules.internal;
+
+import samophis.kunou.core.metrics.ExecutorMetricsMXBean;
+import samophis.kunou.core.util.ModuleExecutor;
+import samophis.kunou.core.util.ModuleThreadExecutor;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+
+final class ExecutorMetrics implements ExecutorMetricsMXBean {
+    private final ModuleExecutor executor;
+    ExecutorMetrics(@Nonnull ModuleExecutor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+    @Override
+    public int getPoolSize() {
+        return executor.getStats().getPoolSize();
+    }
+    @Override
+    public int getActiveThreads() {
+        return executor.getStats().getActiveThreads();
+    }
+    @Override
+    public long getQueuedTasks() {
+        return executor.getStats().getQueuedTasks();
+    }
+    @Override
+    public long getCompletedTasks() {
+        return executor.getStats().getCompletedTasks();
+    }
+    @Override
+    public int getLiveModuleThreads() {
+        return ModuleThreadExecutor.getLiveThreadCount();
+    }
+}
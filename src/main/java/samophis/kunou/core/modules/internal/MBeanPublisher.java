@@ -0,0 +1,78 @@
+package samophis.kunou.core.modules.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import samophis.kunou.core.exceptions.ModuleException;
+
+import javax.annotation.Nonnull;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+
+/**
+ * Publishes the metrics of one loader on the platform {@link MBeanServer MBeanServer}, under the {@value #DOMAIN} domain.
+ * <br><p>Names look like {@code samophis.kunou.core:type=Module,loader="Main",name="Audio Module"} and {@code samophis.kunou.core:type=Executor,loader="Main"}.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class MBeanPublisher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MBeanPublisher.class);
+    private static final String DOMAIN = "samophis.kunou.core";
+    private final MBeanServer server;
+    private final String loader;
+    MBeanPublisher(@Nonnull String loaderName) {
+        this.server = ManagementFactory.getPlatformMBeanServer();
+        this.loader = ObjectName.quote(Objects.requireNonNull(loaderName));
+    }
+    void publishExecutor(@Nonnull ExecutorMetrics metrics) {
+        register(name("Executor", null), metrics);
+    }
+    void publishModule(@Nonnull ModuleMetrics metrics) {
+        register(name("Module", metrics.getModuleName()), metrics);
+    }
+    void unpublishAll() {
+        try {
+            for (ObjectName name : server.queryNames(new ObjectName(DOMAIN + ":loader=" + loader + ",*"), null))
+                unregister(name);
+        } catch (JMException exc) {
+            throw new ModuleException(exc);
+        }
+    }
+    private void register(@Nonnull ObjectName name, @Nonnull Object bean) {
+        try {
+            try {
+                server.registerMBean(bean, name);
+            } catch (InstanceAlreadyExistsException exc) {
+                /* -- a module re-added under the same name replaces the old one, and so do its metrics -- */
+                unregister(name);
+                server.registerMBean(bean, name);
+            }
+        } catch (JMException exc) {
+            LOGGER.warn("Could not register MBean {}!", name);
+            throw new ModuleException(exc);
+        }
+    }
+    private void unregister(@Nonnull ObjectName name) {
+        try {
+            server.unregisterMBean(name);
+        } catch (InstanceNotFoundException ignored) {
+            /* -- already gone, which is all we wanted -- */
+        } catch (JMException exc) {
+            throw new ModuleException(exc);
+        }
+    }
+    @Nonnull
+    private ObjectName name(@Nonnull String type, String module) {
+        try {
+            return new ObjectName(DOMAIN + ":type=" + type + ",loader=" + loader + (module == null ? "" : ",name=" + ObjectName.quote(module)));
+        } catch (JMException exc) {
+            throw new ModuleException(exc);
+        }
+    }
+}
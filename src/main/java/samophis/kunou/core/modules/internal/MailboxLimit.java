@@ -0,0 +1,189 @@
+package samophis.kunou.core.modules.internal;
+
+import samophis.kunou.core.modules.MailboxConfig;
+import samophis.kunou.core.modules.Message;
+import samophis.kunou.core.modules.OverloadPolicy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Enforces the capacity of a bounded {@link ModuleMailbox ModuleMailbox} and applies its {@link OverloadPolicy OverloadPolicy}.
+ * <br><p>Producers {@link #admit(Object, boolean) admit} every message before queueing it, and the draining thread {@link #release(Object) releases} it right before dispatch.
+ * Loader events ({@link Runnable Runnables}) never go through here. The count of waiting messages is a single atomic, reserved with a compare-and-set, so a full mailbox
+ * can never be overshot by concurrent senders.
+ * <br><br>With {@link OverloadPolicy#DROP_OLDEST DROP_OLDEST}, a full mailbox still counts the new message, and the mailbox then {@link #isOverflowing() evicts} its oldest one
+ * to make room, so the queue never holds much more than its capacity. Such mailboxes poll under a lock the evicting producer holds as well, and count messages down as they're
+ * {@link #taken() taken} off the queue rather than when released, so a producer never evicts to make room a drain already made. Coalescing keeps the latest message of every key in a slot that's queued once; later messages just replace
+ * the contents of the slot until the drain takes it, which happens under the same map lock, so no message can slip in after the slot was taken.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class MailboxLimit {
+    /* -- returned by admit when the message is refused; null means it was merged into a waiting slot and there's nothing to queue -- */
+    static final Object REJECTED = new Object();
+    private final ModuleMetrics metrics;
+    private final int capacity;
+    private final OverloadPolicy policy;
+    private final long blockTimeoutNanos;
+    private final Function<? super Message<?>, ?> coalescingKey;
+    private final AtomicInteger pending;
+    private final ConcurrentHashMap<Object, Slot> slots;
+    private final Object lock;
+    private volatile int blocked;
+    MailboxLimit(@Nonnull MailboxConfig config, @Nonnull ModuleMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+        this.capacity = config.getCapacity();
+        this.policy = config.getPolicy();
+        this.blockTimeoutNanos = config.getBlockTimeoutNanos();
+        this.coalescingKey = config.getCoalescingKey();
+        this.pending = new AtomicInteger(0);
+        this.slots = policy == OverloadPolicy.COALESCE ? new ConcurrentHashMap<>() : null;
+        this.lock = new Object();
+    }
+    boolean isSaturated() {
+        return pending.get() >= capacity;
+    }
+    boolean isOverflowing() {
+        return policy == OverloadPolicy.DROP_OLDEST && pending.get() > capacity;
+    }
+    int getPending() {
+        return pending.get();
+    }
+    @Nullable
+    Object admit(@Nonnull Object payload, boolean mayBlock) {
+        switch (policy) {
+            case BLOCK:
+                /* -- some senders, like the timer thread, must never wait; for them a full mailbox just refuses -- */
+                return (mayBlock ? reserveBlocking() : reserve()) ? payload : reject();
+            case DROP_OLDEST:
+                /* -- overshooting is fine here: the mailbox evicts the oldest message right away -- */
+                if (!reserve())
+                    pending.incrementAndGet();
+                return payload;
+            case COALESCE:
+                Object key = keyOf(payload);
+                return key == null ? (reserve() ? payload : reject()) : coalesce(key, payload);
+            default:
+                return reserve() ? payload : reject();
+        }
+    }
+    @Nonnull
+    Object release(@Nonnull Object event) {
+        Object payload = event instanceof Slot ? take((Slot) event) : event;
+        /* -- DROP_OLDEST mailboxes already counted it down when it was taken off the queue -- */
+        if (policy != OverloadPolicy.DROP_OLDEST)
+            pending.decrementAndGet();
+        if (blocked > 0) {
+            synchronized (lock) {
+                lock.notify();
+            }
+        }
+        return payload;
+    }
+    void taken() {
+        pending.decrementAndGet();
+    }
+    void dropped() {
+        pending.decrementAndGet();
+        metrics.messageDropped();
+    }
+    @Nonnull
+    Object evict(@Nonnull Object event) {
+        /* -- for messages leaving this mailbox without being counted down, i.e. redirected to a successor -- */
+        return event instanceof Slot ? take((Slot) event) : event;
+    }
+    void inherit(int messages) {
+        /* -- messages handed over by a predecessor were admitted there; counting them here may briefly overshoot the capacity, which is fine -- */
+        pending.addAndGet(messages);
+    }
+    @Nonnull
+    private Object reject() {
+        metrics.messageRejected();
+        return REJECTED;
+    }
+    private boolean reserve() {
+        while (true) {
+            int current = pending.get();
+            if (current >= capacity)
+                return false;
+            if (pending.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+    private boolean reserveBlocking() {
+        if (reserve())
+            return true;
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        synchronized (lock) {
+            /* -- announced before re-checking, so a drain either sees us waiting or we see the room it made -- */
+            blocked++;
+            try {
+                while (!reserve()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        return false;
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+                return true;
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                blocked--;
+            }
+        }
+    }
+    @Nullable
+    private Object keyOf(@Nonnull Object payload) {
+        if (payload instanceof Message)
+            return coalescingKey.apply((Message<?>) payload);
+        if (payload instanceof String[])
+            return coalescingKey.apply(Message.ofStrings((String[]) payload));
+        /* -- deliveries carry follow-ups and batches carry many messages; neither can be replaced by a later message -- */
+        return null;
+    }
+    @Nullable
+    private Object coalesce(@Nonnull Object key, @Nonnull Object payload) {
+        Slot[] created = new Slot[1];
+        boolean[] refused = new boolean[1];
+        slots.compute(key, (ignored, slot) -> {
+            if (slot != null) {
+                slot.payload = payload;
+                return slot;
+            }
+            if (!reserve()) {
+                refused[0] = true;
+                return null;
+            }
+            created[0] = new Slot(key, payload);
+            return created[0];
+        });
+        if (refused[0])
+            return reject();
+        if (created[0] == null)
+            metrics.messageCoalesced();
+        return created[0];
+    }
+    @Nonnull
+    private Object take(@Nonnull Slot slot) {
+        slots.remove(slot.key, slot);
+        /* -- removal locks the same bin as compute, so the payload can't change anymore -- */
+        return slot.payload;
+    }
+    private static final class Slot {
+        private final Object key;
+        private volatile Object payload;
+        private Slot(@Nonnull Object key, @Nonnull Object payload) {
+            this.key = key;
+            this.payload = payload;
+        }
+    }
+}
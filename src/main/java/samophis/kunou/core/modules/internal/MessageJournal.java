@@ -0,0 +1,367 @@
+package samophis.kunou.core.modules.internal;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.modules.JournalConfig;
+import samophis.kunou.core.modules.SyncPolicy;
+import samophis.kunou.core.util.HashedWheelTimer;
+import samophis.kunou.core.util.MessageCodec;
+import samophis.kunou.core.util.ModuleThreadExecutor;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * The durable, append-only log behind a journaled {@link ModuleMailbox ModuleMailbox}.
+ * <br><p>Messages are appended to memory-mapped segment files named after the sequence number of their first record, so an append is a copy into the page cache
+ * and nothing else. Each record is {@code [length][crc][sequence][payload]}; the length is written last and acts as the commit marker, and the CRC catches records
+ * torn by a crash of the machine, so recovery stops at the first record that isn't whole.
+ * <br><br>Mailboxes handle their messages in order, so acknowledgements are a single watermark ("everything up to here was handled") kept in a small mapped file.
+ * Messages handed over on a hot swap may be acknowledged slightly out of order; those wait in a set until the watermark catches up with them.
+ * Segments are deleted once the watermark has passed their last record. Forcing to disk follows the {@link SyncPolicy SyncPolicy}, and background syncs
+ * run on the module thread pool, never on the timer or on a sender.
+ * <br><br>Appends must be made while holding the monitor of the journal, together with queueing the message, so records are numbered in the order the mailbox will handle them.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class MessageJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageJournal.class);
+    /* -- length, crc and sequence -- */
+    private static final int HEADER = 16;
+    private static final String SUFFIX = ".log";
+    private final Path directory;
+    private final String name;
+    private final int segmentSize;
+    private final SyncPolicy policy;
+    private final int syncBatch;
+    private final long syncIntervalNanos;
+    private final HashedWheelTimer timer;
+    private final ArrayDeque<Segment> segments;
+    private final CRC32 crc;
+    private final ByteBuffer crcScratch;
+    private final MappedByteBuffer ackBuffer;
+    private final LongOpenHashSet acknowledgedAhead;
+    private final AtomicInteger unsynced;
+    private final AtomicBoolean syncing;
+    private final Object ackLock;
+    private volatile Segment current;
+    private volatile long acknowledged;
+    private volatile long nextSequence;
+    private volatile boolean ackDirty;
+    private volatile boolean closed;
+    private volatile HashedWheelTimer.Timeout syncTimeout;
+    /* -- handed out exactly once, to the first start of the module -- */
+    private boolean recovered;
+    private MessageJournal(@Nonnull Path directory, @Nonnull String name, @Nonnull JournalConfig config, @Nonnull HashedWheelTimer timer) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = config.getSegmentSize();
+        this.policy = config.getSyncPolicy();
+        this.syncBatch = config.getSyncBatch();
+        this.syncIntervalNanos = config.getSyncIntervalNanos();
+        this.timer = timer;
+        this.segments = new ArrayDeque<>();
+        this.crc = new CRC32();
+        this.crcScratch = ByteBuffer.allocate(8);
+        this.acknowledgedAhead = new LongOpenHashSet();
+        this.unsynced = new AtomicInteger(0);
+        this.syncing = new AtomicBoolean(false);
+        this.ackLock = new Object();
+        this.ackBuffer = map(directory.resolve("ack"), 8);
+        this.acknowledged = ackBuffer.getLong(0);
+    }
+    @Nonnull
+    static MessageJournal open(@Nonnull JournalConfig config, @Nonnull String moduleName, @Nonnull HashedWheelTimer timer) {
+        Path directory = directoryOf(config, moduleName);
+        try {
+            Files.createDirectories(directory);
+            MessageJournal journal = new MessageJournal(directory, moduleName, config, timer);
+            journal.recover();
+            journal.scheduleSync();
+            return journal;
+        } catch (IOException exc) {
+            LOGGER.error("Failed to open the journal of {} in {}: ", moduleName, directory, exc);
+            throw new ModuleException(exc);
+        }
+    }
+    @Nonnull
+    static Path directoryOf(@Nonnull JournalConfig config, @Nonnull String moduleName) {
+        /* -- module names are free-form, so keep only what's safe in a file name on every platform -- */
+        return config.getDirectory().resolve(moduleName.replaceAll("[^A-Za-z0-9._-]", "_")).toAbsolutePath().normalize();
+    }
+    @Nonnull
+    Path getDirectory() {
+        return directory;
+    }
+    long getBacklog() {
+        return Math.max(0, nextSequence - 1 - acknowledged);
+    }
+    /* -- callers hold the monitor of this journal; returns the sequence number of the record -- */
+    long append(@Nonnull byte[] record) {
+        if (closed)
+            throw new ModuleException(String.format("Journal of %s is closed!", name));
+        long sequence = nextSequence;
+        int length = HEADER + record.length;
+        try {
+            Segment segment = current;
+            if (segment == null || segment.buffer.capacity() - segment.position < length + 4)
+                segment = roll(sequence, length);
+            ByteBuffer buffer = segment.buffer;
+            int position = segment.position;
+            buffer.putLong(position + 8, sequence);
+            segment.writer.position(position + HEADER);
+            segment.writer.put(record);
+            buffer.putInt(position + 4, checksum(sequence, record));
+            /* -- written last: recovery ignores everything past a zero length -- */
+            buffer.putInt(position, length);
+            segment.position = position + length;
+            nextSequence = sequence + 1;
+        } catch (IOException exc) {
+            LOGGER.error("Failed to append to the journal of {}: ", name, exc);
+            throw new ModuleException(exc);
+        }
+        afterAppend();
+        return sequence;
+    }
+    void ack(long sequence) {
+        synchronized (ackLock) {
+            long watermark = acknowledged;
+            if (sequence <= watermark)
+                return;
+            if (sequence != watermark + 1) {
+                acknowledgedAhead.add(sequence);
+                return;
+            }
+            watermark = sequence;
+            while (!acknowledgedAhead.isEmpty() && acknowledgedAhead.remove(watermark + 1))
+                watermark++;
+            ackBuffer.putLong(0, watermark);
+            acknowledged = watermark;
+            ackDirty = true;
+        }
+    }
+    /* -- feeds every record that was never acknowledged to the sink, the first time only; returns how many there were -- */
+    synchronized int replay(@Nonnull ObjLongConsumer<Object> sink) {
+        if (recovered)
+            return 0;
+        recovered = true;
+        long watermark = acknowledged;
+        int replayed = 0;
+        for (Segment segment : segments) {
+            ByteBuffer buffer = segment.buffer;
+            int position = 0;
+            while (position < segment.position) {
+                int length = buffer.getInt(position);
+                long sequence = buffer.getLong(position + 8);
+                if (sequence > watermark) {
+                    sink.accept(MessageCodec.decode(ByteBuffer.wrap(segment.read(position, length))), sequence);
+                    replayed++;
+                }
+                position += length;
+            }
+        }
+        return replayed;
+    }
+    synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        HashedWheelTimer.Timeout timeout = syncTimeout;
+        if (timeout != null)
+            timeout.cancel();
+        if (policy != SyncPolicy.NONE)
+            force();
+    }
+    private void recover() throws IOException {
+        ObjectArrayList<Path> files = new ObjectArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream)
+                files.add(file);
+        }
+        files.sort((first, second) -> Long.compare(firstSequenceOf(first), firstSequenceOf(second)));
+        long last = 0;
+        for (Path file : files) {
+            long first = firstSequenceOf(file);
+            if (first < 0)
+                continue;
+            /* -- mapped at its current size: a segment is never shorter than its records, and a larger record may have made it longer than the config says -- */
+            Segment segment = new Segment(file, first, map(file, Math.max(Files.size(file), segmentSize)));
+            last = scan(segment, last);
+            /* -- nothing whole in it, so nothing to keep; its name may well be the one the next segment needs -- */
+            if (segment.position == 0 && segment.torn) {
+                Files.delete(file);
+                continue;
+            }
+            segments.add(segment);
+        }
+        current = segments.peekLast();
+        nextSequence = Math.max(last, acknowledged) + 1;
+        /* -- a torn tail means the next record can't follow on in the same segment, since recovery would stop in front of it -- */
+        if (current != null && current.torn)
+            current = null;
+        deleteAcknowledged();
+        if (getBacklog() > 0)
+            LOGGER.info("Journal of {} holds {} unacknowledged messages.", name, getBacklog());
+    }
+    private long scan(@Nonnull Segment segment, long last) {
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+        long expected = segment.first;
+        while (position + 4 <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0)
+                break;
+            if (length < HEADER || position + length > buffer.capacity() || buffer.getLong(position + 8) != expected || !checksumMatches(segment, position, length)) {
+                LOGGER.warn("Journal of {} has a torn or corrupt record at {}:{}; ignoring everything after it.", name, segment.file.getFileName(), position);
+                segment.torn = true;
+                break;
+            }
+            position += length;
+            expected++;
+        }
+        segment.position = position;
+        return position == 0 ? last : expected - 1;
+    }
+    private boolean checksumMatches(@Nonnull Segment segment, int position, int length) {
+        return checksum(segment.buffer.getLong(position + 8), segment.read(position, length)) == segment.buffer.getInt(position + 4);
+    }
+    private int checksum(long sequence, @Nonnull byte[] record) {
+        crc.reset();
+        crcScratch.putLong(0, sequence);
+        crc.update(crcScratch.array(), 0, 8);
+        crc.update(record, 0, record.length);
+        return (int) crc.getValue();
+    }
+    @Nonnull
+    private Segment roll(long first, int length) throws IOException {
+        Segment previous = current;
+        /* -- everything in the old segment has to reach the disk before anything after it could -- */
+        if (previous != null && policy != SyncPolicy.NONE)
+            previous.buffer.force();
+        Path file = directory.resolve(String.format("%020d%s", first, SUFFIX));
+        Segment segment = new Segment(file, first, map(file, Math.max(segmentSize, length + 4)));
+        segments.add(segment);
+        current = segment;
+        deleteAcknowledged();
+        return segment;
+    }
+    private void deleteAcknowledged() {
+        long watermark = acknowledged;
+        while (segments.size() > 1) {
+            Iterator<Segment> iterator = segments.iterator();
+            Segment oldest = iterator.next();
+            /* -- the oldest segment ends right before the next one starts -- */
+            if (iterator.next().first - 1 > watermark)
+                return;
+            segments.pollFirst();
+            try {
+                /* -- the mapping itself goes away once the buffer is collected -- */
+                Files.deleteIfExists(oldest.file);
+            } catch (IOException exc) {
+                LOGGER.warn("Failed to delete the acknowledged journal segment {}: ", oldest.file, exc);
+            }
+        }
+    }
+    private void afterAppend() {
+        switch (policy) {
+            case ALWAYS:
+                current.buffer.force();
+                break;
+            case BATCHED:
+                if (unsynced.incrementAndGet() >= syncBatch)
+                    syncAsync();
+                break;
+            default:
+                break;
+        }
+    }
+    private void scheduleSync() {
+        if (policy == SyncPolicy.NONE || closed)
+            return;
+        syncTimeout = timer.newTimeout(() -> {
+            if (unsynced.get() > 0 || ackDirty)
+                syncAsync();
+            scheduleSync();
+        }, syncIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+    private void syncAsync() {
+        if (!syncing.compareAndSet(false, true))
+            return;
+        ModuleThreadExecutor.runModuleMethod(() -> {
+            try {
+                force();
+            } finally {
+                syncing.set(false);
+            }
+        });
+    }
+    private void force() {
+        unsynced.set(0);
+        ackDirty = false;
+        Segment segment = current;
+        if (segment != null)
+            segment.buffer.force();
+        ackBuffer.force();
+    }
+    @Nonnull
+    private static MappedByteBuffer map(@Nonnull Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            /* -- the mapping stays valid once the channel is closed; mapping past the end grows the file, which reads back as zeros -- */
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+    private static long firstSequenceOf(@Nonnull Path file) {
+        String fileName = file.getFileName().toString();
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - SUFFIX.length()));
+        } catch (NumberFormatException exc) {
+            return -1;
+        }
+    }
+    @Override
+    public String toString() {
+        return "MessageJournal{" + name + ", next = " + nextSequence + ", acknowledged = " + acknowledged + "}";
+    }
+    private static final class Segment {
+        private final Path file;
+        private final long first;
+        private final MappedByteBuffer buffer;
+        /* -- a view for bulk copies, whose position is only ever touched while holding the monitor of the journal, like the fields below -- */
+        private final ByteBuffer writer;
+        private int position;
+        private boolean torn;
+        private Segment(@Nonnull Path file, long first, @Nonnull MappedByteBuffer buffer) {
+            this.file = file;
+            this.first = first;
+            this.buffer = buffer;
+            this.writer = buffer.duplicate();
+        }
+        @Nonnull
+        private byte[] read(int position, int length) {
+            byte[] record = new byte[length - HEADER];
+            ByteBuffer reader = buffer.duplicate();
+            reader.position(position + HEADER);
+            reader.get(record);
+            return record;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package samophis.kunou.core.modules.internal;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.modules.Module;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Sorts the {@link Module Modules} of a loader into dependency layers, using Kahn's algorithm.
+ * <br><p>Every module of a layer only depends on modules of earlier layers, so all modules of the same layer can be started (or, in reverse, stopped) in parallel.
+ * Dependencies are matched by {@link Module#getName() name} and must belong to the same loader.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class ModuleGraph {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModuleGraph.class);
+    private ModuleGraph() {}
+    @Nonnull
+    static List<List<Module>> layers(@Nonnull Collection<Module> modules) {
+        Map<String, Module> byName = new Object2ObjectOpenHashMap<>(modules.size());
+        for (Module module : modules)
+            byName.put(module.getName(), module);
+        Object2IntOpenHashMap<String> pending = new Object2IntOpenHashMap<>(modules.size());
+        Map<String, List<Module>> dependents = new Object2ObjectOpenHashMap<>(modules.size());
+        for (Module module : modules) {
+            String name = module.getName();
+            int count = 0;
+            for (String dependency : Objects.requireNonNull(module.getDependencies())) {
+                if (!byName.containsKey(dependency)) {
+                    LOGGER.warn("{} {} by {} depends on {}, which does not belong to this loader!", name, module.getVersion(), module.getAuthor(), dependency);
+                    throw new ModuleException(String.format("Missing dependency of %s: %s!", name, dependency));
+                }
+                dependents.computeIfAbsent(dependency, key -> new ObjectArrayList<>()).add(module);
+                count++;
+            }
+            pending.put(name, count);
+        }
+        List<List<Module>> layers = new ObjectArrayList<>();
+        List<Module> layer = new ObjectArrayList<>();
+        for (Module module : modules) {
+            if (pending.getInt(module.getName()) == 0)
+                layer.add(module);
+        }
+        int sorted = 0;
+        while (!layer.isEmpty()) {
+            layers.add(layer);
+            sorted += layer.size();
+            List<Module> next = new ObjectArrayList<>();
+            for (Module module : layer) {
+                List<Module> waiting = dependents.get(module.getName());
+                if (waiting == null)
+                    continue;
+                for (Module dependent : waiting) {
+                    if (pending.addTo(dependent.getName(), -1) == 1)
+                        next.add(dependent);
+                }
+            }
+            layer = next;
+        }
+        if (sorted != modules.size()) {
+            /* -- anything still waiting on a dependency at this point is part of (or stuck behind) a cycle -- */
+            List<String> cyclic = new ObjectArrayList<>();
+            for (Module module : modules) {
+                if (pending.getInt(module.getName()) > 0)
+                    cyclic.add(module.getName());
+            }
+            LOGGER.warn("Dependency cycle between modules: {}", cyclic);
+            throw new ModuleException("Dependency cycle between modules: " + cyclic);
+        }
+        return layers;
+    }
+}
@@ -1,77 +1,194 @@
 package samophis.kunou.core.modules.internal;
 
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.metrics.ExecutorMetricsMXBean;
+import samophis.kunou.core.metrics.ModuleMetricsMXBean;
+import samophis.kunou.core.modules.JournalConfig;
+import samophis.kunou.core.modules.MailboxConfig;
+import samophis.kunou.core.modules.Message;
 import samophis.kunou.core.modules.ModuleLoader;
 import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ModuleHandle;
+import samophis.kunou.core.modules.ScheduledMessage;
+import samophis.kunou.core.modules.ShutdownReport;
 import samophis.kunou.core.modules.State;
+import samophis.kunou.core.modules.StateListener;
+import samophis.kunou.core.util.HashedWheelTimer;
+import samophis.kunou.core.util.ModuleExecutor;
 import samophis.kunou.core.util.ModuleThreadExecutor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class ModuleLoaderImpl implements ModuleLoader {
     private static final Logger LOGGER = LoggerFactory.getLogger(ModuleLoaderImpl.class);
-    private final Map<String, Module> modules;
+    private static final Duration EXIT_TIMEOUT = Duration.ofSeconds(10);
+    private final ModuleRegistry registry;
+    private final ModuleExecutor executor;
+    private final List<StateListener> listeners;
+    private final ExecutorMetrics executorMetrics;
+    private final HashedWheelTimer timer;
+    private final ReplyTable replies;
+    private final TopicIndex topics;
+    /* -- by directory, so a module added again under the same name keeps appending to the same files -- */
+    private final Map<Path, MessageJournal> journals;
+    private final AtomicBoolean shutDown;
+    /* -- held while a swap publishes a replacement and while a shutdown takes its snapshot, so one always sees the other -- */
+    private final Object swapLock;
+    private final CompletableFuture<ShutdownReport> terminated;
+    private final Runnable exitTask;
+    private volatile MBeanPublisher publisher;
     public ModuleLoaderImpl() {
-        this.modules = new Object2ObjectOpenHashMap<>();
+        this(ModuleExecutor.getDefault());
+    }
+    public ModuleLoaderImpl(@Nonnull ModuleExecutor executor) {
+        this.registry = new ModuleRegistry();
+        this.executor = Objects.requireNonNull(executor);
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.executorMetrics = new ExecutorMetrics(executor);
+        this.timer = new HashedWheelTimer("kunou-timer");
+        this.replies = new ReplyTable(timer);
+        this.topics = new TopicIndex();
+        this.journals = new ConcurrentHashMap<>();
+        this.shutDown = new AtomicBoolean(false);
+        this.swapLock = new Object();
+        this.terminated = new CompletableFuture<>();
+        this.exitTask = new ExitTask(this);
+        ModuleThreadExecutor.addShutdownTask(exitTask);
+    }
+    @Nonnull
+    @Override
+    public ModuleExecutor getExecutor() {
+        return executor;
     }
     @Override
     public Map<String, Module> getModules() {
-        return Collections.unmodifiableMap(modules);
+        return registry.getModules();
     }
     @Override
     public List<Module> getModulesAsList() {
-        return Collections.unmodifiableList((List<Module>) modules.values());
+        return registry.getModulesAsList();
     }
     @Nullable
     @Override
     public Module getModuleByName(@Nonnull String name) {
-        return modules.get(Objects.requireNonNull(name));
+        ModuleMailbox mailbox = registry.get(Objects.requireNonNull(name));
+        return mailbox == null ? null : mailbox.getModule();
     }
+    @Nonnull
     @Override
-    public void addModule(@Nonnull Module module) {
-        Objects.requireNonNull(module);
-        modules.put(module.getName(), module);
+    public ModuleHandle addModule(@Nonnull Module module) {
+        return addModule(module, MailboxConfig.unbounded());
     }
+    @Nonnull
     @Override
-    public void startModule(@Nonnull Module module, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nullable String... args) {
+    public ModuleHandle addModule(@Nonnull Module module, @Nonnull MailboxConfig config) {
         Objects.requireNonNull(module);
-        String name = module.getName();
-        String version = module.getVersion();
-        String author = module.getAuthor();
-        if (modules.get(name) == null) {
-            LOGGER.warn("{} {} by {} does not belong to this loader!", name, version, author);
-            throw new ModuleException("Module does not belong to this loader!");
+        Objects.requireNonNull(config);
+        checkRunning(module, "add");
+        ModuleMailbox mailbox = new ModuleMailbox(this, module, executor.getLane(module, config), executor.getTimeSliceNanos(), config, journalOf(module, config), listeners, null);
+        ModuleMailbox previous = registry.put(mailbox);
+        if (previous != null) {
+            previous.detach();
+            topics.removeAll(previous);
         }
-        State state = module.getState();
-        String sName = state.name();
-        switch (state) {
-            case DEAD:
-                ModuleThreadExecutor.runModuleMethod(() -> {
-                    module.onStart(args);
-                    if (andThen != null)
-                        andThen.accept(this, module);
-                }, false);
-                break;
-            case READY:
-            case STARTED:
-            case STARTING:
-                LOGGER.warn("{} {} by {} is already ready or starting up! State = {}", name, version, author, sName);
-                throw new ModuleException(String.format("State of %s %s by %s = %s!", name, version, author, sName));
-            case SHUTTING_DOWN:
-                LOGGER.warn("{} {} by {} is shutting down. Wait for it to properly shut down before re-starting it!", name, version, author);
-                throw new ModuleException(String.format("State of %s %s by %s = %s!", name, version, author, sName));
+        MBeanPublisher current = publisher;
+        if (current != null)
+            current.publishModule(mailbox.getMetrics());
+        return mailbox;
+    }
+    @Nonnull
+    @Override
+    public ModuleHandle getHandle(@Nonnull Module module) {
+        return ownedMailbox(Objects.requireNonNull(module));
+    }
+    @Nonnull
+    @Override
+    public ModuleMetricsMXBean getMetrics(@Nonnull Module module) {
+        Objects.requireNonNull(module);
+        return ownedMailbox(module).getMetrics();
+    }
+    @Nonnull
+    @Override
+    public ExecutorMetricsMXBean getExecutorMetrics() {
+        return executorMetrics;
+    }
+    @Override
+    public synchronized void registerMBeans(@Nonnull String loaderName) {
+        unregisterMBeans();
+        MBeanPublisher current = new MBeanPublisher(loaderName);
+        current.publishExecutor(executorMetrics);
+        for (ModuleMailbox mailbox : registry.getMailboxes())
+            current.publishModule(mailbox.getMetrics());
+        publisher = current;
+    }
+    @Override
+    public synchronized void unregisterMBeans() {
+        MBeanPublisher current = publisher;
+        if (current == null)
+            return;
+        publisher = null;
+        current.unpublishAll();
+    }
+    @Nonnull
+    @Override
+    public State getState(@Nonnull Module module) {
+        Objects.requireNonNull(module);
+        return ownedMailbox(module).getState();
+    }
+    @Override
+    public void addStateListener(@Nonnull StateListener listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+    @Override
+    public void removeStateListener(@Nonnull StateListener listener) {
+        listeners.remove(Objects.requireNonNull(listener));
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<Module> awaitState(@Nonnull Module module, @Nonnull State state) {
+        Objects.requireNonNull(module);
+        Objects.requireNonNull(state);
+        try {
+            return ownedMailbox(module).await(state);
+        } catch (ModuleException exc) {
+            CompletableFuture<Module> future = new CompletableFuture<>();
+            future.completeExceptionally(exc);
+            return future;
         }
     }
     @Override
+    public void startModule(@Nonnull Module module, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nullable String... args) {
+        Objects.requireNonNull(module);
+        ModuleMailbox mailbox = acceptStart(module);
+        mailbox.enqueue(lifecycle(module, () -> runStart(mailbox, args), andThen, null));
+    }
+    @Override
     public void startModule(@Nonnull Module module, @Nullable BiConsumer<ModuleLoader, Module> andThen) {
         startModule(module, andThen, (String) null);
     }
@@ -79,6 +196,19 @@ public class ModuleLoaderImpl implements ModuleLoader {
     public void startModule(@Nonnull Module module) {
         startModule(module, null);
     }
+    @Nonnull
+    @Override
+    public CompletionStage<Module> startModuleAsync(@Nonnull Module module, @Nullable String... args) {
+        Objects.requireNonNull(module);
+        CompletableFuture<Module> future = new CompletableFuture<>();
+        try {
+            ModuleMailbox mailbox = acceptStart(module);
+            mailbox.enqueue(lifecycle(module, () -> runStart(mailbox, args), null, future));
+        } catch (ModuleException exc) {
+            future.completeExceptionally(exc);
+        }
+        return future;
+    }
     @Override
     public void killModule(@Nonnull Module module) {
         killModule(module, null);
@@ -86,27 +216,21 @@ public class ModuleLoaderImpl implements ModuleLoader {
     @Override
     public void killModule(@Nonnull Module module, @Nullable BiConsumer<ModuleLoader, Module> andThen) {
         Objects.requireNonNull(module);
-        String name = module.getName();
-        String version = module.getVersion();
-        String author = module.getAuthor();
-        if (modules.get(name) == null) {
-            LOGGER.warn("{} {} by {} does not belong to this loader!", name, version, author);
-            throw new ModuleException("Module does not belong to this loader!");
-        }
-        State state = module.getState();
-        String sName = state.name();
-        switch (state) {
-            case READY:
-                ModuleThreadExecutor.runModuleMethod(() -> {
-                    module.onDeath();
-                    if (andThen != null)
-                        andThen.accept(this, module);
-                }, true);
-                break;
-            default:
-                LOGGER.warn("{} {} by {} is already dead or not ready to shutdown yet! State = {}", name, version, author, sName);
-                throw new ModuleException(String.format("State of %s %s by %s = %s!", name, version, author, sName));
+        ModuleMailbox mailbox = acceptKill(module);
+        mailbox.enqueue(lifecycle(module, () -> runDeath(mailbox), andThen, null));
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<Module> killModuleAsync(@Nonnull Module module) {
+        Objects.requireNonNull(module);
+        CompletableFuture<Module> future = new CompletableFuture<>();
+        try {
+            ModuleMailbox mailbox = acceptKill(module);
+            mailbox.enqueue(lifecycle(module, () -> runDeath(mailbox), null, future));
+        } catch (ModuleException exc) {
+            future.completeExceptionally(exc);
         }
+        return future;
     }
     @Override
     public void sendMessage(@Nonnull Module module, @Nonnull String... args) {
@@ -114,32 +238,639 @@ public class ModuleLoaderImpl implements ModuleLoader {
     }
     @Override
     public void sendMessage(@Nonnull Module module, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nonnull String... args) {
+        checkMessage(module, args);
+        if (andThen == null)
+            deliveryMailbox(module).sendMessage(args);
+        else
+            sendTypedMessage(module, andThen, Message.ofStrings(args));
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<Module> sendMessageAsync(@Nonnull Module module, @Nonnull String... args) {
+        checkMessage(module, args);
+        return sendTypedMessageAsync(module, Message.ofStrings(args));
+    }
+    @Override
+    public void sendTypedMessage(@Nonnull Module module, @Nonnull Message<?> message) {
+        sendTypedMessage(module, null, message);
+    }
+    @Override
+    public void sendTypedMessage(@Nonnull Module module, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nonnull Message<?> message) {
+        Objects.requireNonNull(module);
+        Objects.requireNonNull(message);
+        if (andThen == null) {
+            deliveryMailbox(module).sendTypedMessage(message);
+            return;
+        }
+        readyMailbox(module).deliver(message, 1, andThen, null);
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<Module> sendTypedMessageAsync(@Nonnull Module module, @Nonnull Message<?> message) {
+        Objects.requireNonNull(module);
+        Objects.requireNonNull(message);
+        CompletableFuture<Module> future = new CompletableFuture<>();
+        try {
+            readyMailbox(module).deliver(message, 1, null, future);
+        } catch (ModuleException exc) {
+            future.completeExceptionally(exc);
+        }
+        return future;
+    }
+    @Nonnull
+    @Override
+    public <R> CompletionStage<R> ask(@Nonnull Module module, @Nonnull Message<?> message, @Nonnull Class<R> replyType, long timeout, @Nonnull TimeUnit unit) {
+        Objects.requireNonNull(module);
+        Objects.requireNonNull(message);
+        Objects.requireNonNull(replyType);
+        Objects.requireNonNull(unit);
+        if (timeout <= 0) {
+            LOGGER.warn("Attempt to ask the {} with a non-positive timeout!", module.getName());
+            throw new IllegalArgumentException("timeout <= 0");
+        }
+        /* -- opening fails too once the timer is stopped, which means a shutdown began after the check -- */
+        ReplyTable.PendingReply<R> pending = shutDown.get() ? null : replies.open(module, replyType, timeout, unit);
+        if (pending == null) {
+            CompletableFuture<R> future = new CompletableFuture<>();
+            future.completeExceptionally(refusal(module, "ask"));
+            return future;
+        }
+        try {
+            CompletableFuture<Module> handled = new CompletableFuture<>();
+            readyMailbox(module).deliver(message.withReplyChannel(pending), 1, null, handled);
+            /* -- a module that throws can't be expected to reply anymore, so fail fast instead of waiting for the timeout -- */
+            handled.whenComplete((ignored, throwable) -> {
+                if (throwable != null)
+                    pending.fail(throwable);
+            });
+        } catch (ModuleException exc) {
+            pending.fail(exc);
+        }
+        return pending.getFuture();
+    }
+    @Nonnull
+    @Override
+    public ScheduledMessage scheduleMessage(@Nonnull Module module, long delay, @Nonnull TimeUnit unit, @Nonnull String... args) {
+        checkMessage(module, args);
+        Objects.requireNonNull(unit);
+        return schedule(module, args, unit.toNanos(delay), 0);
+    }
+    @Nonnull
+    @Override
+    public ScheduledMessage scheduleTypedMessage(@Nonnull Module module, long delay, @Nonnull TimeUnit unit, @Nonnull Message<?> message) {
+        Objects.requireNonNull(module);
+        Objects.requireNonNull(unit);
+        Objects.requireNonNull(message);
+        return schedule(module, message, unit.toNanos(delay), 0);
+    }
+    @Nonnull
+    @Override
+    public ScheduledMessage scheduleAtFixedRate(@Nonnull Module module, long initialDelay, long period, @Nonnull TimeUnit unit, @Nonnull String... args) {
+        checkMessage(module, args);
+        Objects.requireNonNull(unit);
+        return schedule(module, args, unit.toNanos(initialDelay), checkPeriod(module, period, unit));
+    }
+    @Nonnull
+    @Override
+    public ScheduledMessage scheduleTypedAtFixedRate(@Nonnull Module module, long initialDelay, long period, @Nonnull TimeUnit unit, @Nonnull Message<?> message) {
+        Objects.requireNonNull(module);
+        Objects.requireNonNull(unit);
+        Objects.requireNonNull(message);
+        return schedule(module, message, unit.toNanos(initialDelay), checkPeriod(module, period, unit));
+    }
+    @Override
+    public boolean subscribe(@Nonnull Module module, @Nonnull String topic) {
+        Objects.requireNonNull(module);
+        Objects.requireNonNull(topic);
+        return topics.subscribe(topic, ownedMailbox(module));
+    }
+    @Override
+    public boolean unsubscribe(@Nonnull Module module, @Nonnull String topic) {
+        Objects.requireNonNull(module);
+        Objects.requireNonNull(topic);
+        return topics.unsubscribe(topic, ownedMailbox(module));
+    }
+    @Nonnull
+    @Override
+    public List<Module> getSubscribers(@Nonnull String topic) {
+        ModuleMailbox[] subscribers = topics.get(Objects.requireNonNull(topic));
+        ObjectArrayList<Module> modules = new ObjectArrayList<>(subscribers.length);
+        for (ModuleMailbox mailbox : subscribers)
+            modules.add(mailbox.getModule());
+        return Collections.unmodifiableList(modules);
+    }
+    @Override
+    public int publish(@Nonnull String topic, @Nonnull String... args) {
+        Objects.requireNonNull(topic);
+        return publish(topic, Message.ofStrings(args));
+    }
+    @Override
+    public int publish(@Nonnull String topic, @Nonnull Message<?> message) {
+        Objects.requireNonNull(topic);
+        Objects.requireNonNull(message);
+        int delivered = 0;
+        for (ModuleMailbox mailbox : topics.get(topic)) {
+            if (mailbox.tryAccept(message, 1, true))
+                delivered++;
+        }
+        return delivered;
+    }
+    @Override
+    public int publishBatch(@Nonnull String topic, @Nonnull Collection<? extends Message<?>> batch) {
+        Objects.requireNonNull(topic);
+        Objects.requireNonNull(batch);
+        if (batch.isEmpty()) {
+            LOGGER.warn("Attempt to publish an empty batch to {}!", topic);
+            throw new IllegalArgumentException("size of batch = 0");
+        }
+        /* -- copied once up-front and then shared by every subscriber, which only ever reads it -- */
+        Message<?>[] messages = batch.toArray(new Message<?>[0]);
+        for (Message<?> message : messages)
+            Objects.requireNonNull(message);
+        int delivered = 0;
+        for (ModuleMailbox mailbox : topics.get(topic)) {
+            if (mailbox.tryAccept(messages, messages.length, true))
+                delivered++;
+        }
+        return delivered;
+    }
+    @Override
+    public void sendMessages(@Nonnull Module module, @Nonnull Collection<String[]> batch) {
+        sendMessages(module, null, batch);
+    }
+    @Override
+    public void sendMessages(@Nonnull Module module, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nonnull Collection<String[]> batch) {
+        Objects.requireNonNull(module);
+        Objects.requireNonNull(batch);
+        if (batch.isEmpty()) {
+            LOGGER.warn("Attempt to send an empty batch to the {}!", module.getName());
+            throw new IllegalArgumentException("size of batch = 0");
+        }
+        /* -- copied once up-front so later changes to the caller's collection can't leak into the module thread -- */
+        ObjectArrayList<String[]> messages = new ObjectArrayList<>(batch.size());
+        for (String[] args : batch) {
+            Objects.requireNonNull(args);
+            if (args.length == 0) {
+                LOGGER.warn("Attempt to send a zero-length message to the {}!", module.getName());
+                throw new IllegalArgumentException("length of args = 0");
+            }
+            messages.add(args);
+        }
+        List<String[]> view = Collections.unmodifiableList(messages);
+        readyMailbox(module).deliver(view, view.size(), andThen, null);
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<Module> replaceModule(@Nonnull Module module, @Nonnull Module replacement, @Nullable String... args) {
+        Objects.requireNonNull(module);
+        Objects.requireNonNull(replacement);
+        if (!module.getName().equals(replacement.getName())) {
+            LOGGER.warn("Attempt to replace the {} with the differently-named {}!", module.getName(), replacement.getName());
+            throw new IllegalArgumentException("name of replacement != name of module");
+        }
+        CompletableFuture<Module> future = new CompletableFuture<>();
+        ModuleMailbox current;
+        try {
+            checkRunning(module, "replace");
+            current = ownedMailbox(module).target();
+        } catch (ModuleException exc) {
+            future.completeExceptionally(exc);
+            return future;
+        }
+        /* -- suspended from birth, so it buffers everything sent to it once published; until then, the old module keeps serving traffic -- */
+        ModuleMailbox mailbox = new ModuleMailbox(this, replacement, executor.getLane(replacement, current.getMailboxConfig()), executor.getTimeSliceNanos(), current.getMailboxConfig(), current.getJournal(), listeners, current.getModule());
+        CompletableFuture<Module> resumed = mailbox.suspend();
+        mailbox.transition(State.DEAD, State.STARTING);
+        try {
+            mailbox.execute(() -> {
+                CompletableFuture<Void> ready;
+                try {
+                    ready = runStart(mailbox, args);
+                } catch (Throwable throwable) {
+                    ready = new CompletableFuture<>();
+                    ready.completeExceptionally(throwable);
+                }
+                /* -- swapped in on whichever thread finished the start-up, so no dispatcher waits for a slow one -- */
+                ready.whenComplete((ignored, throwable) -> {
+                    if (throwable != null) {
+                        LOGGER.error("{} {} by {} failed to start up as a replacement: ", replacement.getName(), replacement.getVersion(), replacement.getAuthor(), throwable);
+                        future.completeExceptionally(throwable instanceof ModuleException ? throwable : new ModuleException(throwable));
+                        return;
+                    }
+                    swap(current, mailbox, resumed, future);
+                });
+            });
+        } catch (RejectedExecutionException exc) {
+            mailbox.transition(State.STARTING, State.DEAD);
+            future.completeExceptionally(new ModuleException(exc));
+        }
+        return future;
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<Void> startAll() {
+        List<List<Module>> layers = ModuleGraph.layers(registry.getModulesAsList());
+        CompletableFuture<Void> stage = CompletableFuture.completedFuture(null);
+        for (List<Module> layer : layers)
+            stage = stage.thenCompose(ignored -> allOf(layer, this::startIfDead));
+        return stage;
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<Void> stopAll() {
+        List<List<Module>> layers = ModuleGraph.layers(registry.getModulesAsList());
+        CompletableFuture<Void> stage = CompletableFuture.completedFuture(null);
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            List<Module> layer = layers.get(i);
+            stage = stage.thenCompose(ignored -> allOf(layer, this::stopIfAlive));
+        }
+        return stage;
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<ShutdownReport> shutdown(@Nonnull Duration timeout) {
+        Objects.requireNonNull(timeout);
+        if (timeout.isNegative()) {
+            LOGGER.warn("Attempt to shut down a loader with a negative timeout!");
+            throw new IllegalArgumentException("timeout < 0");
+        }
+        if (!shutDown.compareAndSet(false, true))
+            return terminated;
+        ModuleThreadExecutor.removeShutdownTask(exitTask);
+        long start = System.nanoTime();
+        ModuleMailbox[] mailboxes;
+        synchronized (swapLock) {
+            mailboxes = registry.getMailboxes().toArray(new ModuleMailbox[0]);
+        }
+        CompletableFuture<?>[] stops = new CompletableFuture<?>[mailboxes.length];
+        for (int i = 0; i < mailboxes.length; i++)
+            stops[i] = stop(mailboxes[i]);
+        /* -- whichever comes first, the last death or the deadline, writes the report -- */
+        AtomicBoolean reported = new AtomicBoolean(false);
+        Runnable finish = () -> {
+            if (reported.compareAndSet(false, true))
+                terminate(mailboxes, stops, start);
+        };
+        HashedWheelTimer.Timeout deadline = timer.newTimeout(finish, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        CompletableFuture.allOf(stops).whenComplete((ignored, throwable) -> {
+            deadline.cancel();
+            finish.run();
+        });
+        return terminated;
+    }
+    @Override
+    public boolean isShutdown() {
+        return shutDown.get();
+    }
+    private void terminate(@Nonnull ModuleMailbox[] mailboxes, @Nonnull CompletableFuture<?>[] stops, long start) {
+        ObjectArrayList<Module> stopped = new ObjectArrayList<>();
+        ObjectArrayList<Module> failed = new ObjectArrayList<>();
+        ObjectArrayList<Module> unfinished = new ObjectArrayList<>();
+        Set<MessageJournal> draining = new HashSet<>();
+        for (int i = 0; i < mailboxes.length; i++) {
+            Module module = mailboxes[i].getModule();
+            if (mailboxes[i].getState() != State.DEAD) {
+                unfinished.add(module);
+                /* -- still handling (and acknowledging) what it had accepted, so its journal only gets its final flush once it has died -- */
+                MessageJournal journal = mailboxes[i].getJournal();
+                if (journal != null && draining.add(journal))
+                    mailboxes[i].await(State.DEAD).whenComplete((ignored, throwable) -> journal.close());
+            } else if (stops[i].isCompletedExceptionally()) {
+                failed.add(module);
+            } else {
+                stopped.add(module);
+            }
+        }
+        int aborted = replies.failAll(new ModuleException("Loader was shut down before a reply arrived!"));
+        /* -- modules that outlived the deadline can't take new messages or schedules, so nothing is left for the timer -- */
+        timer.stop();
+        for (MessageJournal journal : journals.values()) {
+            if (!draining.contains(journal))
+                journal.close();
+        }
+        unregisterMBeans();
+        ShutdownResult report = new ShutdownResult(stopped, failed, unfinished, Duration.ofNanos(System.nanoTime() - start));
+        if (unfinished.isEmpty()) {
+            LOGGER.info("Loader shut down: {}, {} pending request(s) failed.", report, aborted);
+        } else {
+            StringJoiner names = new StringJoiner(", ");
+            for (Module module : unfinished)
+                names.add(module.getName());
+            LOGGER.warn("Loader shut down before every module died: {}, {} pending request(s) failed. Still running: {}", report, aborted, names);
+        }
+        terminated.complete(report);
+    }
+    @Nonnull
+    private CompletionStage<Module> awaitStartup(@Nonnull Module module) {
+        try {
+            return ownedMailbox(module).awaitStartup();
+        } catch (ModuleException exc) {
+            CompletableFuture<Module> future = new CompletableFuture<>();
+            future.completeExceptionally(exc);
+            return future;
+        }
+    }
+    @Nonnull
+    private CompletionStage<Module> startIfDead(@Nonnull Module module) {
+        switch (getState(module)) {
+            case READY:
+                return CompletableFuture.completedFuture(module);
+            case STARTING:
+            case STARTED:
+                return awaitStartup(module);
+            default:
+                return startModuleAsync(module);
+        }
+    }
+    @Nonnull
+    private CompletionStage<Module> stopIfAlive(@Nonnull Module module) {
+        return stop(ownedMailbox(module));
+    }
+    /* -- goes through the mailbox rather than the module's name, so it still reaches a module swapped out in the meantime; never throws -- */
+    @Nonnull
+    private CompletableFuture<Module> stop(@Nonnull ModuleMailbox mailbox) {
+        Module module = mailbox.getModule();
+        try {
+            switch (mailbox.getState()) {
+                case DEAD:
+                    return CompletableFuture.completedFuture(module);
+                case SHUTTING_DOWN:
+                    return mailbox.await(State.DEAD);
+                case STARTING:
+                case STARTED:
+                    /* -- a start that fails leaves the module dead, which is all a stop asks for -- */
+                    return mailbox.awaitStartup().handle((ready, throwable) -> throwable == null ? stop(mailbox) : CompletableFuture.completedFuture(module))
+                            .thenCompose(Function.identity());
+                default:
+                    /* -- lost the transition to whoever changed the state first, so look again -- */
+                    if (!mailbox.transition(State.READY, State.SHUTTING_DOWN))
+                        return stop(mailbox);
+                    CompletableFuture<Module> future = new CompletableFuture<>();
+                    mailbox.enqueue(lifecycle(module, () -> runDeath(mailbox), null, future));
+                    return future;
+            }
+        } catch (RuntimeException exc) {
+            CompletableFuture<Module> future = new CompletableFuture<>();
+            future.completeExceptionally(exc instanceof ModuleException ? exc : new ModuleException(exc));
+            return future;
+        }
+    }
+    @Nonnull
+    private static CompletableFuture<Void> allOf(@Nonnull List<Module> layer, @Nonnull Function<Module, CompletionStage<Module>> action) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[layer.size()];
+        for (int i = 0; i < futures.length; i++)
+            futures[i] = action.apply(layer.get(i)).toCompletableFuture();
+        return CompletableFuture.allOf(futures);
+    }
+    private void swap(@Nonnull ModuleMailbox current, @Nonnull ModuleMailbox mailbox, @Nonnull CompletableFuture<Module> resumed, @Nonnull CompletableFuture<Module> future) {
+        Module replacement = mailbox.getModule();
+        boolean published;
+        synchronized (swapLock) {
+            /* -- the successor is set before the registry changes, so a sender that already sees the replacement can't reach the old mailbox anymore -- */
+            boolean retired = !shutDown.get() && current.retire(mailbox);
+            published = retired && registry.replace(current, mailbox);
+            if (retired && !published)
+                current.unretire();
+        }
+        if (!published) {
+            ModuleException exc;
+            if (shutDown.get()) {
+                exc = refusal(replacement, "replace");
+            } else {
+                LOGGER.warn("{} {} by {} was replaced or overridden while its replacement was starting up!", replacement.getName(), replacement.getVersion(), replacement.getAuthor());
+                exc = new ModuleException("Module was replaced or overridden concurrently!");
+            }
+            mailbox.resume();
+            if (mailbox.transition(State.READY, State.SHUTTING_DOWN))
+                mailbox.enqueue(lifecycle(replacement, () -> runDeath(mailbox), null, null));
+            future.completeExceptionally(exc);
+            return;
+        }
+        topics.transfer(current, mailbox);
+        MBeanPublisher publisher = this.publisher;
+        if (publisher != null)
+            publisher.publishModule(mailbox.getMetrics());
+        resumed.whenComplete((ignored, throwable) -> future.complete(replacement));
+        /* -- queued behind everything the old module already accepted; once it has run and the mailbox is empty, the replacement resumes -- */
+        if (current.transition(State.READY, State.SHUTTING_DOWN)) {
+            current.enqueue(lifecycle(current.getModule(), () -> runDeath(current), null, null));
+            return;
+        }
+        /* -- someone else is already killing it; an empty event is enough to make it hand over once it's dead -- */
+        current.enqueue(() -> {});
+    }
+    @Nonnull
+    private ScheduledMessage schedule(@Nonnull Module module, @Nonnull Object payload, long delayNanos, long periodNanos) {
+        checkRunning(module, "schedule a message to");
+        ModuleMailbox mailbox = deliveryMailbox(module).current();
+        ScheduledDelivery schedule = new ScheduledDelivery(timer, mailbox, payload, periodNanos);
+        /* -- registered before the state check, so a kill racing with us either sees the schedule and cancels it, or we see the kill -- */
+        mailbox.adopt(schedule);
+        State state = mailbox.getState();
+        if (state != State.STARTING && state != State.READY) {
+            schedule.cancel();
+            String name = module.getName();
+            String version = module.getVersion();
+            String author = module.getAuthor();
+            LOGGER.warn("{} {} by {} is not starting up or ready, refusing to schedule a message! State = {}", name, version, author, state);
+            throw new ModuleException(String.format("State of %s %s by %s = %s!", name, version, author, state.name()));
+        }
+        try {
+            schedule.start(delayNanos);
+        } catch (IllegalStateException exc) {
+            /* -- the timer was stopped by a shutdown that began after checkRunning -- */
+            schedule.cancel();
+            throw refusal(module, "schedule a message to");
+        }
+        return schedule;
+    }
+    @Nullable
+    private MessageJournal journalOf(@Nonnull Module module, @Nonnull MailboxConfig config) {
+        JournalConfig journal = config.getJournalConfig();
+        if (journal == null)
+            return null;
+        return journals.computeIfAbsent(MessageJournal.directoryOf(journal, module.getName()), ignored -> MessageJournal.open(journal, module.getName(), timer));
+    }
+    @Nonnull
+    private ModuleMailbox ownedMailbox(@Nonnull Module module) {
+        return mailboxOf(module, false);
+    }
+    @Nonnull
+    private ModuleMailbox deliveryMailbox(@Nonnull Module module) {
+        return mailboxOf(module, true);
+    }
+    @Nonnull
+    private ModuleMailbox mailboxOf(@Nonnull Module module, boolean delivery) {
+        ModuleMailbox mailbox = registry.get(module.getName());
+        if (mailbox == null || !(delivery ? mailbox.reachedBy(module) : mailbox.owns(module))) {
+            LOGGER.warn("{} {} by {} does not belong to this loader!", module.getName(), module.getVersion(), module.getAuthor());
+            throw new ModuleException("Module does not belong to this loader!");
+        }
+        return mailbox;
+    }
+    @Nonnull
+    private ModuleMailbox acceptStart(@Nonnull Module module) {
+        checkRunning(module, "start");
+        ModuleMailbox mailbox = ownedMailbox(module);
+        if (mailbox.transition(State.DEAD, State.STARTING)) {
+            /* -- checked again once starting, so a shutdown that began in between either sees this module or we see the shutdown -- */
+            if (!shutDown.get())
+                return mailbox;
+            mailbox.transition(State.STARTING, State.DEAD);
+            throw refusal(module, "start");
+        }
+        String name = module.getName();
+        String version = module.getVersion();
+        String author = module.getAuthor();
+        State state = mailbox.getState();
+        String sName = state.name();
+        if (state == State.SHUTTING_DOWN) {
+            LOGGER.warn("{} {} by {} is shutting down. Wait for it to properly shut down before re-starting it!", name, version, author);
+            throw new ModuleException(String.format("State of %s %s by %s = %s!", name, version, author, sName));
+        }
+        LOGGER.warn("{} {} by {} is already ready or starting up! State = {}", name, version, author, sName);
+        throw new ModuleException(String.format("State of %s %s by %s = %s!", name, version, author, sName));
+    }
+    @Nonnull
+    private ModuleMailbox acceptKill(@Nonnull Module module) {
+        ModuleMailbox mailbox = ownedMailbox(module);
+        if (mailbox.transition(State.READY, State.SHUTTING_DOWN))
+            return mailbox;
+        String name = module.getName();
+        String version = module.getVersion();
+        String author = module.getAuthor();
+        String sName = mailbox.getState().name();
+        LOGGER.warn("{} {} by {} is already dead or not ready to shutdown yet! State = {}", name, version, author, sName);
+        throw new ModuleException(String.format("State of %s %s by %s = %s!", name, version, author, sName));
+    }
+    @Nonnull
+    private ModuleMailbox readyMailbox(@Nonnull Module module) {
+        return deliveryMailbox(module).target();
+    }
+    private void checkRunning(@Nonnull Module module, @Nonnull String action) {
+        if (shutDown.get())
+            throw refusal(module, action);
+    }
+    @Nonnull
+    private static ModuleException refusal(@Nonnull Module module, @Nonnull String action) {
+        LOGGER.warn("Attempt to {} the {} after its loader was shut down!", action, module.getName());
+        return new ModuleException("Loader is shut down!");
+    }
+    /* -- completes once the module is READY (or back to DEAD), on whichever thread finished its start-up; a start-up that throws right away still throws -- */
+    @Nonnull
+    private static CompletableFuture<Void> runStart(@Nonnull ModuleMailbox mailbox, @Nullable String... args) {
+        CompletionStage<?> started;
+        try {
+            started = mailbox.getModule().onStartAsync(args);
+        } catch (Throwable throwable) {
+            mailbox.transition(State.STARTING, State.DEAD);
+            throw throwable;
+        }
+        CompletableFuture<Void> ready = new CompletableFuture<>();
+        started.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                mailbox.transition(State.STARTING, State.DEAD);
+                ready.completeExceptionally(unwrap(throwable));
+                return;
+            }
+            /* -- queued before the module is ready, so whatever survived a crash is handled before anything new -- */
+            mailbox.replay();
+            mailbox.transition(State.STARTING, State.READY);
+            ready.complete(null);
+        });
+        return ready;
+    }
+    @Nonnull
+    private static CompletableFuture<Void> runDeath(@Nonnull ModuleMailbox mailbox) {
+        CompletionStage<?> died;
+        try {
+            died = mailbox.getModule().onDeathAsync();
+        } catch (Throwable throwable) {
+            mailbox.transition(State.SHUTTING_DOWN, State.DEAD);
+            throw throwable;
+        }
+        CompletableFuture<Void> dead = new CompletableFuture<>();
+        died.whenComplete((ignored, throwable) -> {
+            /* -- dead either way, just like after an onDeath that throws -- */
+            mailbox.transition(State.SHUTTING_DOWN, State.DEAD);
+            if (throwable != null)
+                dead.completeExceptionally(unwrap(throwable));
+            else
+                dead.complete(null);
+        });
+        return dead;
+    }
+    @Nonnull
+    private static Throwable unwrap(@Nonnull Throwable throwable) {
+        /* -- modules usually hand out dependent stages, which wrap whatever failed them -- */
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+    private static long checkPeriod(@Nonnull Module module, long period, @Nonnull TimeUnit unit) {
+        if (period <= 0) {
+            LOGGER.warn("Attempt to schedule a message to the {} with a non-positive period!", module.getName());
+            throw new IllegalArgumentException("period <= 0");
+        }
+        return unit.toNanos(period);
+    }
+    private static void checkMessage(@Nonnull Module module, @Nonnull String... args) {
         Objects.requireNonNull(module);
         Objects.requireNonNull(args);
         if (args.length == 0) {
             LOGGER.warn("Attempt to send a zero-length message to the {}!", module.getName());
             throw new IllegalArgumentException("length of args = 0");
         }
-        String name = module.getName();
-        String version = module.getVersion();
-        String author = module.getAuthor();
-        if (modules.get(name) == null) {
-            LOGGER.warn("{} {} by {} does not belong to this loader!", name, version, author);
-            throw new ModuleException("Module does not belong to this loader!");
+    }
+    /* -- runs a lifecycle event on the mailbox; the follow-ups run right there when it finished synchronously, otherwise on whichever thread finishes it -- */
+    @Nonnull
+    private Runnable lifecycle(@Nonnull Module module, @Nonnull Supplier<CompletableFuture<Void>> event, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nullable CompletableFuture<Module> future) {
+        return () -> {
+            CompletableFuture<Void> finished;
+            try {
+                finished = event.get();
+            } catch (Throwable throwable) {
+                if (future != null)
+                    future.completeExceptionally(throwable instanceof ModuleException ? throwable : new ModuleException(throwable));
+                /* -- rethrown so the mailbox logs and counts the failure like any other -- */
+                throw throwable;
+            }
+            if (finished.isDone()) {
+                settle(module, finished, andThen, future);
+                return;
+            }
+            finished.whenComplete((ignored, throwable) -> {
+                try {
+                    settle(module, finished, andThen, future);
+                } catch (Throwable failure) {
+                    LOGGER.error("Uncaught Exception in {} {} by {} on {}: ", module.getName(), module.getVersion(), module.getAuthor(), Thread.currentThread().getName(), failure);
+                }
+            });
+        };
+    }
+    private void settle(@Nonnull Module module, @Nonnull CompletableFuture<Void> finished, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nullable CompletableFuture<Module> future) {
+        Throwable failure = finished.handle((ignored, throwable) -> throwable).join();
+        if (failure != null) {
+            ModuleException exc = failure instanceof ModuleException ? (ModuleException) failure : new ModuleException(failure);
+            if (future != null)
+                future.completeExceptionally(exc);
+            throw exc;
         }
-        State state = module.getState();
-        String sName = state.name();
-        switch (state) {
-            case READY:
-                ModuleThreadExecutor.runModuleMethod(() -> {
-                    module.onMessage(args);
-                    if (andThen != null)
-                        andThen.accept(this, module);
-                }, false);
-                break;
-            default:
-                LOGGER.warn("{} {} by {} is not ready to accept new messages! State = {}", name, version, author, sName);
-                throw new ModuleException(String.format("State of %s %s by %s = %s!", name, version, author, sName));
+        if (andThen != null)
+            andThen.accept(this, module);
+        /* -- completed after the follow-up so failures in dependent stages aren't mistaken for failures of the module -- */
+        if (future != null)
+            future.complete(module);
+    }
+    /* -- weakly held, so loaders nobody shut down can still be collected; the registered task itself is tiny -- */
+    private static final class ExitTask implements Runnable {
+        private final WeakReference<ModuleLoaderImpl> loader;
+        private ExitTask(@Nonnull ModuleLoaderImpl loader) {
+            this.loader = new WeakReference<>(loader);
+        }
+        @Override
+        public void run() {
+            ModuleLoaderImpl current = loader.get();
+            if (current != null && !current.isShutdown())
+                current.shutdown(EXIT_TIMEOUT).toCompletableFuture().join();
         }
     }
 }
@@ -0,0 +1,674 @@
+package samophis.kunou.core.modules.internal;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.modules.MailboxConfig;
+import samophis.kunou.core.modules.Message;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ModuleHandle;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.modules.OverloadPolicy;
+import samophis.kunou.core.modules.State;
+import samophis.kunou.core.modules.StateListener;
+import samophis.kunou.core.util.MessageCodec;
+import samophis.kunou.core.util.MpscQueue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BiConsumer;
+
+/**
+ * An actor-style mailbox belonging to exactly one {@link Module Module}.
+ * <br><p>Events are queued in a lock-free MPSC queue and drained by at most one dispatcher thread at a time,
+ * so every event sent to a module is delivered in the order it was accepted and never overlaps another event of the same module.
+ * <br>The mailbox also owns the authoritative lifecycle {@link State State} of its module: every transition is a single compare-and-set,
+ * so two callers can never both win the same transition.
+ * <br><br>The mailbox doubles as the {@link ModuleHandle ModuleHandle} of its module. Messages are queued as their raw payload ({@code String[]} or {@link Message Message})
+ * rather than wrapped in a callback, so sending one through the handle allocates nothing beyond the payload apart from the occasional latency sample.
+ * <br><br>When its module is {@link ModuleLoader#replaceModule(Module, Module, String...) replaced}, the mailbox gets a successor: the replacement's mailbox,
+ * which stays suspended (buffering everything sent to it) until this one has delivered its backlog and run the death event. Its queue is then closed, and whatever
+ * was still in it is handed over to the <b>front</b> of the successor, ahead of the buffered messages, so no sender ever sees its messages reordered.
+ * Senders that lose the race against the closed queue are simply redirected to the successor.
+ * <br><br>Messages {@link ModuleLoader#scheduleMessage(Module, long, java.util.concurrent.TimeUnit, String...) scheduled} for the module are tracked here too: they're cancelled
+ * as soon as the module starts shutting down (or fails to start), unless the mailbox has a successor, which then takes them over.
+ * <br><br>A durable mailbox appends every message to its {@link MessageJournal MessageJournal} before queueing it, and acknowledges it once dispatched (or dropped).
+ * Both happen under the monitor of the journal, so records are numbered in queue order. A successor shares the journal of its predecessor.
+ * <br><br>A full {@link samophis.kunou.core.modules.OverloadPolicy#DROP_OLDEST DROP_OLDEST} mailbox is trimmed by the sender: it polls the queue itself, under a lock the drain
+ * polls under too, until it finds a message to drop. Loader events it comes across on the way are set aside and drained ahead of the queue, so their order is kept.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class ModuleMailbox implements ModuleHandle, Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModuleMailbox.class);
+    private static final AtomicReferenceFieldUpdater<ModuleMailbox, ModuleMailbox> SUCCESSOR = AtomicReferenceFieldUpdater.newUpdater(ModuleMailbox.class, ModuleMailbox.class, "successor");
+    /* -- max events drained per scheduling, so one busy module can't hold onto a dispatcher thread forever; the time slice caps drains of slow events -- */
+    private static final int THROUGHPUT = 64;
+    /* -- one in this many events carries its enqueue time, so producers rarely pay for a clock read -- */
+    private static final int DISPATCH_SAMPLE_RATE = 64;
+    private final ModuleLoader loader;
+    private final Module module;
+    private final Executor executor;
+    private final long timeSliceNanos;
+    private final MailboxConfig config;
+    /* -- null for unbounded mailboxes, which skip all the bookkeeping -- */
+    private final MailboxLimit limit;
+    /* -- null unless senders may evict the oldest message; guards polling the queue and the loader events set aside while evicting -- */
+    private final Object evictionLock;
+    private final ArrayDeque<Object> displaced;
+    /* -- null for mailboxes that aren't durable -- */
+    private final MessageJournal journal;
+    /* -- holds Runnables for loader events, raw String[], Message or published Message[] payloads for messages, and Deliveries for messages with follow-ups -- */
+    private final MpscQueue<Object> queue;
+    private final AtomicBoolean scheduled;
+    private final AtomicReference<State> state;
+    private final List<StateListener> listeners;
+    private final Queue<StateWaiter> waiters;
+    private final Set<ScheduledDelivery> schedules;
+    private final ModuleMetrics metrics;
+    /* -- String messages only need a Message envelope if the module actually looks at them through onTypedMessage -- */
+    private final boolean typedStrings;
+    /* -- the module this one replaced, so senders still holding on to it reach this mailbox instead; nothing but messages follows it here -- */
+    private final Module replaced;
+    private volatile boolean detached;
+    private volatile boolean suspended;
+    private volatile CompletableFuture<Module> resumed;
+    private volatile ModuleMailbox successor;
+    /* -- what the predecessor still held when it died; filled before this mailbox resumes and only ever touched by the draining thread after that -- */
+    private ObjectArrayList<Object> inherited;
+    private int inheritedIndex;
+    ModuleMailbox(@Nonnull ModuleLoader loader, @Nonnull Module module, @Nonnull Executor executor, long timeSliceNanos, @Nonnull MailboxConfig config, @Nullable MessageJournal journal,
+                  @Nonnull List<StateListener> listeners, @Nullable Module replaced) {
+        this.loader = Objects.requireNonNull(loader);
+        this.module = Objects.requireNonNull(module);
+        this.executor = Objects.requireNonNull(executor);
+        this.timeSliceNanos = timeSliceNanos;
+        this.config = Objects.requireNonNull(config);
+        this.queue = new MpscQueue<>();
+        this.scheduled = new AtomicBoolean(false);
+        this.state = new AtomicReference<>(State.DEAD);
+        this.listeners = Objects.requireNonNull(listeners);
+        this.waiters = new ConcurrentLinkedQueue<>();
+        this.schedules = ConcurrentHashMap.newKeySet();
+        this.metrics = new ModuleMetrics(this);
+        this.limit = config.isBounded() ? new MailboxLimit(config, metrics) : null;
+        this.evictionLock = config.isBounded() && config.getPolicy() == OverloadPolicy.DROP_OLDEST ? new Object() : null;
+        this.displaced = evictionLock == null ? null : new ArrayDeque<>(2);
+        this.journal = journal;
+        this.typedStrings = overridesTypedMessages(module.getClass());
+        this.replaced = replaced;
+    }
+    @Nonnull
+    @Override
+    public Module getModule() {
+        return module;
+    }
+    @Nonnull
+    ModuleMetrics getMetrics() {
+        return metrics;
+    }
+    @Nonnull
+    @Override
+    public State getState() {
+        return state.get();
+    }
+    @Override
+    public boolean isValid() {
+        return !detached;
+    }
+    @Nonnull
+    @Override
+    public MailboxConfig getMailboxConfig() {
+        return config;
+    }
+    @Override
+    public boolean isSaturated() {
+        ModuleMailbox next = successor;
+        if (next != null)
+            return next.isSaturated();
+        return limit != null && limit.isSaturated();
+    }
+    int getPendingMessages() {
+        return limit == null ? -1 : limit.getPending();
+    }
+    @Nullable
+    MessageJournal getJournal() {
+        return journal;
+    }
+    @Override
+    public void sendMessage(@Nonnull String... args) {
+        Objects.requireNonNull(args);
+        if (args.length == 0) {
+            LOGGER.warn("Attempt to send a zero-length message to the {}!", module.getName());
+            throw new IllegalArgumentException("length of args = 0");
+        }
+        checkAttached();
+        target().accept(args);
+    }
+    @Override
+    public void sendTypedMessage(@Nonnull Message<?> message) {
+        Objects.requireNonNull(message);
+        checkAttached();
+        target().accept(message);
+    }
+    @Nonnull
+    ModuleMailbox current() {
+        ModuleMailbox next = successor;
+        return next == null ? this : next.current();
+    }
+    @Nonnull
+    ModuleMailbox target() {
+        ModuleMailbox next = successor;
+        if (next != null)
+            return next.target();
+        checkReady();
+        return this;
+    }
+    boolean owns(@Nonnull Module candidate) {
+        /* -- a module standing in for another one (like a plugin module loaded on demand) is registered in its place, but the other one still refers to itself -- */
+        return candidate == module || module.getTarget() == candidate;
+    }
+    boolean reachedBy(@Nonnull Module candidate) {
+        /* -- only messages follow a replaced module here; its lifecycle ended with the swap, so it can't kill or restart its replacement -- */
+        return owns(candidate) || candidate == replaced;
+    }
+    void detach() {
+        detached = true;
+        cancelSchedules();
+    }
+    void adopt(@Nonnull ScheduledDelivery schedule) {
+        schedules.add(schedule);
+    }
+    void forget(@Nonnull ScheduledDelivery schedule) {
+        schedules.remove(schedule);
+    }
+    @Nonnull
+    CompletableFuture<Module> suspend() {
+        CompletableFuture<Module> future = new CompletableFuture<>();
+        inherited = new ObjectArrayList<>();
+        resumed = future;
+        suspended = true;
+        return future;
+    }
+    void resume() {
+        suspended = false;
+        CompletableFuture<Module> future = resumed;
+        if (future != null)
+            future.complete(module);
+        schedule();
+    }
+    boolean retire(@Nonnull ModuleMailbox next) {
+        return SUCCESSOR.compareAndSet(this, null, next);
+    }
+    void unretire() {
+        successor = null;
+    }
+    void checkReady() {
+        State current = state.get();
+        if (current != State.READY) {
+            String name = module.getName();
+            String version = module.getVersion();
+            String author = module.getAuthor();
+            String sName = current.name();
+            LOGGER.warn("{} {} by {} is not ready to accept new messages! State = {}", name, version, author, sName);
+            throw new ModuleException(String.format("State of %s %s by %s = %s!", name, version, author, sName));
+        }
+    }
+    @Nonnull
+    private ModuleException diedBefore(@Nonnull State target) {
+        return new ModuleException(String.format("%s %s by %s died before reaching %s!", module.getName(), module.getVersion(), module.getAuthor(), target));
+    }
+    private void checkAttached() {
+        if (detached) {
+            LOGGER.warn("{} {} by {} does not belong to this loader anymore!", module.getName(), module.getVersion(), module.getAuthor());
+            throw new ModuleException("Module does not belong to this loader anymore!");
+        }
+    }
+    boolean transition(@Nonnull State from, @Nonnull State to) {
+        if (!from.canTransitionTo(to) || !state.compareAndSet(from, to))
+            return false;
+        if (to == State.SHUTTING_DOWN || to == State.DEAD) {
+            /* -- a retired mailbox is only shutting down because it was replaced, so its schedules live on in the replacement -- */
+            ModuleMailbox next = successor;
+            if (next != null)
+                handOverSchedules(next);
+            else
+                cancelSchedules();
+        }
+        for (StateListener listener : listeners) {
+            try {
+                listener.onTransition(module, from, to);
+            } catch (Throwable throwable) {
+                LOGGER.error("State listener failed on {} {} by {} ({} -> {}): ", module.getName(), module.getVersion(), module.getAuthor(), from, to, throwable);
+            }
+        }
+        /* -- a start that failed falls back to DEAD without ever reaching the states waited for, so those waits fail instead of hanging forever -- */
+        boolean fellBack = to == State.DEAD && from != State.SHUTTING_DOWN;
+        for (StateWaiter waiter : waiters) {
+            if (waiter.target == to) {
+                if (waiters.remove(waiter))
+                    waiter.future.complete(module);
+            } else if (fellBack && waiters.remove(waiter)) {
+                waiter.future.completeExceptionally(diedBefore(waiter.target));
+            }
+        }
+        /* -- a module may finish dying off the mailbox thread, long after its last event ran, so the mailbox wakes up by itself to hand over -- */
+        if (to == State.DEAD && successor != null) {
+            try {
+                schedule();
+            } catch (ModuleException ignored) {
+                /* -- already logged; nothing left to hand over to a dispatcher that is gone -- */
+            }
+        }
+        return true;
+    }
+    @Nonnull
+    CompletableFuture<Module> await(@Nonnull State target) {
+        StateWaiter waiter = new StateWaiter(target);
+        waiters.add(waiter);
+        /* -- the target may have been reached between the caller's check and registering the waiter -- */
+        if (state.get() == target && waiters.remove(waiter))
+            waiter.future.complete(module);
+        return waiter.future;
+    }
+    @Nonnull
+    CompletableFuture<Module> awaitStartup() {
+        StateWaiter waiter = new StateWaiter(State.READY);
+        waiters.add(waiter);
+        /* -- only called after seeing the module start, so finding it dead means the start already failed (or it already died again) -- */
+        State current = state.get();
+        if ((current == State.READY || current == State.DEAD) && waiters.remove(waiter)) {
+            if (current == State.READY)
+                waiter.future.complete(module);
+            else
+                waiter.future.completeExceptionally(diedBefore(State.READY));
+        }
+        return waiter.future;
+    }
+    void enqueue(@Nonnull Runnable event) {
+        offer(event);
+    }
+    void execute(@Nonnull Runnable task) {
+        /* -- bypasses the queue entirely; only safe while nothing else can reach the module, like a replacement that isn't published yet -- */
+        executor.execute(task);
+    }
+    void deliver(@Nonnull Object payload, int messages, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nullable CompletableFuture<Module> future) {
+        admit(new Delivery(payload, andThen, future), messages, true, true);
+    }
+    boolean tryAccept(@Nonnull Object payload, int messages, boolean mayBlock) {
+        ModuleMailbox next = successor;
+        if (next != null)
+            return next.tryAccept(payload, messages, mayBlock);
+        if (detached || state.get() != State.READY)
+            return false;
+        return admit(payload, messages, false, mayBlock);
+    }
+    private void accept(@Nonnull Object payload) {
+        admit(payload, 1, true, true);
+    }
+    private boolean admit(@Nonnull Object payload, int messages, boolean strict, boolean mayBlock) {
+        byte[] record = null;
+        if (journal != null) {
+            /* -- encoded before taking a place in the mailbox, so a payload the journal can't store is refused without side effects -- */
+            record = MessageCodec.encode(payload instanceof Delivery ? ((Delivery) payload).payload : payload);
+            if (record == null) {
+                if (!strict)
+                    return false;
+                LOGGER.warn("{} is durable, but a {} can't be journaled!", module.getName(), describe(payload));
+                throw new ModuleException(String.format("Payload of type %s can't be journaled for %s %s by %s!", describe(payload), module.getName(), module.getVersion(), module.getAuthor()));
+            }
+        }
+        Object event = payload;
+        if (limit != null) {
+            event = limit.admit(payload, mayBlock);
+            if (event == MailboxLimit.REJECTED) {
+                if (!strict)
+                    return false;
+                LOGGER.debug("Mailbox of {} is full, refusing a message.", module.getName());
+                throw new ModuleException(String.format("Mailbox of %s %s by %s is full!", module.getName(), module.getVersion(), module.getAuthor()));
+            }
+        }
+        metrics.messagesReceived(messages);
+        /* -- null means it was merged into a message that's still waiting -- */
+        if (event == null)
+            return true;
+        if (evictionLock != null && limit.isOverflowing())
+            dropOldest();
+        if (record == null)
+            offer(event);
+        else
+            offerJournaled(event, record);
+        return true;
+    }
+    private void offerJournaled(@Nonnull Object event, @Nonnull byte[] record) {
+        synchronized (journal) {
+            long sequence;
+            try {
+                sequence = journal.append(record);
+            } catch (ModuleException exc) {
+                /* -- the message already holds a place in the mailbox; losing durability beats losing the message -- */
+                LOGGER.error("Failed to journal a message to {} {} by {}, delivering it without durability: ", module.getName(), module.getVersion(), module.getAuthor(), exc);
+                offer(event);
+                return;
+            }
+            offer(new Journaled(event, sequence));
+        }
+    }
+    int replay() {
+        if (journal == null)
+            return 0;
+        int replayed;
+        try {
+            synchronized (journal) {
+                replayed = journal.replay((payload, sequence) -> {
+                    /* -- admitted before the crash, so counted like a hand-over: it may briefly overshoot the capacity -- */
+                    if (limit != null)
+                        limit.inherit(1);
+                    metrics.messagesReceived(1);
+                    offer(new Journaled(payload, sequence));
+                });
+            }
+        } catch (RuntimeException exc) {
+            LOGGER.error("Failed to replay the journal of {} {} by {}: ", module.getName(), module.getVersion(), module.getAuthor(), exc);
+            return 0;
+        }
+        if (replayed > 0) {
+            metrics.messagesReplayed(replayed);
+            LOGGER.info("Replaying {} unacknowledged messages to {} {} by {}.", replayed, module.getName(), module.getVersion(), module.getAuthor());
+        }
+        return replayed;
+    }
+    private void offer(@Nonnull Object event) {
+        metrics.eventQueued();
+        boolean offered = ThreadLocalRandom.current().nextInt(DISPATCH_SAMPLE_RATE) == 0
+                ? queue.offer(new SampledEvent(event, System.nanoTime()))
+                : queue.offer(event);
+        if (!offered) {
+            /* -- the queue only closes once this mailbox has handed over to its successor -- */
+            successor.inherit(limit == null || event instanceof Runnable ? event : limit.evict(event));
+            return;
+        }
+        schedule();
+    }
+    private void inherit(@Nonnull Object event) {
+        if (limit != null && !(event instanceof Runnable))
+            limit.inherit(1);
+        offer(event);
+    }
+    @Override
+    public void run() {
+        long drainStart = System.nanoTime();
+        for (int i = 0; i < THROUGHPUT; i++) {
+            ModuleMailbox next = successor;
+            if (next != null && state.get() == State.DEAD) {
+                handOver(next);
+                return;
+            }
+            Object event = poll();
+            if (event == null)
+                break;
+            boolean failed = false;
+            long start = System.nanoTime();
+            if (event instanceof SampledEvent) {
+                metrics.eventDispatched(start - ((SampledEvent) event).queuedAt);
+                event = ((SampledEvent) event).event;
+            }
+            long sequence = 0;
+            if (event instanceof Journaled) {
+                sequence = ((Journaled) event).sequence;
+                event = ((Journaled) event).event;
+            }
+            if (limit != null && !(event instanceof Runnable))
+                event = limit.release(event);
+            try {
+                dispatch(event);
+            } catch (Throwable throwable) {
+                failed = true;
+                LOGGER.error("Uncaught Exception in {} {} by {} on {}: ", module.getName(), module.getVersion(), module.getAuthor(), Thread.currentThread().getName(), throwable);
+            }
+            /* -- a message that failed was still handled; replaying it after a crash would only fail it again -- */
+            acknowledge(sequence);
+            long end = System.nanoTime();
+            metrics.eventProcessed(end - start, failed);
+            if (end - drainStart >= timeSliceNanos)
+                break;
+        }
+        ModuleMailbox next = successor;
+        if (next != null && state.get() == State.DEAD) {
+            handOver(next);
+            return;
+        }
+        scheduled.set(false);
+        /* -- a producer may have offered after our last poll but lost the race to schedule; re-check so nothing is stranded -- */
+        if (!queue.isEmpty() || inherited != null)
+            schedule();
+    }
+    @Nullable
+    private Object poll() {
+        ObjectArrayList<Object> pending = inherited;
+        if (pending != null) {
+            if (inheritedIndex < pending.size()) {
+                Object event = pending.set(inheritedIndex++, null);
+                if (evictionLock != null && isMessage(event))
+                    limit.taken();
+                return event;
+            }
+            inherited = null;
+        }
+        return pollQueued();
+    }
+    @Nullable
+    private Object pollQueued() {
+        if (evictionLock == null)
+            return queue.poll();
+        synchronized (evictionLock) {
+            Object event = displaced.isEmpty() ? queue.poll() : displaced.poll();
+            if (event != null && isMessage(event))
+                limit.taken();
+            return event;
+        }
+    }
+    private void dropOldest() {
+        Object oldest = null;
+        synchronized (evictionLock) {
+            Object event;
+            while ((event = queue.poll()) != null) {
+                if (isMessage(event)) {
+                    oldest = event;
+                    limit.dropped();
+                    break;
+                }
+                displaced.add(event);
+            }
+        }
+        /* -- every message counted is still on its way in (or was inherited), so the mailbox holds one more than its capacity until the drain catches up -- */
+        if (oldest == null)
+            return;
+        if (oldest instanceof SampledEvent)
+            oldest = ((SampledEvent) oldest).event;
+        long sequence = 0;
+        if (oldest instanceof Journaled) {
+            sequence = ((Journaled) oldest).sequence;
+            oldest = ((Journaled) oldest).event;
+        }
+        discard(oldest);
+        acknowledge(sequence);
+    }
+    private void handOver(@Nonnull ModuleMailbox next) {
+        /* -- still the only consumer here, since the scheduled flag is never released again -- */
+        queue.close();
+        ObjectArrayList<Object> pending = next.inherited;
+        int messages = 0;
+        for (;;) {
+            Object event = pollQueued();
+            if (event == null) {
+                if (queue.isEmpty())
+                    break;
+                /* -- a producer claimed its place before the queue closed but hasn't stored its element yet -- */
+                Thread.yield();
+                continue;
+            }
+            if (event instanceof SampledEvent)
+                event = ((SampledEvent) event).event;
+            Journaled journaled = event instanceof Journaled ? (Journaled) event : null;
+            Object inner = journaled == null ? event : journaled.event;
+            if (limit != null && !(inner instanceof Runnable)) {
+                Object released = limit.release(inner);
+                /* -- the successor shares the journal, so it acknowledges the record once it has handled the message -- */
+                if (journaled == null)
+                    event = released;
+                else
+                    journaled.event = released;
+                messages++;
+            }
+            pending.add(event);
+        }
+        if (next.limit != null)
+            next.limit.inherit(messages);
+        next.resume();
+    }
+    private void handOverSchedules(@Nonnull ModuleMailbox next) {
+        for (ScheduledDelivery schedule : schedules) {
+            schedule.moveTo(next);
+            next.adopt(schedule);
+            schedules.remove(schedule);
+        }
+    }
+    private void cancelSchedules() {
+        for (ScheduledDelivery schedule : schedules)
+            schedule.cancel();
+        /* -- anything cancelled concurrently may have been forgotten by its new owner instead -- */
+        schedules.clear();
+    }
+    private void acknowledge(long sequence) {
+        if (sequence > 0)
+            journal.ack(sequence);
+    }
+    private void discard(@Nonnull Object event) {
+        metrics.eventDiscarded();
+        if (event instanceof Delivery && ((Delivery) event).future != null)
+            ((Delivery) event).future.completeExceptionally(new ModuleException(String.format("Message to %s %s by %s was dropped!", module.getName(), module.getVersion(), module.getAuthor())));
+    }
+    private void dispatch(@Nonnull Object event) {
+        if (event instanceof Runnable) {
+            ((Runnable) event).run();
+            return;
+        }
+        if (!(event instanceof Delivery)) {
+            dispatchPayload(event);
+            return;
+        }
+        Delivery delivery = (Delivery) event;
+        try {
+            dispatchPayload(delivery.payload);
+            if (delivery.andThen != null)
+                delivery.andThen.accept(loader, module);
+        } catch (Throwable throwable) {
+            if (delivery.future != null)
+                delivery.future.completeExceptionally(throwable instanceof ModuleException ? throwable : new ModuleException(throwable));
+            /* -- rethrown so the failure is logged and counted like any other -- */
+            throw throwable;
+        }
+        if (delivery.future != null)
+            delivery.future.complete(module);
+    }
+    @SuppressWarnings("unchecked")
+    private void dispatchPayload(@Nonnull Object payload) {
+        if (payload instanceof Message)
+            module.onTypedMessage((Message<?>) payload);
+        else if (payload instanceof List)
+            module.onMessageBatch((List<String[]>) payload);
+        else if (payload instanceof Message[])
+            dispatchAll((Message<?>[]) payload);
+        else if (typedStrings)
+            module.onTypedMessage(Message.ofStrings((String[]) payload));
+        else
+            module.onMessage((String[]) payload);
+    }
+    private void dispatchAll(@Nonnull Message<?>[] messages) {
+        /* -- a published batch is one event, so a failing message skips the rest of it just like a failing onMessageBatch would -- */
+        for (Message<?> message : messages)
+            module.onTypedMessage(message);
+    }
+    private void schedule() {
+        if (suspended || !scheduled.compareAndSet(false, true))
+            return;
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException exc) {
+            scheduled.set(false);
+            LOGGER.error("Dispatcher rejected the mailbox of {} {} by {}!", module.getName(), module.getVersion(), module.getAuthor());
+            throw new ModuleException(exc);
+        }
+    }
+    private static boolean isMessage(@Nonnull Object event) {
+        Object inner = event instanceof SampledEvent ? ((SampledEvent) event).event : event;
+        if (inner instanceof Journaled)
+            inner = ((Journaled) inner).event;
+        return !(inner instanceof Runnable);
+    }
+    @Nonnull
+    private static String describe(@Nonnull Object payload) {
+        Object contents = payload instanceof Delivery ? ((Delivery) payload).payload : payload;
+        return contents instanceof Message ? ((Message<?>) contents).getPayloadType().getName() : contents.getClass().getName();
+    }
+    private static boolean overridesTypedMessages(@Nonnull Class<?> type) {
+        try {
+            return type.getMethod("onTypedMessage", Message.class).getDeclaringClass() != Module.class;
+        } catch (NoSuchMethodException exc) {
+            return true;
+        }
+    }
+    private static final class SampledEvent {
+        private final Object event;
+        private final long queuedAt;
+        private SampledEvent(@Nonnull Object event, long queuedAt) {
+            this.event = event;
+            this.queuedAt = queuedAt;
+        }
+    }
+    private static final class Journaled {
+        private final long sequence;
+        /* -- swapped for the released payload when handed over to a successor -- */
+        private Object event;
+        private Journaled(@Nonnull Object event, long sequence) {
+            this.event = event;
+            this.sequence = sequence;
+        }
+    }
+    private static final class Delivery {
+        private final Object payload;
+        private final BiConsumer<ModuleLoader, Module> andThen;
+        private final CompletableFuture<Module> future;
+        private Delivery(@Nonnull Object payload, @Nullable BiConsumer<ModuleLoader, Module> andThen, @Nullable CompletableFuture<Module> future) {
+            this.payload = payload;
+            this.andThen = andThen;
+            this.future = future;
+        }
+    }
+    private static final class StateWaiter {
+        private final State target;
+        private final CompletableFuture<Module> future;
+        private StateWaiter(@Nonnull State target) {
+            this.target = target;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
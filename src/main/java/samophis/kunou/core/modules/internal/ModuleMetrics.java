@@ -0,0 +1,179 @@
+package samophis.kunou.core.modules.internal;
+
+import samophis.kunou.core.metrics.LatencyHistogram;
+import samophis.kunou.core.metrics.ModuleMetricsMXBean;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of one {@link ModuleMailbox ModuleMailbox}.
+ * <br><p>Counters bumped by producers are {@link LongAdder LongAdders} so concurrent senders don't fight over one cache line,
+ * while the ones only bumped by the (single) draining thread are plain atomics.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class ModuleMetrics implements ModuleMetricsMXBean {
+    private final ModuleMailbox mailbox;
+    private final LongAdder messagesReceived;
+    private final LongAdder eventsQueued;
+    private final LongAdder messagesRejected;
+    private final LongAdder messagesDropped;
+    private final LongAdder messagesCoalesced;
+    private final AtomicLong messagesReplayed;
+    private final AtomicLong eventsProcessed;
+    private final AtomicLong eventsFailed;
+    private final AtomicLong eventsDiscarded;
+    private final LatencyHistogram dispatchLatency;
+    private final LatencyHistogram executionLatency;
+    ModuleMetrics(@Nonnull ModuleMailbox mailbox) {
+        this.mailbox = mailbox;
+        this.messagesReceived = new LongAdder();
+        this.eventsQueued = new LongAdder();
+        this.messagesRejected = new LongAdder();
+        this.messagesDropped = new LongAdder();
+        this.messagesCoalesced = new LongAdder();
+        this.messagesReplayed = new AtomicLong();
+        this.eventsProcessed = new AtomicLong();
+        this.eventsFailed = new AtomicLong();
+        this.eventsDiscarded = new AtomicLong();
+        this.dispatchLatency = new LatencyHistogram();
+        this.executionLatency = new LatencyHistogram();
+    }
+    void messagesReceived(int amount) {
+        messagesReceived.add(amount);
+    }
+    void eventQueued() {
+        eventsQueued.increment();
+    }
+    void messageRejected() {
+        messagesRejected.increment();
+    }
+    void messageDropped() {
+        messagesDropped.increment();
+    }
+    void messageCoalesced() {
+        messagesCoalesced.increment();
+    }
+    void messagesReplayed(int amount) {
+        messagesReplayed.addAndGet(amount);
+    }
+    void eventDiscarded() {
+        eventsDiscarded.incrementAndGet();
+    }
+    void eventDispatched(long waitedNanos) {
+        dispatchLatency.record(waitedNanos);
+    }
+    void eventProcessed(long tookNanos, boolean failed) {
+        executionLatency.record(tookNanos);
+        if (failed)
+            eventsFailed.incrementAndGet();
+        eventsProcessed.incrementAndGet();
+    }
+    @Override
+    public String getModuleName() {
+        return mailbox.getModule().getName();
+    }
+    @Override
+    public String getModuleVersion() {
+        return mailbox.getModule().getVersion();
+    }
+    @Override
+    public String getState() {
+        return mailbox.getState().name();
+    }
+    @Override
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+    @Override
+    public long getEventsQueued() {
+        return eventsQueued.sum();
+    }
+    @Override
+    public long getEventsProcessed() {
+        return eventsProcessed.get();
+    }
+    @Override
+    public long getEventsFailed() {
+        return eventsFailed.get();
+    }
+    @Override
+    public long getMessagesRejected() {
+        return messagesRejected.sum();
+    }
+    @Override
+    public long getMessagesDropped() {
+        return messagesDropped.sum();
+    }
+    @Override
+    public long getMessagesCoalesced() {
+        return messagesCoalesced.sum();
+    }
+    @Override
+    public long getMessagesReplayed() {
+        return messagesReplayed.get();
+    }
+    @Override
+    public long getJournalBacklog() {
+        MessageJournal journal = mailbox.getJournal();
+        return journal == null ? -1 : journal.getBacklog();
+    }
+    @Override
+    public long getQueueDepth() {
+        /* -- processed is read first, so a concurrent drain can only make this overestimate, never go negative -- */
+        long processed = eventsProcessed.get() + eventsDiscarded.get();
+        return Math.max(0, eventsQueued.sum() - processed);
+    }
+    @Override
+    public int getMailboxCapacity() {
+        return mailbox.getMailboxConfig().getCapacity();
+    }
+    @Override
+    public int getPendingMessages() {
+        return mailbox.getPendingMessages();
+    }
+    @Override
+    public double getDispatchLatencyMean() {
+        return dispatchLatency.getMean();
+    }
+    @Override
+    public long getDispatchLatencyP50() {
+        return dispatchLatency.getPercentile(50);
+    }
+    @Override
+    public long getDispatchLatencyP99() {
+        return dispatchLatency.getPercentile(99);
+    }
+    @Override
+    public long getDispatchLatencyMax() {
+        return dispatchLatency.getMax();
+    }
+    @Override
+    public long[] getDispatchLatencyBuckets() {
+        return dispatchLatency.getBuckets();
+    }
+    @Override
+    public double getExecutionLatencyMean() {
+        return executionLatency.getMean();
+    }
+    @Override
+    public long getExecutionLatencyP50() {
+        return executionLatency.getPercentile(50);
+    }
+    @Override
+    public long getExecutionLatencyP99() {
+        return executionLatency.getPercentile(99);
+    }
+    @Override
+    public long getExecutionLatencyMax() {
+        return executionLatency.getMax();
+    }
+    @Override
+    public long[] getExecutionLatencyBuckets() {
+        return executionLatency.getBuckets();
+    }
+}
@@ -0,0 +1,89 @@
+package samophis.kunou.core.modules.internal;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import samophis.kunou.core.modules.Module;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A copy-on-write registry of the {@link ModuleMailbox mailboxes} (and thus {@link Module Modules}) a loader owns.
+ * <br><p>Every change publishes a brand new, never-again-modified {@link Snapshot Snapshot} through a single compare-and-set,
+ * so lookups are wait-free plain hash map reads no matter how many threads use them, and writers never block readers or each other.
+ * The unmodifiable map and list views are built once per snapshot and handed out as-is until the registry changes again.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class ModuleRegistry {
+    private final AtomicReference<Snapshot> snapshot;
+    ModuleRegistry() {
+        this.snapshot = new AtomicReference<>(new Snapshot(new Object2ObjectOpenHashMap<>()));
+    }
+    @Nullable
+    ModuleMailbox get(@Nonnull String name) {
+        return snapshot.get().mailboxes.get(name);
+    }
+    @Nullable
+    ModuleMailbox put(@Nonnull ModuleMailbox mailbox) {
+        String name = mailbox.getModule().getName();
+        while (true) {
+            Snapshot current = snapshot.get();
+            Object2ObjectOpenHashMap<String, ModuleMailbox> copy = new Object2ObjectOpenHashMap<>(current.mailboxes);
+            ModuleMailbox previous = copy.put(name, mailbox);
+            if (snapshot.compareAndSet(current, new Snapshot(copy)))
+                return previous;
+        }
+    }
+    boolean replace(@Nonnull ModuleMailbox expected, @Nonnull ModuleMailbox replacement) {
+        String name = expected.getModule().getName();
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.mailboxes.get(name) != expected)
+                return false;
+            Object2ObjectOpenHashMap<String, ModuleMailbox> copy = new Object2ObjectOpenHashMap<>(current.mailboxes);
+            copy.put(name, replacement);
+            if (snapshot.compareAndSet(current, new Snapshot(copy)))
+                return true;
+        }
+    }
+    @Nonnull
+    Collection<ModuleMailbox> getMailboxes() {
+        return snapshot.get().mailboxView;
+    }
+    @Nonnull
+    Map<String, Module> getModules() {
+        return snapshot.get().modules;
+    }
+    @Nonnull
+    List<Module> getModulesAsList() {
+        return snapshot.get().list;
+    }
+    private static final class Snapshot {
+        private final Object2ObjectOpenHashMap<String, ModuleMailbox> mailboxes;
+        private final Map<String, Module> modules;
+        private final List<Module> list;
+        private final Collection<ModuleMailbox> mailboxView;
+        private Snapshot(@Nonnull Object2ObjectOpenHashMap<String, ModuleMailbox> mailboxes) {
+            this.mailboxes = Objects.requireNonNull(mailboxes);
+            Object2ObjectOpenHashMap<String, Module> modules = new Object2ObjectOpenHashMap<>(mailboxes.size());
+            ObjectArrayList<Module> list = new ObjectArrayList<>(mailboxes.size());
+            for (Map.Entry<String, ModuleMailbox> entry : mailboxes.entrySet()) {
+                Module module = entry.getValue().getModule();
+                modules.put(entry.getKey(), module);
+                list.add(module);
+            }
+            this.modules = Collections.unmodifiableMap(modules);
+            this.list = Collections.unmodifiableList(list);
+            this.mailboxView = Collections.unmodifiableCollection(mailboxes.values());
+        }
+    }
+}
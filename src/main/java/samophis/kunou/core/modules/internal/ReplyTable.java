@@ -0,0 +1,145 @@
+package samophis.kunou.core.modules.internal;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ReplyChannel;
+import samophis.kunou.core.util.HashedWheelTimer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The correlation table of a {@link samophis.kunou.core.modules.ModuleLoader ModuleLoader}: every request still waiting for a reply, by numeric id.
+ * <br><p>Entries live in primitive-keyed maps split into stripes, each guarded by its own lock, so concurrent asks and replies rarely contend.
+ * Whoever removes an entry first -- the reply, a failure or the timeout -- decides the outcome, so a late reply can never complete a request twice.
+ * <br><br>Timeouts are scheduled on the {@link HashedWheelTimer HashedWheelTimer} of the loader, and cancelled as soon as the reply arrives -- both in constant time,
+ * so tens of thousands of requests can be in flight without the timer slowing down.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class ReplyTable {
+    private static final int STRIPES = 16;
+    private final Long2ObjectOpenHashMap<PendingReply<?>>[] stripes;
+    private final HashedWheelTimer timer;
+    private final AtomicLong ids;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ReplyTable(@Nonnull HashedWheelTimer timer) {
+        this.timer = Objects.requireNonNull(timer);
+        this.stripes = new Long2ObjectOpenHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Long2ObjectOpenHashMap<>();
+        this.ids = new AtomicLong(0);
+    }
+    /* -- null once the timer was stopped, which only happens when the loader shuts down -- */
+    @Nullable
+    <R> PendingReply<R> open(@Nonnull Module module, @Nonnull Class<R> type, long timeout, @Nonnull TimeUnit unit) {
+        PendingReply<R> pending = new PendingReply<>(ids.incrementAndGet(), module, type);
+        Long2ObjectOpenHashMap<PendingReply<?>> stripe = stripeOf(pending.id);
+        synchronized (stripe) {
+            stripe.put(pending.id, pending);
+        }
+        try {
+            pending.expiry = timer.newTimeout(pending::expire, timeout, unit);
+        } catch (IllegalStateException exc) {
+            /* -- failAll may already have run, so nothing else would ever take it out again -- */
+            close(pending);
+            return null;
+        }
+        return pending;
+    }
+    /* -- for a loader shutting down: every request still in flight fails at once, and a reply arriving later finds nothing -- */
+    int failAll(@Nonnull ModuleException cause) {
+        ObjectArrayList<PendingReply<?>> pending = new ObjectArrayList<>();
+        for (Long2ObjectOpenHashMap<PendingReply<?>> stripe : stripes) {
+            synchronized (stripe) {
+                pending.addAll(stripe.values());
+                stripe.clear();
+            }
+        }
+        for (PendingReply<?> reply : pending)
+            reply.abort(cause);
+        return pending.size();
+    }
+    private boolean close(@Nonnull PendingReply<?> pending) {
+        Long2ObjectOpenHashMap<PendingReply<?>> stripe = stripeOf(pending.id);
+        synchronized (stripe) {
+            return stripe.remove(pending.id) == pending;
+        }
+    }
+    @Nonnull
+    private Long2ObjectOpenHashMap<PendingReply<?>> stripeOf(long id) {
+        return stripes[(int) (id & (STRIPES - 1))];
+    }
+    final class PendingReply<R> implements ReplyChannel {
+        private final long id;
+        private final Module module;
+        private final Class<R> type;
+        private final CompletableFuture<R> future;
+        private volatile HashedWheelTimer.Timeout expiry;
+        private PendingReply(long id, @Nonnull Module module, @Nonnull Class<R> type) {
+            this.id = id;
+            this.module = module;
+            this.type = type;
+            this.future = new CompletableFuture<>();
+        }
+        @Nonnull
+        CompletableFuture<R> getFuture() {
+            return future;
+        }
+        @Override
+        public boolean reply(@Nonnull Object value) {
+            Objects.requireNonNull(value);
+            if (!finish())
+                return false;
+            if (type.isInstance(value))
+                future.complete(type.cast(value));
+            else
+                future.completeExceptionally(new ModuleException(String.format("%s replied with a %s, not a %s!", module.getName(), value.getClass().getName(), type.getName())));
+            return true;
+        }
+        @Override
+        public boolean fail(@Nonnull Throwable cause) {
+            Objects.requireNonNull(cause);
+            if (!finish())
+                return false;
+            future.completeExceptionally(cause instanceof ModuleException ? cause : new ModuleException(cause));
+            return true;
+        }
+        @Override
+        public boolean isOpen() {
+            return !future.isDone();
+        }
+        private boolean finish() {
+            if (!close(this))
+                return false;
+            /* -- may still be null if the reply beat the timer scheduling; the timeout then just finds nothing to expire -- */
+            HashedWheelTimer.Timeout current = expiry;
+            if (current != null)
+                current.cancel();
+            return true;
+        }
+        private void abort(@Nonnull ModuleException cause) {
+            HashedWheelTimer.Timeout current = expiry;
+            if (current != null)
+                current.cancel();
+            future.completeExceptionally(cause);
+        }
+        private void expire() {
+            if (close(this))
+                future.completeExceptionally(new ModuleException(new TimeoutException(String.format("%s did not reply in time!", module.getName()))));
+        }
+        @Override
+        public String toString() {
+            return "PendingReply{" + id + " from " + module.getName() + (isOpen() ? "" : ", closed") + "}";
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package samophis.kunou.core.modules.internal;
+
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ScheduledMessage;
+import samophis.kunou.core.util.HashedWheelTimer;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A {@link ScheduledMessage ScheduledMessage} driven by the {@link HashedWheelTimer HashedWheelTimer} of its loader.
+ * <br><p>Each delivery is one timeout on the wheel, so a scheduled message costs a few dozen bytes and no thread while it waits. When it fires, the payload is offered to
+ * the mailbox of its owner (following any successor) without ever blocking the timer thread: a module that isn't ready, or whose bounded mailbox is full, simply misses that delivery.
+ * <br><br>Periodic messages re-arm themselves after every delivery, aiming at {@code first + n * period} rather than {@code now + period}, so the rate never drifts.
+ * If the timer falls behind by more than a whole period, the missed deliveries are skipped rather than bunched up.
+ * <br>The owning mailbox keeps every scheduled message in a set, so it can cancel them when its module dies or hand them to its successor on a hot swap.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class ScheduledDelivery implements ScheduledMessage, Runnable {
+    private static final AtomicIntegerFieldUpdater<ScheduledDelivery> STATE = AtomicIntegerFieldUpdater.newUpdater(ScheduledDelivery.class, "state");
+    private static final int PENDING = 0;
+    private static final int DELIVERED = 1;
+    private static final int CANCELLED = 2;
+    private final HashedWheelTimer timer;
+    private final Module module;
+    private final Object payload;
+    /* -- 0 for one-shot messages -- */
+    private final long periodNanos;
+    private volatile int state;
+    private volatile ModuleMailbox owner;
+    private volatile HashedWheelTimer.Timeout timeout;
+    /* -- only ever touched by the timer thread once started -- */
+    private long firstDeadline;
+    private long deliveries;
+    ScheduledDelivery(@Nonnull HashedWheelTimer timer, @Nonnull ModuleMailbox owner, @Nonnull Object payload, long periodNanos) {
+        this.timer = Objects.requireNonNull(timer);
+        this.owner = Objects.requireNonNull(owner);
+        this.module = owner.getModule();
+        this.payload = Objects.requireNonNull(payload);
+        this.periodNanos = periodNanos;
+    }
+    @Nonnull
+    @Override
+    public Module getModule() {
+        return module;
+    }
+    @Override
+    public boolean isPeriodic() {
+        return periodNanos > 0;
+    }
+    @Override
+    public boolean cancel() {
+        if (!STATE.compareAndSet(this, PENDING, CANCELLED))
+            return false;
+        /* -- may still be null if cancelled while being armed; arm re-checks the state right after -- */
+        HashedWheelTimer.Timeout current = timeout;
+        if (current != null)
+            current.cancel();
+        owner.forget(this);
+        return true;
+    }
+    @Override
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+    @Override
+    public boolean isDone() {
+        return state != PENDING;
+    }
+    /* -- throws an IllegalStateException if the timer was stopped -- */
+    void start(long delayNanos) {
+        firstDeadline = System.nanoTime() + delayNanos;
+        arm(delayNanos);
+    }
+    void moveTo(@Nonnull ModuleMailbox next) {
+        owner = next;
+    }
+    @Override
+    public void run() {
+        if (state != PENDING)
+            return;
+        if (periodNanos == 0) {
+            /* -- won before delivering, so a cancel racing with the delivery can't claim to have stopped it -- */
+            if (!STATE.compareAndSet(this, PENDING, DELIVERED))
+                return;
+            owner.forget(this);
+            owner.tryAccept(payload, 1, false);
+            return;
+        }
+        owner.tryAccept(payload, 1, false);
+        long now = System.nanoTime();
+        long next = firstDeadline + ++deliveries * periodNanos;
+        if (next + periodNanos <= now) {
+            long missed = (now - next) / periodNanos;
+            deliveries += missed;
+            next += missed * periodNanos;
+        }
+        try {
+            arm(Math.max(0, next - now));
+        } catch (IllegalStateException exc) {
+            /* -- the timer only stops once its loader shut down, which is as good as a cancel -- */
+            cancel();
+        }
+    }
+    private void arm(long delayNanos) {
+        timeout = timer.newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+        /* -- a cancel that ran before the timeout was stored couldn't reach it -- */
+        if (state == CANCELLED)
+            timeout.cancel();
+    }
+    @Override
+    public String toString() {
+        return "ScheduledDelivery{" + module.getName() + (isPeriodic() ? ", every " + periodNanos + "ns" : "") + (isDone() ? ", done" : "") + "}";
+    }
+}
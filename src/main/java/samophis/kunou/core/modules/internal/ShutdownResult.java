@@ -0,0 +1,57 @@
+package samophis.kunou.core.modules.internal;
+
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ShutdownReport;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable {@link ShutdownReport ShutdownReport} handed out by {@link ModuleLoaderImpl ModuleLoaderImpl} once a shutdown completes or runs out of time.
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class ShutdownResult implements ShutdownReport {
+    private final List<Module> stopped;
+    private final List<Module> failed;
+    private final List<Module> unfinished;
+    private final Duration elapsed;
+    ShutdownResult(@Nonnull List<Module> stopped, @Nonnull List<Module> failed, @Nonnull List<Module> unfinished, @Nonnull Duration elapsed) {
+        this.stopped = Collections.unmodifiableList(stopped);
+        this.failed = Collections.unmodifiableList(failed);
+        this.unfinished = Collections.unmodifiableList(unfinished);
+        this.elapsed = elapsed;
+    }
+    @Nonnull
+    @Override
+    public List<Module> getStopped() {
+        return stopped;
+    }
+    @Nonnull
+    @Override
+    public List<Module> getFailed() {
+        return failed;
+    }
+    @Nonnull
+    @Override
+    public List<Module> getUnfinished() {
+        return unfinished;
+    }
+    @Nonnull
+    @Override
+    public Duration getElapsed() {
+        return elapsed;
+    }
+    @Override
+    public boolean isComplete() {
+        return unfinished.isEmpty();
+    }
+    @Override
+    public String toString() {
+        return "ShutdownReport{" + stopped.size() + " stopped, " + failed.size() + " failed, " + unfinished.size() + " unfinished, in " + elapsed.toMillis() + "ms}";
+    }
+}
@@ -0,0 +1,106 @@
+package samophis.kunou.core.modules.internal;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A copy-on-write index of the {@link ModuleMailbox mailboxes} subscribed to each topic of a loader.
+ * <br><p>Subscribers are kept as plain arrays, precomputed on every (rare) subscription change and published through a single compare-and-set,
+ * just like the {@link ModuleRegistry registry} publishes its snapshots. Publishing is then one hash map read and a loop over exactly the subscribers of a topic,
+ * no matter how many modules the loader owns.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class TopicIndex {
+    private static final ModuleMailbox[] NONE = new ModuleMailbox[0];
+    private final AtomicReference<Object2ObjectOpenHashMap<String, ModuleMailbox[]>> topics;
+    TopicIndex() {
+        this.topics = new AtomicReference<>(new Object2ObjectOpenHashMap<>());
+    }
+    @Nonnull
+    ModuleMailbox[] get(@Nonnull String topic) {
+        ModuleMailbox[] subscribers = topics.get().get(topic);
+        return subscribers == null ? NONE : subscribers;
+    }
+    boolean subscribe(@Nonnull String topic, @Nonnull ModuleMailbox mailbox) {
+        while (true) {
+            Object2ObjectOpenHashMap<String, ModuleMailbox[]> current = topics.get();
+            ModuleMailbox[] subscribers = current.getOrDefault(topic, NONE);
+            if (indexOf(subscribers, mailbox) >= 0)
+                return false;
+            ModuleMailbox[] grown = Arrays.copyOf(subscribers, subscribers.length + 1);
+            grown[subscribers.length] = mailbox;
+            Object2ObjectOpenHashMap<String, ModuleMailbox[]> copy = new Object2ObjectOpenHashMap<>(current);
+            copy.put(topic, grown);
+            if (topics.compareAndSet(current, copy))
+                return true;
+        }
+    }
+    boolean unsubscribe(@Nonnull String topic, @Nonnull ModuleMailbox mailbox) {
+        while (true) {
+            Object2ObjectOpenHashMap<String, ModuleMailbox[]> current = topics.get();
+            ModuleMailbox[] subscribers = current.getOrDefault(topic, NONE);
+            int index = indexOf(subscribers, mailbox);
+            if (index < 0)
+                return false;
+            Object2ObjectOpenHashMap<String, ModuleMailbox[]> copy = new Object2ObjectOpenHashMap<>(current);
+            if (subscribers.length == 1)
+                copy.remove(topic);
+            else
+                copy.put(topic, without(subscribers, index));
+            if (topics.compareAndSet(current, copy))
+                return true;
+        }
+    }
+    /* -- moves every subscription of one mailbox to another (a replacement); moving them to the same mailbox drops them all instead (an overridden module) -- */
+    void transfer(@Nonnull ModuleMailbox from, @Nonnull ModuleMailbox to) {
+        while (true) {
+            Object2ObjectOpenHashMap<String, ModuleMailbox[]> current = topics.get();
+            Object2ObjectOpenHashMap<String, ModuleMailbox[]> copy = null;
+            for (Map.Entry<String, ModuleMailbox[]> entry : current.entrySet()) {
+                ModuleMailbox[] subscribers = entry.getValue();
+                int index = indexOf(subscribers, from);
+                if (index < 0)
+                    continue;
+                if (copy == null)
+                    copy = new Object2ObjectOpenHashMap<>(current);
+                ModuleMailbox[] changed;
+                if (from == to || indexOf(subscribers, to) >= 0) {
+                    changed = without(subscribers, index);
+                } else {
+                    changed = subscribers.clone();
+                    changed[index] = to;
+                }
+                if (changed.length == 0)
+                    copy.remove(entry.getKey());
+                else
+                    copy.put(entry.getKey(), changed);
+            }
+            if (copy == null || topics.compareAndSet(current, copy))
+                return;
+        }
+    }
+    void removeAll(@Nonnull ModuleMailbox mailbox) {
+        transfer(mailbox, mailbox);
+    }
+    private static int indexOf(@Nonnull ModuleMailbox[] subscribers, @Nonnull ModuleMailbox mailbox) {
+        for (int i = 0; i < subscribers.length; i++) {
+            if (subscribers[i] == mailbox)
+                return i;
+        }
+        return -1;
+    }
+    @Nonnull
+    private static ModuleMailbox[] without(@Nonnull ModuleMailbox[] subscribers, int index) {
+        ModuleMailbox[] shrunk = new ModuleMailbox[subscribers.length - 1];
+        System.arraycopy(subscribers, 0, shrunk, 0, index);
+        System.arraycopy(subscribers, index + 1, shrunk, index, shrunk.length - index);
+        return shrunk;
+    }
+}
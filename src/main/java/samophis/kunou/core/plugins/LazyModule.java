@@ -0,0 +1,164 @@
+package samophis.kunou.core.plugins;
+
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.modules.Message;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.modules.State;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A stand-in for a {@link Module Module} discovered in a plugin jar, registered in place of the real one until it's actually needed.
+ * <br><p>Its name, version, author, homepage and dependencies all come from the plugin index, so registering it loads no class at all.
+ * The real module is loaded and constructed on its first start-up or message -- on the dispatcher thread running that event --
+ * and every callback is handed to it from then on.
+ * <br><br>The loader treats the real module as this one: it may keep passing itself to {@link ModuleLoader ModuleLoader} methods as usual.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class LazyModule implements Module {
+    private final ModuleLoader loader;
+    private final PluginEntry entry;
+    private final PluginJar jar;
+    private volatile Module delegate;
+    LazyModule(@Nonnull ModuleLoader loader, @Nonnull PluginEntry entry, @Nonnull PluginJar jar, @Nullable Module delegate) {
+        this.loader = Objects.requireNonNull(loader);
+        this.entry = Objects.requireNonNull(entry);
+        this.jar = Objects.requireNonNull(jar);
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the index entry this module was registered from.
+     * @return The <b>not-null</b> {@link PluginEntry PluginEntry} of this module.
+     */
+    @Nonnull
+    public PluginEntry getEntry() {
+        return entry;
+    }
+
+    /**
+     * Returns the real module, if it has been loaded yet.
+     * @return The <b>possibly-null</b> real module.
+     */
+    @Nullable
+    public Module getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the real module once it has been loaded, and this stand-in until then.
+     * @return The <b>not-null</b> target of this module.
+     */
+    @Nonnull
+    @Override
+    public Module getTarget() {
+        Module current = delegate;
+        return current == null ? this : current;
+    }
+
+    /**
+     * Checks whether or not the real module has been loaded and constructed yet.
+     * @return Whether or not the real module exists.
+     */
+    public boolean isResolved() {
+        return delegate != null;
+    }
+    @Override
+    public ModuleLoader getLoader() {
+        return loader;
+    }
+    @Override
+    public String getName() {
+        return entry.getName();
+    }
+    @Override
+    public String getVersion() {
+        return entry.getVersion();
+    }
+    @Override
+    public String getAuthor() {
+        return entry.getAuthor();
+    }
+    @Override
+    public String getUrl() {
+        return entry.getUrl();
+    }
+    @Nonnull
+    @Override
+    public Collection<String> getDependencies() {
+        return entry.getDependencies();
+    }
+    @Override
+    public State getState() {
+        Module current = delegate;
+        return current == null ? State.DEAD : current.getState();
+    }
+    @Override
+    public void onStart(@Nullable String... args) {
+        resolve().onStart(args);
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<?> onStartAsync(@Nullable String... args) {
+        return resolve().onStartAsync(args);
+    }
+    @Override
+    public void onMessage(@Nonnull String... args) {
+        resolve().onMessage(args);
+    }
+    @Override
+    public void onTypedMessage(@Nonnull Message<?> message) {
+        resolve().onTypedMessage(message);
+    }
+    @Override
+    public void onMessageBatch(@Nonnull List<String[]> batch) {
+        resolve().onMessageBatch(batch);
+    }
+    @Override
+    public void onDeath() {
+        Module current = delegate;
+        if (current != null)
+            current.onDeath();
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<?> onDeathAsync() {
+        Module current = delegate;
+        return current == null ? CompletableFuture.completedFuture(null) : current.onDeathAsync();
+    }
+    @Override
+    public String toString() {
+        return "LazyModule{" + entry + (delegate == null ? "" : ", resolved") + "}";
+    }
+    @Nonnull
+    private Module resolve() {
+        Module current = delegate;
+        if (current != null)
+            return current;
+        synchronized (this) {
+            if (delegate != null)
+                return delegate;
+            Class<? extends Module> type;
+            try {
+                type = Class.forName(entry.getClassName(), true, jar.getClassLoader()).asSubclass(Module.class);
+            } catch (ClassNotFoundException | ClassCastException | LinkageError exc) {
+                throw new ModuleException(exc);
+            }
+            current = PluginJar.instantiate(type, loader);
+            if (!entry.getName().equals(current.getName()))
+                throw new ModuleException(String.format("%s in %s is named %s, not %s as indexed!", entry.getClassName(), jar.getPath(), current.getName(), entry.getName()));
+            delegate = current;
+            return current;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package samophis.kunou.core.plugins;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Describes a {@link samophis.kunou.core.modules.Module Module} shipped in a plugin jar, so {@link PluginDiscovery PluginDiscovery} can index it without constructing it.
+ * <br><p>The values must match what the module itself returns from {@link samophis.kunou.core.modules.Module#getName() getName()} and friends.
+ * Modules without this annotation are still discovered, but have to be constructed once while their jar is scanned to find out who they are.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ModuleDescriptor {
+    /**
+     * The name of the module, as returned by {@link samophis.kunou.core.modules.Module#getName()}.
+     * @return The name of the module.
+     */
+    String name();
+
+    /**
+     * The version of the module, as returned by {@link samophis.kunou.core.modules.Module#getVersion()}.
+     * @return The version of the module.
+     */
+    String version();
+
+    /**
+     * The author(s) of the module, as returned by {@link samophis.kunou.core.modules.Module#getAuthor()}.
+     * @return The author(s) of the module.
+     */
+    String author();
+
+    /**
+     * The homepage of the module, as returned by {@link samophis.kunou.core.modules.Module#getUrl()}.
+     * @return The homepage of the module, or an empty String if it has none.
+     */
+    String url() default "";
+
+    /**
+     * The names of the modules this module depends on, as returned by {@link samophis.kunou.core.modules.Module#getDependencies()}.
+     * @return The names of the modules this module depends on.
+     */
+    String[] dependencies() default {};
+}
@@ -0,0 +1,189 @@
+package samophis.kunou.core.plugins;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ModuleHandle;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.util.ModuleThreadExecutor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Discovers {@link Module Modules} in a directory of plugin jars and registers them in a {@link ModuleLoader ModuleLoader}, without loading any of them.
+ * <br><p>A plugin jar lists its module classes in a {@code META-INF/services/samophis.kunou.core.modules.Module} file, one fully-qualified class name per line,
+ * exactly like a {@link java.util.ServiceLoader ServiceLoader} provider file. Module classes should be annotated with {@link ModuleDescriptor ModuleDescriptor}
+ * so they can be indexed without being constructed. Each one needs a public constructor taking its {@link ModuleLoader ModuleLoader}, or a public no-argument one.
+ * <br><br>What was found is kept in a persistent index next to the jars. On later boots, a jar whose size and last-modified time haven't changed is taken from the index
+ * as-is, without even being opened. One that was touched but still has the same CRC32 checksum is also taken from the index. Only new and changed jars are scanned again,
+ * and those scans run in parallel in the module thread pool.
+ * <br>Every module is registered as a {@link LazyModule LazyModule}: its class is only loaded and constructed on its first start-up or message.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class PluginDiscovery {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PluginDiscovery.class);
+    /** The name of the index file {@link #of(Path)} keeps inside the plugins directory. */
+    public static final String INDEX_FILE_NAME = ".kunou-index";
+    private final Path directory;
+    private final Path indexFile;
+    private PluginDiscovery(@Nonnull Path directory, @Nonnull Path indexFile) {
+        this.directory = directory;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Creates a new discovery for a plugins directory, keeping its index in a {@value #INDEX_FILE_NAME} file inside that directory.
+     * @param directory The <b>not-null</b> directory containing the plugin jars.
+     * @return A brand new PluginDiscovery.
+     * @throws NullPointerException If {@code directory} is null.
+     */
+    @Nonnull
+    public static PluginDiscovery of(@Nonnull Path directory) {
+        return of(directory, directory.resolve(INDEX_FILE_NAME));
+    }
+
+    /**
+     * Creates a new discovery for a plugins directory, keeping its index in a given file.
+     * @param directory The <b>not-null</b> directory containing the plugin jars.
+     * @param indexFile The <b>not-null</b> file the index is read from and written to.
+     * @return A brand new PluginDiscovery.
+     * @throws NullPointerException If {@code directory} or {@code indexFile} are null.
+     */
+    @Nonnull
+    public static PluginDiscovery of(@Nonnull Path directory, @Nonnull Path indexFile) {
+        return new PluginDiscovery(Objects.requireNonNull(directory), Objects.requireNonNull(indexFile));
+    }
+
+    /**
+     * Returns the directory this discovery looks for plugin jars in.
+     * @return The <b>not-null</b> plugins directory.
+     */
+    @Nonnull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the file this discovery keeps its index in.
+     * @return The <b>not-null</b> index file.
+     */
+    @Nonnull
+    public Path getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Finds every module in the plugins directory and {@link ModuleLoader#addModule(Module) adds} it to a loader as a {@link LazyModule LazyModule}.
+     * <br><p>Jars are handled in file name order, so if two modules share a name, the one from the last jar wins (just like calling {@code addModule} twice).
+     * The index is rewritten only if a jar was added, changed or removed. Nothing is started; use {@link ModuleLoader#startAll()} or start modules one by one.</p>
+     * @param loader The <b>not-null</b> loader to add the discovered modules to.
+     * @return The <b>not-null</b> handles of every module added, in the order they were added.
+     * @throws NullPointerException If {@code loader} is null.
+     * @throws ModuleException If the plugins directory or a jar in it can't be read.
+     */
+    @Nonnull
+    public List<ModuleHandle> discover(@Nonnull ModuleLoader loader) {
+        Objects.requireNonNull(loader);
+        List<Path> paths = listJars();
+        Map<String, PluginIndex.JarRecord> indexed = PluginIndex.read(indexFile);
+        List<PluginJar> jars = new ObjectArrayList<>(paths.size());
+        List<CompletableFuture<PluginIndex.JarRecord>> records = new ObjectArrayList<>(paths.size());
+        boolean changed = indexed.size() != paths.size();
+        for (Path path : paths) {
+            PluginJar jar = new PluginJar(path);
+            BasicFileAttributes attributes = attributesOf(path);
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            PluginIndex.JarRecord record = indexed.get(path.getFileName().toString());
+            jars.add(jar);
+            if (record != null && record.matches(size, lastModified)) {
+                records.add(CompletableFuture.completedFuture(record));
+                continue;
+            }
+            changed = true;
+            records.add(CompletableFuture.supplyAsync(() -> refresh(jar, record, loader, size, lastModified), ModuleThreadExecutor::runModuleMethod));
+        }
+        List<PluginIndex.JarRecord> results = new ObjectArrayList<>(records.size());
+        try {
+            for (CompletableFuture<PluginIndex.JarRecord> record : records)
+                results.add(record.join());
+        } catch (CompletionException exc) {
+            Throwable cause = exc.getCause();
+            if (cause instanceof UncheckedIOException)
+                throw new ModuleException(cause.getCause());
+            throw cause instanceof ModuleException ? (ModuleException) cause : new ModuleException(cause);
+        }
+        if (changed)
+            writeIndex(results);
+        List<ModuleHandle> handles = new ObjectArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            PluginIndex.JarRecord record = results.get(i);
+            for (PluginEntry entry : record.entries) {
+                if (loader.getModuleByName(entry.getName()) != null)
+                    LOGGER.warn("{} from {} overrides a module with the same name!", entry.getName(), record.fileName);
+                handles.add(loader.addModule(new LazyModule(loader, entry, jars.get(i), record.instances.get(entry.getClassName()))));
+            }
+        }
+        LOGGER.info("Discovered {} modules in {} plugin jars in {}.", handles.size(), jars.size(), directory);
+        return Collections.unmodifiableList(handles);
+    }
+    @Nonnull
+    private static PluginIndex.JarRecord refresh(@Nonnull PluginJar jar, @Nullable PluginIndex.JarRecord record, @Nonnull ModuleLoader loader, long size, long lastModified) {
+        try {
+            long checksum = PluginJar.checksum(jar.getPath());
+            if (record != null && record.checksum == checksum)
+                return record.touched(size, lastModified);
+            LOGGER.debug("Scanning plugin jar {}.", jar.getPath());
+            return jar.scan(loader, size, lastModified, checksum);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+    @Nonnull
+    private List<Path> listJars() {
+        List<Path> paths = new ObjectArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.jar")) {
+            for (Path path : stream)
+                paths.add(path);
+        } catch (IOException exc) {
+            LOGGER.error("Could not list the plugins directory {}!", directory);
+            throw new ModuleException(exc);
+        }
+        paths.sort(null);
+        return paths;
+    }
+    @Nonnull
+    private static BasicFileAttributes attributesOf(@Nonnull Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException exc) {
+            throw new ModuleException(exc);
+        }
+    }
+    private void writeIndex(@Nonnull List<PluginIndex.JarRecord> records) {
+        try {
+            PluginIndex.write(indexFile, records);
+        } catch (IOException exc) {
+            /* -- the modules were found all the same; the next boot just has to scan again -- */
+            LOGGER.warn("Could not write the plugin index {}: ", indexFile, exc);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package samophis.kunou.core.plugins;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable description of one {@link samophis.kunou.core.modules.Module Module} found in a plugin jar, as stored in the plugin index.
+ * <br><p>Everything needed to register a module lives here, so a {@link LazyModule LazyModule} can stand in for it without its class ever being loaded.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class PluginEntry {
+    private final String className;
+    private final String name;
+    private final String version;
+    private final String author;
+    private final String url;
+    private final List<String> dependencies;
+    PluginEntry(@Nonnull String className, @Nonnull String name, @Nonnull String version, @Nonnull String author, @Nullable String url, @Nonnull List<String> dependencies) {
+        this.className = Objects.requireNonNull(className);
+        this.name = Objects.requireNonNull(name);
+        this.version = Objects.requireNonNull(version);
+        this.author = Objects.requireNonNull(author);
+        this.url = url == null || url.isEmpty() ? null : url;
+        this.dependencies = Collections.unmodifiableList(dependencies);
+    }
+
+    /**
+     * Returns the fully-qualified name of the class implementing the module.
+     * @return The <b>not-null</b> class name.
+     */
+    @Nonnull
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Returns the name of the module.
+     * @return The <b>not-null</b> name of the module.
+     */
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the version of the module.
+     * @return The <b>not-null</b> version of the module.
+     */
+    @Nonnull
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the author(s) of the module.
+     * @return The <b>not-null</b> author(s) of the module.
+     */
+    @Nonnull
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Returns the homepage of the module.
+     * @return The <b>possibly-null</b> homepage of the module.
+     */
+    @Nullable
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns the names of the modules this module depends on.
+     * @return The <b>not-null</b>, unmodifiable and possibly-empty names of the dependencies.
+     */
+    @Nonnull
+    public List<String> getDependencies() {
+        return dependencies;
+    }
+    @Override
+    public String toString() {
+        return "PluginEntry{" + name + " " + version + " by " + author + " (" + className + ")}";
+    }
+}
@@ -0,0 +1,131 @@
+package samophis.kunou.core.plugins;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import samophis.kunou.core.modules.Module;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the persistent plugin index: for every jar, its size, last-modified time, CRC32 checksum and the {@link PluginEntry entries} of its modules.
+ * <br><p>The index is a small binary file written to a temporary file first and then moved over the old one, so a crash mid-write never leaves a half-written index behind.
+ * An index that can't be read (missing, corrupt or from another format version) is simply treated as empty, and every jar is scanned again.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class PluginIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PluginIndex.class);
+    private static final int MAGIC = 0x4B554E49;
+    private static final int FORMAT_VERSION = 1;
+    private PluginIndex() {}
+    @Nonnull
+    static Map<String, JarRecord> read(@Nonnull Path file) {
+        Map<String, JarRecord> records = new Object2ObjectOpenHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOGGER.warn("Ignoring plugin index {}: unknown format!", file);
+                return records;
+            }
+            int jars = in.readInt();
+            for (int i = 0; i < jars; i++) {
+                String fileName = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                long checksum = in.readLong();
+                int count = in.readInt();
+                List<PluginEntry> entries = new ObjectArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    String className = in.readUTF();
+                    String name = in.readUTF();
+                    String version = in.readUTF();
+                    String author = in.readUTF();
+                    String url = in.readUTF();
+                    int dependencyCount = in.readInt();
+                    List<String> dependencies = new ObjectArrayList<>(dependencyCount);
+                    for (int k = 0; k < dependencyCount; k++)
+                        dependencies.add(in.readUTF());
+                    entries.add(new PluginEntry(className, name, version, author, url, dependencies));
+                }
+                records.put(fileName, new JarRecord(fileName, size, lastModified, checksum, entries, Collections.emptyMap()));
+            }
+        } catch (NoSuchFileException exc) {
+            return records;
+        } catch (IOException | RuntimeException exc) {
+            LOGGER.warn("Ignoring unreadable plugin index {}: ", file, exc);
+            records.clear();
+        }
+        return records;
+    }
+    static void write(@Nonnull Path file, @Nonnull Collection<JarRecord> records) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(records.size());
+            for (JarRecord record : records) {
+                out.writeUTF(record.fileName);
+                out.writeLong(record.size);
+                out.writeLong(record.lastModified);
+                out.writeLong(record.checksum);
+                out.writeInt(record.entries.size());
+                for (PluginEntry entry : record.entries) {
+                    out.writeUTF(entry.getClassName());
+                    out.writeUTF(entry.getName());
+                    out.writeUTF(entry.getVersion());
+                    out.writeUTF(entry.getAuthor());
+                    out.writeUTF(entry.getUrl() == null ? "" : entry.getUrl());
+                    out.writeInt(entry.getDependencies().size());
+                    for (String dependency : entry.getDependencies())
+                        out.writeUTF(dependency);
+                }
+            }
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException exc) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    static final class JarRecord {
+        final String fileName;
+        final long size;
+        final long lastModified;
+        final long checksum;
+        final List<PluginEntry> entries;
+        /* -- modules that had to be constructed while scanning, by class name; never stored in the index -- */
+        final Map<String, Module> instances;
+        JarRecord(@Nonnull String fileName, long size, long lastModified, long checksum, @Nonnull List<PluginEntry> entries, @Nonnull Map<String, Module> instances) {
+            this.fileName = fileName;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.entries = entries;
+            this.instances = instances;
+        }
+        boolean matches(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+        @Nonnull
+        JarRecord touched(long size, long lastModified) {
+            return new JarRecord(fileName, size, lastModified, checksum, entries, instances);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package samophis.kunou.core.plugins;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ModuleLoader;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+
+/**
+ * One plugin jar and the class loader its modules are loaded by.
+ * <br><p>Every jar gets its own {@link URLClassLoader URLClassLoader}, created on first use, so jars that are only ever read from the index
+ * cost nothing until one of their modules is actually started. Plugins see KunouCore and their own classes, and talk to each other through messages.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class PluginJar {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PluginJar.class);
+    private static final String SERVICE_FILE = "META-INF/services/" + Module.class.getName();
+    private final Path path;
+    private volatile URLClassLoader classLoader;
+    PluginJar(@Nonnull Path path) {
+        this.path = Objects.requireNonNull(path);
+    }
+    @Nonnull
+    Path getPath() {
+        return path;
+    }
+    @Nonnull
+    ClassLoader getClassLoader() {
+        URLClassLoader current = classLoader;
+        if (current != null)
+            return current;
+        synchronized (this) {
+            if (classLoader == null) {
+                try {
+                    classLoader = new URLClassLoader(new URL[] {path.toUri().toURL()}, PluginJar.class.getClassLoader());
+                } catch (MalformedURLException exc) {
+                    throw new ModuleException(exc);
+                }
+            }
+            return classLoader;
+        }
+    }
+    /* -- descriptor-annotated classes are loaded but never initialized; the others have to be constructed to ask who they are, and are handed back so that only happens once -- */
+    @Nonnull
+    PluginIndex.JarRecord scan(@Nonnull ModuleLoader loader, long size, long lastModified, long checksum) throws IOException {
+        List<PluginEntry> entries = new ObjectArrayList<>();
+        Map<String, Module> instances = new Object2ObjectOpenHashMap<>();
+        for (String className : readServiceFile()) {
+            Class<?> type;
+            try {
+                type = Class.forName(className, false, getClassLoader());
+            } catch (ClassNotFoundException | LinkageError exc) {
+                LOGGER.warn("Skipping {} in {}: it could not be loaded!", className, path, exc);
+                continue;
+            }
+            if (!Module.class.isAssignableFrom(type)) {
+                LOGGER.warn("Skipping {} in {}: it does not implement Module!", className, path);
+                continue;
+            }
+            ModuleDescriptor descriptor = type.getAnnotation(ModuleDescriptor.class);
+            if (descriptor != null) {
+                entries.add(new PluginEntry(className, descriptor.name(), descriptor.version(), descriptor.author(), descriptor.url(), Arrays.asList(descriptor.dependencies())));
+                continue;
+            }
+            Module module = instantiate(type.asSubclass(Module.class), loader);
+            entries.add(new PluginEntry(className, module.getName(), module.getVersion(), module.getAuthor(), module.getUrl(), new ObjectArrayList<>(module.getDependencies())));
+            instances.put(className, module);
+        }
+        return new PluginIndex.JarRecord(path.getFileName().toString(), size, lastModified, checksum, entries, instances);
+    }
+    @Nonnull
+    private List<String> readServiceFile() throws IOException {
+        List<String> classNames = new ObjectArrayList<>();
+        try (JarFile jar = new JarFile(path.toFile())) {
+            JarEntry entry = jar.getJarEntry(SERVICE_FILE);
+            if (entry == null)
+                return classNames;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(jar.getInputStream(entry), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int comment = line.indexOf('#');
+                    String className = (comment < 0 ? line : line.substring(0, comment)).trim();
+                    if (!className.isEmpty())
+                        classNames.add(className);
+                }
+            }
+        }
+        return classNames;
+    }
+    static long checksum(@Nonnull Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[65536];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                crc.update(buffer, 0, read);
+        }
+        return crc.getValue();
+    }
+    @Nonnull
+    static Module instantiate(@Nonnull Class<? extends Module> type, @Nonnull ModuleLoader loader) {
+        try {
+            /* -- modules built on AbstractModuleBase take their loader; anything else needs a public no-argument constructor -- */
+            try {
+                return type.getConstructor(ModuleLoader.class).newInstance(loader);
+            } catch (NoSuchMethodException exc) {
+                return type.getConstructor().newInstance();
+            }
+        } catch (InvocationTargetException exc) {
+            throw new ModuleException(exc.getCause());
+        } catch (ReflectiveOperationException exc) {
+            throw new ModuleException(exc);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Contains the discovery of modules shipped in plugin jars, the persistent index that keeps later boots from scanning them again, and the lazy stand-ins they are registered as.
+ */
+
+package samophis.kunou.core.plugins;
\ No newline at end of file
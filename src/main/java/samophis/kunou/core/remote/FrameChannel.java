@@ -0,0 +1,190 @@
+package samophis.kunou.core.remote;
+
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.util.MpscQueue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One end of a connection carrying {@link Frames frames}, shared by both sides of a remote module.
+ * <br><p>Any thread may send frames at any time without waiting for an answer; they're queued and picked up by a writer thread of the connection, which gathers everything
+ * queued into as few writes as possible (up to {@value #BATCH_SIZE} bytes each), so a burst of small messages costs a handful of system calls instead of one each.
+ * Senders are only held back once {@value #MAX_PENDING_BYTES} bytes are waiting for the writer. A reader thread hands every incoming frame to the {@link Handler Handler},
+ * in order.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class FrameChannel implements Closeable {
+    private static final int BATCH_SIZE = 64 * 1024;
+    private static final long MAX_PENDING_BYTES = 16L * 1024 * 1024;
+    private static final long BACKPRESSURE_PARK_NANOS = 50_000;
+    private final Socket socket;
+    private final Handler handler;
+    private final MpscQueue<byte[]> frames;
+    private final AtomicLong pending;
+    private final AtomicBoolean closed;
+    private final Thread reader;
+    private final Thread writer;
+    private volatile boolean parked;
+    /* -- set by a graceful close, which still lets the writer flush; closed only flips once the socket is gone -- */
+    private volatile boolean closing;
+    FrameChannel(@Nonnull Socket socket, @Nonnull String name, @Nonnull Handler handler) throws IOException {
+        this.socket = Objects.requireNonNull(socket);
+        this.handler = Objects.requireNonNull(handler);
+        /* -- frames are batched here already, so Nagle's algorithm would only add latency -- */
+        socket.setTcpNoDelay(true);
+        this.frames = new MpscQueue<>();
+        this.pending = new AtomicLong();
+        this.closed = new AtomicBoolean();
+        this.reader = newThread(this::read, name + "-Reader");
+        this.writer = newThread(this::write, name + "-Writer");
+    }
+    void start() {
+        writer.start();
+        reader.start();
+    }
+    boolean isOpen() {
+        return !closing && !closed.get();
+    }
+    void send(@Nonnull byte[] frame) {
+        if (!frames.offer(frame))
+            throw new ModuleException("Remote connection is closed!");
+        long queued = pending.addAndGet(frame.length);
+        if (parked)
+            LockSupport.unpark(writer);
+        /* -- the reader never waits: it may be the one whose frames would free up the peer -- */
+        if (queued <= MAX_PENDING_BYTES || Thread.currentThread() == reader)
+            return;
+        while (pending.get() > MAX_PENDING_BYTES && !closed.get())
+            LockSupport.parkNanos(this, BACKPRESSURE_PARK_NANOS);
+    }
+
+    /**
+     * Closes this connection gracefully: frames sent so far are still written, then the peer sees the end of the stream and closes its side, which closes this one.
+     */
+    @Override
+    public void close() {
+        closing = true;
+        frames.close();
+        LockSupport.unpark(writer);
+    }
+    private void terminate(@Nullable Throwable cause) {
+        if (!closed.compareAndSet(false, true))
+            return;
+        frames.close();
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            /* -- nothing left to do with a socket that can't even be closed -- */
+        }
+        LockSupport.unpark(writer);
+        handler.onClose(cause);
+    }
+    private void read() {
+        Throwable cause = null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BATCH_SIZE));
+            for (;;) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException exc) {
+                    break;
+                }
+                if (length <= 0 || length > Frames.MAX_LENGTH)
+                    throw new IOException("Malformed frame of " + length + " bytes!");
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                ByteBuffer buffer = ByteBuffer.wrap(frame);
+                handler.onFrame(buffer.get(), buffer);
+            }
+        } catch (IOException | RuntimeException exc) {
+            /* -- a socket closed by terminate() is no failure -- */
+            if (!closed.get())
+                cause = exc;
+        }
+        terminate(cause);
+    }
+    private void write() {
+        byte[] batch = new byte[BATCH_SIZE];
+        int size = 0;
+        try {
+            OutputStream out = socket.getOutputStream();
+            while (!closed.get()) {
+                byte[] frame = frames.poll();
+                if (frame == null) {
+                    if (size > 0) {
+                        out.write(batch, 0, size);
+                        pending.addAndGet(-size);
+                        size = 0;
+                    } else if (frames.isClosed()) {
+                        if (frames.isEmpty()) {
+                            socket.shutdownOutput();
+                            return;
+                        }
+                    } else {
+                        /* -- senders check the flag after queueing, so either the queue isn't empty anymore or they unpark this thread -- */
+                        parked = true;
+                        if (frames.isEmpty() && !frames.isClosed())
+                            LockSupport.park(this);
+                        parked = false;
+                    }
+                    continue;
+                }
+                if (size + frame.length > BATCH_SIZE) {
+                    out.write(batch, 0, size);
+                    pending.addAndGet(-size);
+                    size = 0;
+                }
+                if (frame.length > BATCH_SIZE) {
+                    out.write(frame);
+                    pending.addAndGet(-frame.length);
+                } else {
+                    System.arraycopy(frame, 0, batch, size, frame.length);
+                    size += frame.length;
+                }
+            }
+        } catch (IOException exc) {
+            terminate(closed.get() ? null : exc);
+        }
+    }
+    @Nonnull
+    private static Thread newThread(@Nonnull Runnable runnable, @Nonnull String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Receives what arrives on a {@link FrameChannel FrameChannel}, always on its reader thread.
+     */
+    interface Handler {
+        /**
+         * Handles an incoming frame. Throwing anything closes the connection.
+         * @param type The type of the frame.
+         * @param frame The <b>not-null</b> heap buffer holding the rest of the frame, positioned right after its type.
+         */
+        void onFrame(byte type, @Nonnull ByteBuffer frame);
+
+        /**
+         * Called once, after the connection was closed for good.
+         * @param cause The <b>possibly-null</b> error that closed it; null if it was closed by either side.
+         */
+        void onClose(@Nullable Throwable cause);
+    }
+}
@@ -0,0 +1,113 @@
+package samophis.kunou.core.remote;
+
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.util.MessageCodec;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * Builds the frames a {@link RemoteLink RemoteLink} and a {@link RemoteModuleHost RemoteModuleHost} exchange.
+ * <br><p>A frame is its length (which doesn't count itself), a type tag, and fields depending on the type. Calls that expect an answer carry an id the answer repeats;
+ * messages don't, so the common case costs nine bytes on top of its {@link MessageCodec MessageCodec} record. Modules are referred to by their position in the
+ * {@link #HELLO HELLO} frame a host answers the link's {@link #AUTH AUTH} frame with.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+final class Frames {
+    static final int VERSION = 1;
+    /* -- the largest frame either side accepts, so a corrupt length can't make the reader allocate gigabytes; larger ones are refused before they're sent -- */
+    static final int MAX_LENGTH = 64 * 1024 * 1024;
+    /* -- link to host, always first and answered with HELLO: the host's token as a record -- */
+    static final byte AUTH = 9;
+    /* -- host to link: int version, int count, then one record per module: name, version, author, url and dependencies -- */
+    static final byte HELLO = 1;
+    /* -- link to host: long call, int module, then the arguments as a record unless they're null -- */
+    static final byte START = 2;
+    /* -- link to host: int module, record -- */
+    static final byte SEND = 3;
+    /* -- link to host: long call, int module, record -- */
+    static final byte ASK = 4;
+    /* -- link to host: long call, int module -- */
+    static final byte DEATH = 5;
+    /* -- host to link: long call -- */
+    static final byte DONE = 6;
+    /* -- host to link: long call, then the error message as a record -- */
+    static final byte FAILED = 7;
+    /* -- host to link: long call, then the reply as a message record -- */
+    static final byte REPLY = 8;
+    private Frames() {}
+    @Nonnull
+    static byte[] hello(@Nonnull String[][] modules) {
+        byte[][] records = new byte[modules.length][];
+        int size = 9;
+        for (int i = 0; i < modules.length; i++) {
+            records[i] = encode(modules[i]);
+            size += records[i].length;
+        }
+        ByteBuffer frame = allocate(HELLO, size).putInt(VERSION).putInt(modules.length);
+        for (byte[] record : records)
+            frame.put(record);
+        return frame.array();
+    }
+    @Nonnull
+    static byte[] auth(@Nonnull String token) {
+        byte[] record = encode(new String[] {token});
+        return allocate(AUTH, 1 + record.length).put(record).array();
+    }
+    @Nonnull
+    static byte[] start(long call, int module, @Nullable String[] args) {
+        byte[] record = args == null ? null : encode(args);
+        ByteBuffer frame = allocate(START, 13 + (record == null ? 0 : record.length)).putLong(call).putInt(module);
+        if (record != null)
+            frame.put(record);
+        return frame.array();
+    }
+    @Nonnull
+    static byte[] send(int module, @Nonnull byte[] record) {
+        return allocate(SEND, 5 + record.length).putInt(module).put(record).array();
+    }
+    @Nonnull
+    static byte[] ask(long call, int module, @Nonnull byte[] record) {
+        return allocate(ASK, 13 + record.length).putLong(call).putInt(module).put(record).array();
+    }
+    @Nonnull
+    static byte[] death(long call, int module) {
+        return allocate(DEATH, 13).putLong(call).putInt(module).array();
+    }
+    @Nonnull
+    static byte[] done(long call) {
+        return allocate(DONE, 9).putLong(call).array();
+    }
+    @Nonnull
+    static byte[] failed(long call, @Nullable String message) {
+        byte[] record = encode(new String[] {message});
+        return allocate(FAILED, 9 + record.length).putLong(call).put(record).array();
+    }
+    @Nonnull
+    static byte[] reply(long call, @Nonnull byte[] record) {
+        return allocate(REPLY, 9 + record.length).putLong(call).put(record).array();
+    }
+    @Nonnull
+    static String[] getStrings(@Nonnull ByteBuffer frame) {
+        Object payload = MessageCodec.decode(frame);
+        if (!(payload instanceof String[]))
+            throw new ModuleException("Malformed frame: expected String arguments, got " + payload.getClass().getName());
+        return (String[]) payload;
+    }
+    @Nonnull
+    private static ByteBuffer allocate(byte type, int length) {
+        /* -- the peer would drop the whole connection over it, so the sender gets the error instead; negative lengths overflowed -- */
+        if (length < 0 || length > MAX_LENGTH)
+            throw new ModuleException(String.format("Message is too large to cross a remote link: frames are limited to %d bytes!", MAX_LENGTH));
+        return ByteBuffer.allocate(4 + length).putInt(length).put(type);
+    }
+    @Nonnull
+    private static byte[] encode(@Nonnull String[] args) {
+        /* -- String arguments can always be encoded, so this is never null -- */
+        return MessageCodec.encode(args);
+    }
+}
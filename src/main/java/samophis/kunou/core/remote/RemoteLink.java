@@ -0,0 +1,428 @@
+package samophis.kunou.core.remote;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.modules.Message;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.util.HashedWheelTimer;
+import samophis.kunou.core.util.MessageCodec;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * A connection to a {@link RemoteModuleHost RemoteModuleHost} -- usually a child JVM started by {@link #launch(ModuleLoader, String...)} -- and the
+ * {@link RemoteModule RemoteModules} standing in for the modules it hosts.
+ * <br><p>Hosting a module in another process isolates it: a module that crashes its JVM, leaks memory or needs other JVM options can't take the rest of the application with it.
+ * Once opened, a link lists the modules of its host in {@link #getModules()}; registering them with a loader is all it takes to use them like any local module:
+ * <pre>{@code
+ * RemoteLink link = RemoteLink.launch(loader, "com.example.TranscoderModule");
+ * for (RemoteModule module : link.getModules())
+ *     loader.addModule(module);
+ * loader.startAll();
+ * }</pre>
+ * The link is a single loopback TCP connection speaking a compact, length-prefixed binary protocol. Messages are pipelined without waiting for each other, and whatever
+ * is sent in a burst is written in batches, so a stream of small messages costs far fewer system calls than messages. Start-ups, deaths and replies are matched to their
+ * calls by id, so any amount of them may be in flight at once.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class RemoteLink implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteLink.class);
+    private static final AtomicInteger COUNTER = new AtomicInteger(0);
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer("RemoteLink-Timer");
+    /** The longest time a link waits for its host to answer a call, in seconds: a start-up, a death or the hello opening the link. */
+    public static final long CALL_TIMEOUT_SECONDS = 30;
+    /** The longest time {@link #close()} waits for a launched host to exit before destroying it, in seconds. */
+    public static final long EXIT_TIMEOUT_SECONDS = 10;
+    private final ModuleLoader loader;
+    private final InetSocketAddress address;
+    private final Process process;
+    private final AtomicLong calls;
+    private final Long2ObjectOpenHashMap<CompletableFuture<Object>> pending;
+    private final CompletableFuture<List<RemoteModule>> hello;
+    private final FrameChannel channel;
+    private RemoteLink(@Nonnull ModuleLoader loader, @Nonnull InetSocketAddress address, @Nullable Process process) throws IOException {
+        this.loader = loader;
+        this.address = address;
+        this.process = process;
+        this.calls = new AtomicLong(0);
+        this.pending = new Long2ObjectOpenHashMap<>();
+        this.hello = new CompletableFuture<>();
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, (int) TimeUnit.SECONDS.toMillis(CALL_TIMEOUT_SECONDS));
+            this.channel = new FrameChannel(socket, "RemoteLink-" + COUNTER.getAndIncrement(), new Handler());
+        } catch (IOException exc) {
+            socket.close();
+            throw exc;
+        }
+    }
+
+    /**
+     * Opens a link to a {@link RemoteModuleHost RemoteModuleHost} that's already listening, waiting until it has listed its modules.
+     * @param loader The <b>not-null</b> {@link ModuleLoader ModuleLoader} the {@link RemoteModule RemoteModules} of the link belong to.
+     * @param address The <b>not-null</b> address the host listens on.
+     * @param token The <b>not-null</b> {@link RemoteModuleHost#getToken() token} of the host.
+     * @return A brand new, connected RemoteLink.
+     * @throws NullPointerException If {@code loader}, {@code address} or {@code token} are null.
+     * @throws ModuleException If the host can't be reached, refuses the token, doesn't answer within {@value #CALL_TIMEOUT_SECONDS} seconds or speaks another version of the protocol.
+     */
+    @Nonnull
+    public static RemoteLink connect(@Nonnull ModuleLoader loader, @Nonnull InetSocketAddress address, @Nonnull String token) {
+        return open(Objects.requireNonNull(loader), Objects.requireNonNull(address), Objects.requireNonNull(token), null);
+    }
+
+    /**
+     * Shorthand for {@link #launch(ModuleLoader, List, String...)} with no JVM options.
+     * @param loader The <b>not-null</b> {@link ModuleLoader ModuleLoader} the {@link RemoteModule RemoteModules} of the link belong to.
+     * @param moduleClasses The <b>not-null</b> names of the module classes to host, which must be on the class path of this JVM.
+     * @return A brand new, connected RemoteLink.
+     * @throws NullPointerException If {@code loader} or {@code moduleClasses} are null.
+     * @throws ModuleException If the child JVM can't be started, can't construct a module or doesn't come up in time.
+     * @see #launch(ModuleLoader, List, String...)
+     */
+    @Nonnull
+    public static RemoteLink launch(@Nonnull ModuleLoader loader, @Nonnull String... moduleClasses) {
+        return launch(loader, Collections.emptyList(), moduleClasses);
+    }
+
+    /**
+     * Starts a child JVM hosting new instances of some module classes in a loader of its own, and opens a link to it.
+     * <br><p>The child runs the same {@code java} as this JVM with the same class path, plus the given options (for example {@code -Xmx256m}). It only listens on the loopback
+     * interface, writes its error stream to this JVM's (its standard output is logged by this class), and shuts its loader down and exits as soon as the link is closed
+     * or this JVM dies.
+     * Module classes are constructed just like plugin modules: with their loader if they have such a constructor (as {@link samophis.kunou.core.modules.AbstractModuleBase
+     * AbstractModuleBase} modules do), or with a public no-argument constructor otherwise.</p>
+     * @param loader The <b>not-null</b> {@link ModuleLoader ModuleLoader} the {@link RemoteModule RemoteModules} of the link belong to.
+     * @param jvmOptions The <b>not-null</b>, possibly-empty options to start the child JVM with.
+     * @param moduleClasses The <b>not-null</b> names of the module classes to host, which must be on the class path of this JVM.
+     * @return A brand new, connected RemoteLink.
+     * @throws NullPointerException If {@code loader}, {@code jvmOptions} or {@code moduleClasses} are null.
+     * @throws ModuleException If the child JVM can't be started, can't construct a module or doesn't come up in time.
+     */
+    @Nonnull
+    public static RemoteLink launch(@Nonnull ModuleLoader loader, @Nonnull List<String> jvmOptions, @Nonnull String... moduleClasses) {
+        Objects.requireNonNull(loader);
+        Objects.requireNonNull(jvmOptions);
+        Objects.requireNonNull(moduleClasses);
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(RemoteModuleHost.class.getName());
+        command.add("0");
+        Collections.addAll(command, moduleClasses);
+        String token = RemoteModuleHost.newToken();
+        Process process;
+        try {
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        } catch (IOException exc) {
+            throw new ModuleException(exc);
+        }
+        try {
+            /* -- handed over on standard input rather than the command line, which any local process can read -- */
+            try (OutputStream in = process.getOutputStream()) {
+                in.write((token + "\n").getBytes(StandardCharsets.UTF_8));
+            } catch (IOException exc) {
+                throw new ModuleException(exc);
+            }
+            int port = awaitPort(process);
+            return open(loader, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), token, process);
+        } catch (RuntimeException exc) {
+            process.destroyForcibly();
+            throw exc;
+        }
+    }
+
+    /**
+     * Returns the {@link ModuleLoader ModuleLoader} the {@link RemoteModule RemoteModules} of this link belong to.
+     * @return The <b>not-null</b> loader of this link.
+     */
+    @Nonnull
+    public ModuleLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * Returns the stand-ins for every module of the host, in the order the host listed them.
+     * @return The <b>not-null</b>, unmodifiable list of {@link RemoteModule RemoteModules}.
+     */
+    @Nonnull
+    public List<RemoteModule> getModules() {
+        return hello.join();
+    }
+
+    /**
+     * Returns the stand-in for a module of the host by name.
+     * @param name The <b>not-null</b> name of the module.
+     * @return The <b>possibly-null</b> {@link RemoteModule RemoteModule}; null if the host has no module with that name.
+     * @throws NullPointerException If {@code name} is null.
+     */
+    @Nullable
+    public RemoteModule getModule(@Nonnull String name) {
+        Objects.requireNonNull(name);
+        for (RemoteModule module : getModules()) {
+            if (module.getName().equals(name))
+                return module;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the child JVM hosting the modules, if this link {@link #launch(ModuleLoader, List, String...) launched} it.
+     * @return The <b>possibly-null</b> child process.
+     */
+    @Nullable
+    public Process getProcess() {
+        return process;
+    }
+
+    /**
+     * Checks whether or not this link is still connected to its host.
+     * <br><p>A link stops being connected as soon as it's {@link #close() closed}, even while what it already sent is still being written.</p>
+     * @return Whether or not this link is connected.
+     */
+    public boolean isConnected() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Closes this link. Everything sent so far is still delivered, then the host stops its modules; calls still waiting for an answer fail.
+     * <br><p>A launched child JVM is given {@value #EXIT_TIMEOUT_SECONDS} seconds to shut its loader down and exit, and destroyed if it doesn't.
+     * The {@link RemoteModule RemoteModules} of this link should be killed first, so the loader doesn't keep them around as ready.</p>
+     */
+    @Override
+    public void close() {
+        channel.close();
+        if (process == null)
+            return;
+        try {
+            if (!process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Remote module host at {} did not exit in time and is destroyed!", address);
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException exc) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+    @Override
+    public String toString() {
+        return "RemoteLink{" + address + (channel.isOpen() ? "" : ", disconnected") + "}";
+    }
+    void send(@Nonnull byte[] frame) {
+        channel.send(frame);
+    }
+    @Nonnull
+    CompletableFuture<Object> callAsync(@Nonnull LongFunction<byte[]> frame) {
+        return callAsync(calls.incrementAndGet(), frame);
+    }
+    /* -- fails on the timer thread once the host takes too long, so nobody has to block to enforce the timeout -- */
+    @Nonnull
+    CompletableFuture<Object> callAsync(@Nonnull LongFunction<byte[]> frame, @Nonnull Module module, @Nonnull String event) {
+        long call = calls.incrementAndGet();
+        CompletableFuture<Object> answer = callAsync(call, frame);
+        if (answer.isDone())
+            return answer;
+        HashedWheelTimer.Timeout timeout = TIMER.newTimeout(() -> {
+            /* -- whoever removes the call completes it, so a late answer is dropped like that of any call that's gone -- */
+            if (remove(call) != null)
+                answer.completeExceptionally(new ModuleException(String.format("%s did not finish its %s within %d seconds!", module.getName(), event, CALL_TIMEOUT_SECONDS)));
+        }, CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        answer.whenComplete((ignored, throwable) -> timeout.cancel());
+        return answer;
+    }
+    static void await(@Nonnull CompletionStage<?> stage) {
+        try {
+            stage.toCompletableFuture().get();
+        } catch (ExecutionException exc) {
+            Throwable cause = exc.getCause();
+            throw cause instanceof ModuleException ? (ModuleException) cause : new ModuleException(cause);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new ModuleException(exc);
+        }
+    }
+    @Nonnull
+    private CompletableFuture<Object> callAsync(long call, @Nonnull LongFunction<byte[]> frame) {
+        CompletableFuture<Object> answer = new CompletableFuture<>();
+        synchronized (pending) {
+            pending.put(call, answer);
+        }
+        /* -- checked after registering, so a connection lost in between fails the call through onClose or here, never neither -- */
+        try {
+            if (!channel.isOpen())
+                throw new ModuleException("Remote connection is closed!");
+            channel.send(frame.apply(call));
+        } catch (ModuleException exc) {
+            remove(call);
+            answer.completeExceptionally(exc);
+        }
+        return answer;
+    }
+    @Nonnull
+    private static RemoteLink open(@Nonnull ModuleLoader loader, @Nonnull InetSocketAddress address, @Nonnull String token, @Nullable Process process) {
+        RemoteLink link;
+        try {
+            link = new RemoteLink(loader, address, process);
+        } catch (IOException exc) {
+            throw new ModuleException(exc);
+        }
+        link.channel.start();
+        try {
+            link.channel.send(Frames.auth(token));
+        } catch (ModuleException ignored) {
+            /* -- the host already closed the link, which the hello reports -- */
+        }
+        try {
+            link.hello.get(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException exc) {
+            link.channel.close();
+            Throwable cause = exc.getCause();
+            throw cause instanceof ModuleException ? (ModuleException) cause : new ModuleException(cause);
+        } catch (TimeoutException exc) {
+            link.channel.close();
+            throw new ModuleException("Remote module host at " + address + " did not list its modules in time!");
+        } catch (InterruptedException exc) {
+            link.channel.close();
+            Thread.currentThread().interrupt();
+            throw new ModuleException(exc);
+        }
+        LOGGER.info("Linked to {} remote modules at {}.", link.getModules().size(), address);
+        return link;
+    }
+    private static int awaitPort(@Nonnull Process process) {
+        CompletableFuture<Integer> port = new CompletableFuture<>();
+        /* -- the host announces its port on its first line of output; everything after that is logged, tagged with the port once it's known -- */
+        Thread pump = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!port.isDone() && line.startsWith(RemoteModuleHost.PORT_ANNOUNCEMENT))
+                        port.complete(Integer.parseInt(line.substring(RemoteModuleHost.PORT_ANNOUNCEMENT.length()).trim()));
+                    else
+                        LOGGER.info("[remote module host{}] {}", port.isDone() ? " on port " + port.getNow(-1) : "", line);
+                }
+            } catch (IOException | NumberFormatException exc) {
+                port.completeExceptionally(exc);
+            }
+            port.completeExceptionally(new ModuleException("Remote module host exited with code " + exitCode(process) + " before listening!"));
+        }, "RemoteModuleHost-Output");
+        pump.setDaemon(true);
+        pump.start();
+        try {
+            return port.get(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException exc) {
+            Throwable cause = exc.getCause();
+            throw cause instanceof ModuleException ? (ModuleException) cause : new ModuleException(cause);
+        } catch (TimeoutException exc) {
+            throw new ModuleException("Remote module host did not start listening within " + CALL_TIMEOUT_SECONDS + " seconds!");
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new ModuleException(exc);
+        }
+    }
+    private static int exitCode(@Nonnull Process process) {
+        try {
+            return process.waitFor();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+    @Nullable
+    private CompletableFuture<Object> remove(long call) {
+        synchronized (pending) {
+            return pending.remove(call);
+        }
+    }
+    private final class Handler implements FrameChannel.Handler {
+        @Override
+        public void onFrame(byte type, @Nonnull ByteBuffer frame) {
+            if (type == Frames.HELLO) {
+                int version = frame.getInt();
+                if (version != Frames.VERSION)
+                    throw new ModuleException("Remote module host speaks version " + version + " of the protocol, not " + Frames.VERSION + "!");
+                int count = frame.getInt();
+                List<RemoteModule> modules = new ObjectArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    modules.add(new RemoteModule(RemoteLink.this, i, Frames.getStrings(frame)));
+                hello.complete(Collections.unmodifiableList(modules));
+                return;
+            }
+            CompletableFuture<Object> answer = remove(frame.getLong());
+            /* -- the call already timed out -- */
+            if (answer == null)
+                return;
+            switch (type) {
+                case Frames.DONE:
+                    answer.complete(null);
+                    break;
+                case Frames.FAILED:
+                    answer.completeExceptionally(new ModuleException(Frames.getStrings(frame)[0]));
+                    break;
+                case Frames.REPLY:
+                    Object reply = MessageCodec.decode(frame);
+                    if (reply instanceof Message)
+                        answer.complete(reply);
+                    else
+                        answer.completeExceptionally(new ModuleException("Malformed reply: " + reply));
+                    break;
+                default:
+                    throw new ModuleException("Unknown frame type: " + type);
+            }
+        }
+        @Override
+        public void onClose(@Nullable Throwable cause) {
+            if (cause == null)
+                LOGGER.info("Link to the remote module host at {} was closed.", address);
+            else
+                LOGGER.error("Link to the remote module host at {} was lost!", address, cause);
+            ModuleException exc = new ModuleException("Link to the remote module host at " + address + " was closed before it answered!");
+            List<CompletableFuture<Object>> answers;
+            synchronized (pending) {
+                answers = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            for (CompletableFuture<Object> answer : answers)
+                answer.completeExceptionally(exc);
+            /* -- a host closes any link with the wrong token, and any link at all while it serves another one -- */
+            ModuleException refused = new ModuleException("Remote module host at " + address + " closed the link before listing its modules; was the token wrong, or is another link connected to it?");
+            if (!hello.completeExceptionally(cause == null ? refused : new ModuleException(cause))) {
+                for (RemoteModule module : hello.join())
+                    module.disconnected();
+            }
+        }
+    }
+}
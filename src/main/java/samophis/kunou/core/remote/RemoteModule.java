@@ -0,0 +1,175 @@
+package samophis.kunou.core.remote;
+
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.modules.Message;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.modules.ReplyChannel;
+import samophis.kunou.core.modules.State;
+import samophis.kunou.core.util.MessageCodec;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A stand-in for a {@link Module Module} running in another process, behind a {@link RemoteLink RemoteLink}.
+ * <br><p>Its name, version, author, homepage and dependencies are the ones the remote module reported when the link was opened. Registered with a loader like any other module,
+ * it hands every callback to the remote module over the link:
+ * <ul>
+ *     <li>{@link #onStartAsync(String...)} and {@link #onDeathAsync()} complete once the remote module has finished its own, so the loader sees it {@link State#READY READY}
+ *     (or dead) only once it really is, and a remote start-up failing fails this one as well. The answer completes them on the thread reading the link, so no dispatcher
+ *     thread waits on the other process; a remote module that takes longer than {@value RemoteLink#CALL_TIMEOUT_SECONDS} seconds fails them.</li>
+ *     <li>Messages are sent without waiting for the remote module to handle them. They are pipelined -- any amount may be on their way at once -- and handled in the order
+ *     they were sent. Asks are answered through their {@link ReplyChannel ReplyChannel} once the remote reply arrives.</li>
+ * </ul>
+ * Only payloads {@link MessageCodec MessageCodec} can encode can cross the link: String arguments (single or batched) and {@link Message Messages} carrying a {@code String},
+ * a {@code String[]} or a {@link java.nio.ByteBuffer ByteBuffer} -- replies included. Anything else fails in this process, like any payload a module doesn't accept,
+ * and so does a message (or batch) encoding to more than 64 MiB.
+ * <br><br>Once the link is lost, every call fails and the stand-in reports itself {@link State#DEAD DEAD}; the loader still has to kill it.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class RemoteModule implements Module {
+    private final RemoteLink link;
+    private final int index;
+    private final String name;
+    private final String version;
+    private final String author;
+    private final String url;
+    private final Collection<String> dependencies;
+    private volatile State state;
+    RemoteModule(@Nonnull RemoteLink link, int index, @Nonnull String[] descriptor) {
+        if (descriptor.length < 4)
+            throw new ModuleException("Malformed remote module descriptor: " + Arrays.toString(descriptor));
+        this.link = Objects.requireNonNull(link);
+        this.index = index;
+        this.name = descriptor[0];
+        this.version = descriptor[1];
+        this.author = descriptor[2];
+        this.url = descriptor[3];
+        this.dependencies = Collections.unmodifiableList(Arrays.asList(Arrays.copyOfRange(descriptor, 4, descriptor.length)));
+        this.state = State.DEAD;
+    }
+
+    /**
+     * Returns the link to the process this module runs in.
+     * @return The <b>not-null</b> {@link RemoteLink RemoteLink} of this module.
+     */
+    @Nonnull
+    public RemoteLink getLink() {
+        return link;
+    }
+    @Override
+    public ModuleLoader getLoader() {
+        return link.getLoader();
+    }
+    @Override
+    public String getName() {
+        return name;
+    }
+    @Override
+    public String getVersion() {
+        return version;
+    }
+    @Override
+    public String getAuthor() {
+        return author;
+    }
+    @Override
+    public String getUrl() {
+        return url;
+    }
+    @Nonnull
+    @Override
+    public Collection<String> getDependencies() {
+        return dependencies;
+    }
+    @Override
+    public State getState() {
+        return state;
+    }
+    @Override
+    public void onStart(@Nullable String... args) {
+        RemoteLink.await(onStartAsync(args));
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<?> onStartAsync(@Nullable String... args) {
+        state = State.STARTING;
+        try {
+            return link.callAsync(call -> Frames.start(call, index, args), this, "start").whenComplete((ignored, throwable) -> state = throwable == null ? State.READY : State.DEAD);
+        } catch (RuntimeException exc) {
+            state = State.DEAD;
+            throw exc;
+        }
+    }
+    @Override
+    public void onMessage(@Nonnull String... args) {
+        link.send(Frames.send(index, encode(args)));
+    }
+    @Override
+    public void onTypedMessage(@Nonnull Message<?> message) {
+        byte[] record = encode(message);
+        ReplyChannel channel = message.getReplyChannel();
+        if (channel == null) {
+            link.send(Frames.send(index, record));
+            return;
+        }
+        link.callAsync(call -> Frames.ask(call, index, record)).whenComplete((reply, error) -> {
+            if (error != null)
+                channel.fail(error);
+            else
+                channel.reply(((Message<?>) reply).getPayload());
+        });
+    }
+    @Override
+    public void onMessageBatch(@Nonnull List<String[]> batch) {
+        /* -- the whole batch crosses the link as a single frame and reaches the remote module as a batch too -- */
+        link.send(Frames.send(index, encode(batch)));
+    }
+    @Override
+    public void onDeath() {
+        RemoteLink.await(onDeathAsync());
+    }
+    @Nonnull
+    @Override
+    public CompletionStage<?> onDeathAsync() {
+        state = State.SHUTTING_DOWN;
+        /* -- a module whose process is gone is as dead as it gets -- */
+        if (!link.isConnected()) {
+            state = State.DEAD;
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            return link.callAsync(call -> Frames.death(call, index), this, "death").whenComplete((ignored, throwable) -> state = State.DEAD);
+        } catch (RuntimeException exc) {
+            state = State.DEAD;
+            throw exc;
+        }
+    }
+    @Override
+    public String toString() {
+        return "RemoteModule{" + name + " " + version + " via " + link + "}";
+    }
+    void disconnected() {
+        state = State.DEAD;
+    }
+    @Nonnull
+    private byte[] encode(@Nonnull Object payload) {
+        byte[] record = MessageCodec.encode(payload);
+        if (record == null) {
+            Object content = payload instanceof Message ? ((Message<?>) payload).getPayload() : payload;
+            throw new ModuleException(String.format("%s %s by %s runs in another process and does not accept %s payloads!", name, version, author, content.getClass().getName()));
+        }
+        return record;
+    }
+}
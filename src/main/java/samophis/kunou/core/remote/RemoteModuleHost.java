@@ -0,0 +1,451 @@
+package samophis.kunou.core.remote;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import samophis.kunou.core.exceptions.ModuleException;
+import samophis.kunou.core.modules.Message;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.ModuleLoader;
+import samophis.kunou.core.modules.State;
+import samophis.kunou.core.util.MessageCodec;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Serves the {@link Module Modules} of a {@link ModuleLoader ModuleLoader} to a {@link RemoteLink RemoteLink} in another process.
+ * <br><p>A host listens on the loopback interface only, and serves one link at a time: every module the loader has when the link connects is listed to it, and handed
+ * whatever its {@link RemoteModule RemoteModule} receives. Messages are sent to the modules through the host's loader -- so they get their own mailboxes, executor and
+ * overload policies there -- and failures to deliver them are logged on this side. Once the link is closed or lost, every module listed to it is stopped, all of them in parallel,
+ * and the next link may connect. Modules the loader got after the link connected are left alone.
+ * <br><br>Anything on the local machine can connect to a loopback port, so a link has to prove it may use the modules first: its first frame carries the host's
+ * {@link #getToken() token}, and a link with the wrong one (or none within {@value #AUTH_TIMEOUT_SECONDS} seconds) is dropped before it learns about any module.
+ * Share the token only with the process meant to connect.
+ * <br><br>Most hosts don't need to be created by hand: {@link RemoteLink#launch(ModuleLoader, List, String...)} starts a child JVM running {@link #main(String[])}.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class RemoteModuleHost implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteModuleHost.class);
+    /* -- the first line a launched host prints, so its parent knows where to connect -- */
+    static final String PORT_ANNOUNCEMENT = "Remote module host listening on port ";
+    /** The longest time an ask relayed by a host waits for its module to reply, in seconds. */
+    public static final long ASK_TIMEOUT_SECONDS = 30;
+    /** The longest time a launched host waits for its loader to {@link ModuleLoader#shutdown(Duration) shut down} before exiting, in seconds. */
+    public static final long EXIT_TIMEOUT_SECONDS = 10;
+    /** The longest time a host waits for a link that just connected to send its token, in seconds. */
+    public static final long AUTH_TIMEOUT_SECONDS = 10;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private final ModuleLoader loader;
+    private final byte[] token;
+    private final ServerSocket server;
+    private final boolean once;
+    private final CompletableFuture<Void> finished;
+    private final Thread acceptor;
+    private volatile Connection connection;
+    private RemoteModuleHost(@Nonnull ModuleLoader loader, int port, @Nonnull String token, boolean once) throws IOException {
+        this.loader = loader;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+        this.once = once;
+        this.finished = new CompletableFuture<>();
+        this.acceptor = new Thread(this::accept, "RemoteModuleHost-" + server.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Starts serving the modules of a loader on a port of the loopback interface, to links presenting a random token.
+     * <br><p>Hand {@link #getToken()} to the process meant to {@link RemoteLink#connect(ModuleLoader, InetSocketAddress, String) connect}.</p>
+     * @param loader The <b>not-null</b> {@link ModuleLoader ModuleLoader} whose modules are served.
+     * @param port The port to listen on, or 0 for any free one (see {@link #getPort()}).
+     * @return A brand new RemoteModuleHost, already listening.
+     * @throws NullPointerException If {@code loader} is null.
+     * @throws ModuleException If the port can't be listened on.
+     * @see #serve(ModuleLoader, int, String)
+     */
+    @Nonnull
+    public static RemoteModuleHost serve(@Nonnull ModuleLoader loader, int port) {
+        return serve(loader, port, newToken());
+    }
+
+    /**
+     * Starts serving the modules of a loader on a port of the loopback interface, to links presenting a given token.
+     * @param loader The <b>not-null</b> {@link ModuleLoader ModuleLoader} whose modules are served.
+     * @param port The port to listen on, or 0 for any free one (see {@link #getPort()}).
+     * @param token The <b>not-null and not-empty</b> secret links have to present, which should be hard to guess.
+     * @return A brand new RemoteModuleHost, already listening.
+     * @throws NullPointerException If {@code loader} or {@code token} are null.
+     * @throws IllegalArgumentException If {@code token} is empty.
+     * @throws ModuleException If the port can't be listened on.
+     */
+    @Nonnull
+    public static RemoteModuleHost serve(@Nonnull ModuleLoader loader, int port, @Nonnull String token) {
+        Objects.requireNonNull(loader);
+        if (token.isEmpty()) {
+            LOGGER.warn("Attempt to serve remote modules with an empty token!");
+            throw new IllegalArgumentException("token is empty");
+        }
+        return open(loader, port, token, false);
+    }
+
+    /**
+     * The entry point of a child JVM {@link RemoteLink#launch(ModuleLoader, List, String...) launched} by a {@link RemoteLink RemoteLink}.
+     * <br><p>Reads the token links have to present from the first line of its standard input, which keeps it out of the command line other processes can see.
+     * Then it adds a new instance of every module class to a brand new loader, serves them on the given port, and announces the port it listens on in its first line of output.
+     * Once the first link is closed, the loader is shut down and the JVM exits.</p>
+     * @param args The port to listen on (0 for any free one) followed by the names of the module classes to host.
+     * @throws IOException If the token can't be read.
+     */
+    public static void main(String[] args) throws IOException {
+        String token = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)).readLine();
+        if (args.length == 0 || token == null || token.isEmpty()) {
+            System.err.println("Usage: RemoteModuleHost <port> <module class>... (with the token on the first line of standard input)");
+            System.exit(2);
+        }
+        ModuleLoader loader = ModuleLoader.newInstance();
+        for (int i = 1; i < args.length; i++)
+            loader.addModule(instantiate(args[i], loader));
+        RemoteModuleHost host = open(loader, Integer.parseInt(args[0]), token, true);
+        System.out.println(PORT_ANNOUNCEMENT + host.getPort());
+        System.out.flush();
+        host.finished.join();
+        loader.shutdown(Duration.ofSeconds(EXIT_TIMEOUT_SECONDS)).toCompletableFuture().join();
+        System.exit(0);
+    }
+
+    /**
+     * Returns the {@link ModuleLoader ModuleLoader} whose modules this host serves.
+     * @return The <b>not-null</b> loader of this host.
+     */
+    @Nonnull
+    public ModuleLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * Returns the secret a {@link RemoteLink RemoteLink} has to present to use this host.
+     * @return The <b>not-null</b> token of this host.
+     */
+    @Nonnull
+    public String getToken() {
+        return new String(token, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the port this host listens on.
+     * @return The local port of this host.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Checks whether or not a {@link RemoteLink RemoteLink} is connected to this host right now.
+     * @return Whether or not a link is connected.
+     */
+    public boolean isConnected() {
+        return connection != null;
+    }
+
+    /**
+     * Stops listening and closes the link connected right now, if any, which stops its modules once everything it sent was handled.
+     */
+    @Override
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException exc) {
+            LOGGER.warn("Could not close the remote module host on port {}!", server.getLocalPort(), exc);
+        }
+        Connection current = connection;
+        if (current == null)
+            finished.complete(null);
+        else
+            current.channel.close();
+    }
+    @Override
+    public String toString() {
+        return "RemoteModuleHost{port " + server.getLocalPort() + (connection == null ? "" : ", connected") + "}";
+    }
+    @Nonnull
+    private static RemoteModuleHost open(@Nonnull ModuleLoader loader, int port, @Nonnull String token, boolean once) {
+        try {
+            RemoteModuleHost host = new RemoteModuleHost(loader, port, token, once);
+            LOGGER.info("Serving {} modules to remote links on port {}.", loader.getModulesAsList().size(), host.getPort());
+            return host;
+        } catch (IOException exc) {
+            throw new ModuleException(exc);
+        }
+    }
+    @Nonnull
+    static String newToken() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+    @Nonnull
+    private static Module instantiate(@Nonnull String className, @Nonnull ModuleLoader loader) {
+        try {
+            Class<? extends Module> type = Class.forName(className).asSubclass(Module.class);
+            /* -- the same rule plugin jars use: modules built on AbstractModuleBase take their loader; anything else needs a public no-argument constructor -- */
+            try {
+                return type.getConstructor(ModuleLoader.class).newInstance(loader);
+            } catch (NoSuchMethodException exc) {
+                return type.getConstructor().newInstance();
+            }
+        } catch (InvocationTargetException exc) {
+            throw new ModuleException(exc.getCause());
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError exc) {
+            throw new ModuleException(exc);
+        }
+    }
+    private void accept() {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException exc) {
+                if (!server.isClosed())
+                    LOGGER.error("Remote module host on port {} stopped accepting links!", server.getLocalPort(), exc);
+                return;
+            }
+            try {
+                /* -- a second link would start and stop the same modules behind the first one's back -- */
+                if (connection != null) {
+                    LOGGER.warn("Refused a second remote link from {}!", socket.getRemoteSocketAddress());
+                    socket.close();
+                    continue;
+                }
+                /* -- a link that never sends its token would keep every other one out -- */
+                socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(AUTH_TIMEOUT_SECONDS));
+                Connection current = new Connection(socket);
+                connection = current;
+                current.channel.start();
+            } catch (IOException exc) {
+                LOGGER.error("Could not accept a remote link from {}!", socket.getRemoteSocketAddress(), exc);
+            }
+        }
+    }
+    @Nullable
+    private static String describe(@Nonnull Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause.getMessage() != null ? cause.getMessage() : cause.toString();
+    }
+    private final class Connection implements FrameChannel.Handler {
+        private final Socket socket;
+        private final FrameChannel channel;
+        private final Module[] modules;
+        /* -- the last start-up of every module this link asked for, so stopping them on close can wait for those to finish -- */
+        private final AtomicReferenceArray<CompletionStage<Module>> starts;
+        /* -- only touched by the reader thread, and by onClose after it has stopped reading -- */
+        private boolean authenticated;
+        private Connection(@Nonnull Socket socket) throws IOException {
+            this.socket = socket;
+            /* -- modules added later are only listed to the next link -- */
+            this.modules = loader.getModulesAsList().toArray(new Module[0]);
+            this.starts = new AtomicReferenceArray<>(modules.length);
+            this.channel = new FrameChannel(socket, "RemoteModuleHost-" + server.getLocalPort() + "-" + socket.getPort(), this);
+        }
+        @Nonnull
+        private String[][] describe() {
+            String[][] descriptors = new String[modules.length][];
+            for (int i = 0; i < modules.length; i++) {
+                Module module = modules[i];
+                Collection<String> dependencies = module.getDependencies();
+                String[] descriptor = new String[4 + dependencies.size()];
+                descriptor[0] = module.getName();
+                descriptor[1] = module.getVersion();
+                descriptor[2] = module.getAuthor();
+                descriptor[3] = module.getUrl();
+                int next = 4;
+                for (String dependency : dependencies)
+                    descriptor[next++] = dependency;
+                descriptors[i] = descriptor;
+            }
+            return descriptors;
+        }
+        @Override
+        public void onFrame(byte type, @Nonnull ByteBuffer frame) {
+            if (!authenticated) {
+                authenticate(type, frame);
+                return;
+            }
+            long call = type == Frames.SEND ? 0 : frame.getLong();
+            int index = frame.getInt();
+            if (index < 0 || index >= modules.length)
+                throw new ModuleException("Unknown remote module: " + index);
+            Module module = modules[index];
+            switch (type) {
+                case Frames.START:
+                    String[] args = frame.hasRemaining() ? Frames.getStrings(frame) : null;
+                    answer(call, () -> {
+                        CompletionStage<Module> start = loader.startModuleAsync(module, args);
+                        starts.set(index, start);
+                        return start;
+                    });
+                    break;
+                case Frames.SEND:
+                    Object payload = MessageCodec.decode(frame);
+                    try {
+                        deliver(module, payload);
+                    } catch (RuntimeException exc) {
+                        LOGGER.warn("Could not deliver a remote message to the {}!", module.getName(), exc);
+                    }
+                    break;
+                case Frames.ASK:
+                    Object question = MessageCodec.decode(frame);
+                    if (!(question instanceof Message))
+                        throw new ModuleException("Malformed ask: " + question);
+                    ask(call, module, (Message<?>) question);
+                    break;
+                case Frames.DEATH:
+                    answer(call, () -> loader.killModuleAsync(module));
+                    break;
+                default:
+                    throw new ModuleException("Unknown frame type: " + type);
+            }
+        }
+        @Override
+        public void onClose(@Nullable Throwable cause) {
+            /* -- a link that was refused never saw a module, so there's nothing to stop and the host keeps waiting for the right one -- */
+            if (!authenticated) {
+                LOGGER.warn("Refused a remote link from {} that did not present the right token!", socket.getRemoteSocketAddress());
+                connection = null;
+                if (server.isClosed())
+                    close();
+                return;
+            }
+            if (cause == null)
+                LOGGER.info("Remote link to the host on port {} was closed, stopping its modules.", server.getLocalPort());
+            else
+                LOGGER.error("Remote link to the host on port {} was lost, stopping its modules!", server.getLocalPort(), cause);
+            CompletableFuture<?>[] stops = new CompletableFuture<?>[modules.length];
+            for (int i = 0; i < modules.length; i++)
+                stops[i] = stop(i);
+            CompletableFuture.allOf(stops).whenComplete((ignored, error) -> {
+                if (error != null)
+                    LOGGER.error("Could not stop the modules of a remote link!", error);
+                connection = null;
+                if (once || server.isClosed())
+                    close();
+            });
+        }
+        private void authenticate(byte type, @Nonnull ByteBuffer frame) {
+            if (type != Frames.AUTH || !MessageDigest.isEqual(token, Frames.getStrings(frame)[0].getBytes(StandardCharsets.UTF_8)))
+                throw new ModuleException("Remote link did not present the right token!");
+            try {
+                socket.setSoTimeout(0);
+            } catch (IOException exc) {
+                throw new ModuleException(exc);
+            }
+            authenticated = true;
+            channel.send(Frames.hello(describe()));
+            LOGGER.info("Remote link from {} connected.", socket.getRemoteSocketAddress());
+        }
+        @Nonnull
+        private CompletableFuture<Module> stop(int index) {
+            Module module = modules[index];
+            try {
+                switch (loader.getState(module)) {
+                    case DEAD:
+                        return CompletableFuture.completedFuture(module);
+                    case SHUTTING_DOWN:
+                        return loader.awaitState(module, State.DEAD).toCompletableFuture();
+                    case READY:
+                        return loader.killModuleAsync(module).toCompletableFuture();
+                    default:
+                        /* -- a start-up someone else asked for isn't this link's to undo, and one that fails leaves the module dead, which is all a stop asks for -- */
+                        CompletionStage<Module> start = starts.get(index);
+                        if (start == null)
+                            return CompletableFuture.completedFuture(module);
+                        return start.handle((ready, throwable) -> throwable == null ? loader.killModuleAsync(module) : CompletableFuture.completedFuture(module))
+                                .thenCompose(Function.identity()).toCompletableFuture();
+                }
+            } catch (ModuleException exc) {
+                /* -- the module was removed from the loader since the link connected -- */
+                return CompletableFuture.completedFuture(module);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        private void deliver(@Nonnull Module module, @Nonnull Object payload) {
+            if (payload instanceof String[])
+                loader.sendMessage(module, (String[]) payload);
+            else if (payload instanceof Message)
+                loader.sendTypedMessage(module, (Message<?>) payload);
+            else if (payload instanceof List)
+                loader.sendMessages(module, (List<String[]>) payload);
+            else
+                throw new ModuleException("Malformed remote message: " + payload);
+        }
+        private void ask(long call, @Nonnull Module module, @Nonnull Message<?> question) {
+            CompletionStage<Object> reply;
+            try {
+                reply = loader.ask(module, question, Object.class, ASK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (RuntimeException exc) {
+                channel.send(Frames.failed(call, RemoteModuleHost.describe(exc)));
+                return;
+            }
+            reply.whenComplete((value, error) -> {
+                if (error != null) {
+                    channel.send(Frames.failed(call, RemoteModuleHost.describe(error)));
+                    return;
+                }
+                byte[] record;
+                try {
+                    record = MessageCodec.encode(value instanceof ByteBuffer ? Message.ofBuffer((ByteBuffer) value) : Message.of(value));
+                } catch (IllegalArgumentException exc) {
+                    record = null;
+                }
+                if (record == null) {
+                    channel.send(Frames.failed(call, String.format("%s replied with a %s, which can't be sent to another process!", module.getName(), value.getClass().getName())));
+                    return;
+                }
+                byte[] frame;
+                try {
+                    frame = Frames.reply(call, record);
+                } catch (ModuleException exc) {
+                    frame = Frames.failed(call, RemoteModuleHost.describe(exc));
+                }
+                channel.send(frame);
+            });
+        }
+        private void answer(long call, @Nonnull Supplier<CompletionStage<Module>> event) {
+            CompletionStage<Module> stage;
+            try {
+                stage = event.get();
+            } catch (RuntimeException exc) {
+                channel.send(Frames.failed(call, RemoteModuleHost.describe(exc)));
+                return;
+            }
+            stage.whenComplete((ignored, error) -> channel.send(error == null ? Frames.done(call) : Frames.failed(call, RemoteModuleHost.describe(error))));
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Contains the hosting of modules in other processes: the stand-ins registered in place of remote modules, the links they talk over, and the hosts serving them.
+ */
+
+package samophis.kunou.core.remote;
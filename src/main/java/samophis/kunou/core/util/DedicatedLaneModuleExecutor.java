@@ -0,0 +1,69 @@
+package samophis.kunou.core.util;
+
+import samophis.kunou.core.modules.MailboxConfig;
+import samophis.kunou.core.modules.Module;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class DedicatedLaneModuleExecutor implements ModuleExecutor {
+    private final ModuleExecutor delegate;
+    private final Set<String> pinned;
+    private final Map<String, ExecutorService> lanes;
+    DedicatedLaneModuleExecutor(@Nonnull ModuleExecutor delegate, @Nonnull String... moduleNames) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.pinned = ConcurrentHashMap.newKeySet();
+        for (String name : Objects.requireNonNull(moduleNames))
+            pinned.add(Objects.requireNonNull(name));
+        this.lanes = new ConcurrentHashMap<>();
+    }
+    @Nonnull
+    @Override
+    public Executor getLane(@Nonnull Module module) {
+        String name = module.getName();
+        if (!pinned.contains(name))
+            return delegate.getLane(module);
+        /* -- lanes are created lazily and reused, so a re-added module with the same name keeps its thread -- */
+        return lanes.computeIfAbsent(name, key -> Executors.newSingleThreadExecutor(new ModuleThreadFactory("ModuleLane-" + key)));
+    }
+    @Nonnull
+    @Override
+    public Executor getLane(@Nonnull Module module, @Nonnull MailboxConfig config) {
+        Objects.requireNonNull(config);
+        /* -- a pinned module has its thread to itself, so there's nothing to share fairly -- */
+        return pinned.contains(module.getName()) ? getLane(module) : delegate.getLane(module, config);
+    }
+    @Override
+    public long getTimeSliceNanos() {
+        return delegate.getTimeSliceNanos();
+    }
+    @Nonnull
+    @Override
+    public ExecutorStats getStats() {
+        ExecutorStats stats = delegate.getStats();
+        for (ExecutorService lane : lanes.values())
+            stats = stats.plus(ModuleThreadFactory.statsOf(lane));
+        return stats;
+    }
+    @Override
+    public void shutdown() {
+        lanes.values().forEach(ExecutorService::shutdown);
+        delegate.shutdown();
+    }
+    @Override
+    public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService lane : lanes.values()) {
+            if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+                return false;
+        }
+        return delegate.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+}
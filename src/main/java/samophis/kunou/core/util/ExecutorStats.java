@@ -0,0 +1,50 @@
+package samophis.kunou.core.util;
+
+/**
+ * An immutable, point-in-time snapshot of the pool statistics of a {@link ModuleExecutor ModuleExecutor}. Unknown values are {@code -1}.
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class ExecutorStats {
+    /** The statistics reported by executors that can't tell anything about their pools. */
+    public static final ExecutorStats UNKNOWN = new ExecutorStats(-1, -1, -1, -1);
+    private final int poolSize;
+    private final int activeThreads;
+    private final long queuedTasks;
+    private final long completedTasks;
+    public ExecutorStats(int poolSize, int activeThreads, long queuedTasks, long completedTasks) {
+        this.poolSize = poolSize;
+        this.activeThreads = activeThreads;
+        this.queuedTasks = queuedTasks;
+        this.completedTasks = completedTasks;
+    }
+    public int getPoolSize() {
+        return poolSize;
+    }
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+    public long getQueuedTasks() {
+        return queuedTasks;
+    }
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    /**
+     * Adds up two snapshots, for executors made of several pools. Unknown values stay unknown.
+     * @param other The <b>not-null</b> snapshot to add to this one.
+     * @return A brand new snapshot holding the sums.
+     */
+    public ExecutorStats plus(ExecutorStats other) {
+        return new ExecutorStats(sum(poolSize, other.poolSize), sum(activeThreads, other.activeThreads), sum(queuedTasks, other.queuedTasks), sum(completedTasks, other.completedTasks));
+    }
+    private static int sum(int first, int second) {
+        return first < 0 || second < 0 ? -1 : first + second;
+    }
+    private static long sum(long first, long second) {
+        return first < 0 || second < 0 ? -1 : first + second;
+    }
+}
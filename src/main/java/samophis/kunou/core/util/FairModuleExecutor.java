@@ -0,0 +1,306 @@
+package samophis.kunou.core.util;
+
+import samophis.kunou.core.modules.MailboxConfig;
+import samophis.kunou.core.modules.Module;
+import samophis.kunou.core.modules.SchedulingClass;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed pool of threads sharing their time between modules by {@link SchedulingClass SchedulingClass} and {@link MailboxConfig#getWeight() weight}, rather than in arrival order.
+ * <br><p>Every module gets a lane of its own, which runs its tasks one at a time. Lanes with work wait in the run queue of their class. A free thread serves the most urgent class
+ * whose budget for the current round isn't spent yet, and a new round -- topping up every class with work by its weight in time slices -- only begins once none is left.
+ * Within a class, lanes are served in order of their virtual time, which advances by whatever a task ran for divided by the lane's weight -- so lanes share the class in proportion
+ * to their weights even while several of them run at once, which plain round-robin credits can't account for.
+ * <br>Run time is measured, not assumed, so a module handling expensive messages gets fewer turns, not more time. A lane can't fall more than a few time slices behind the class,
+ * and a class can't overdraw more than one round, so a single slow call doesn't lock a module (or a whole class) out for long. Lanes waking up start at the current virtual time,
+ * so being idle earns no credit.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+class FairModuleExecutor implements ModuleExecutor {
+    /* -- enough to keep weights proportional for events a few times longer than a time slice -- */
+    private static final int MAX_LAG_SLICES = 8;
+    private static final Comparator<Lane> VIRTUAL_TIME_ORDER = (first, second) -> {
+        int order = Long.compare(first.virtualTime, second.virtualTime);
+        return order != 0 ? order : Long.compare(first.ticket, second.ticket);
+    };
+    private final int threads;
+    private final long timeSliceNanos;
+    private final ThreadFactory factory;
+    private final boolean owned;
+    private final RunQueue[] classes;
+    private final ReentrantLock lock;
+    private final Condition work;
+    private final Condition terminated;
+    private final Set<Thread> workers;
+    /* -- everything below is guarded by the lock -- */
+    private int idle;
+    private int running;
+    private int runnable;
+    private long queued;
+    private long completed;
+    /* -- breaks ties between lanes with the same virtual time in the order they were queued -- */
+    private long tickets;
+    private boolean shutdown;
+    FairModuleExecutor(int threads, long timeSliceNanos, @Nonnull ThreadFactory factory, boolean owned) {
+        this.threads = threads;
+        this.timeSliceNanos = timeSliceNanos;
+        this.factory = Objects.requireNonNull(factory);
+        this.owned = owned;
+        SchedulingClass[] values = SchedulingClass.values();
+        this.classes = new RunQueue[values.length];
+        for (SchedulingClass value : values)
+            classes[value.ordinal()] = new RunQueue(value.getWeight() * timeSliceNanos);
+        this.lock = new ReentrantLock();
+        this.work = lock.newCondition();
+        this.terminated = lock.newCondition();
+        this.workers = new HashSet<>();
+    }
+    @Nonnull
+    @Override
+    public Executor getLane(@Nonnull Module module) {
+        return getLane(module, MailboxConfig.unbounded());
+    }
+    @Nonnull
+    @Override
+    public Executor getLane(@Nonnull Module module, @Nonnull MailboxConfig config) {
+        Objects.requireNonNull(module);
+        return new Lane(classes[config.getSchedulingClass().ordinal()], config.getWeight());
+    }
+    @Override
+    public long getTimeSliceNanos() {
+        return timeSliceNanos;
+    }
+    @Nonnull
+    @Override
+    public ExecutorStats getStats() {
+        lock.lock();
+        try {
+            return new ExecutorStats(workers.size(), running, queued, completed);
+        } finally {
+            lock.unlock();
+        }
+    }
+    @Override
+    public void shutdown() {
+        /* -- the shared dispatcher belongs to the whole JVM and is only closed by the ModuleThreadExecutor shutdown hook -- */
+        if (!owned)
+            return;
+        lock.lock();
+        try {
+            shutdown = true;
+            work.signalAll();
+            if (workers.isEmpty())
+                terminated.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    void shutdownNow() {
+        lock.lock();
+        try {
+            shutdown = true;
+            for (RunQueue queue : classes) {
+                for (Lane lane : queue.lanes) {
+                    lane.queued = false;
+                    lane.tasks.clear();
+                }
+                queue.lanes.clear();
+            }
+            runnable = 0;
+            queued = 0;
+            for (Thread worker : workers)
+                worker.interrupt();
+            work.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    @Override
+    public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        if (!owned)
+            return true;
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!shutdown || !workers.isEmpty()) {
+                if (nanos <= 0)
+                    return false;
+                nanos = terminated.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    private void submit(@Nonnull Lane lane, @Nonnull Runnable task) {
+        lock.lock();
+        try {
+            if (shutdown)
+                throw new RejectedExecutionException("Executor is shut down!");
+            lane.tasks.add(task);
+            queued++;
+            /* -- a lane runs one task at a time; a running lane is put back by its worker, which knows what the task cost -- */
+            if (lane.running || lane.queued)
+                return;
+            RunQueue queue = lane.queue;
+            /* -- a class waking up gets a fresh budget right away, so its first task doesn't wait for the others to finish their round -- */
+            if (queue.active++ == 0)
+                queue.deficit = Math.min(queue.deficit, 0) + queue.quantum;
+            lane.virtualTime = Math.max(lane.virtualTime, queue.virtualTime);
+            requeue(lane);
+            if (idle > 0)
+                work.signal();
+            else if (workers.size() < threads)
+                startWorker();
+        } finally {
+            lock.unlock();
+        }
+    }
+    private void startWorker() {
+        Thread thread = factory.newThread(this::work);
+        workers.add(thread);
+        thread.start();
+    }
+    private void work() {
+        Lane lane = null;
+        long elapsed = 0;
+        for (;;) {
+            Runnable task;
+            lock.lock();
+            try {
+                if (lane != null)
+                    finish(lane, elapsed);
+                lane = next();
+                if (lane == null) {
+                    workers.remove(Thread.currentThread());
+                    if (workers.isEmpty())
+                        terminated.signalAll();
+                    return;
+                }
+                task = lane.tasks.poll();
+                queued--;
+                lane.running = true;
+                running++;
+            } finally {
+                lock.unlock();
+            }
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (Throwable throwable) {
+                Thread current = Thread.currentThread();
+                current.getUncaughtExceptionHandler().uncaughtException(current, throwable);
+            }
+            elapsed = System.nanoTime() - start;
+        }
+    }
+    @Nullable
+    private Lane next() {
+        for (;;) {
+            Lane lane = poll();
+            if (lane != null)
+                return lane;
+            if (shutdown)
+                return null;
+            idle++;
+            try {
+                work.await();
+            } catch (InterruptedException ignored) {
+                /* -- only shutdownNow interrupts workers, and the loop notices the shutdown on its own -- */
+            } finally {
+                idle--;
+            }
+        }
+    }
+    @Nullable
+    private Lane poll() {
+        if (runnable == 0)
+            return null;
+        for (;;) {
+            for (RunQueue queue : classes) {
+                if (!queue.lanes.isEmpty() && queue.deficit > 0) {
+                    runnable--;
+                    return queue.poll();
+                }
+            }
+            /* -- every class waiting for a thread has spent its budget, so a new round begins; classes that are only running get topped up too, or they'd miss rounds while busy -- */
+            for (RunQueue queue : classes) {
+                if (queue.active > 0)
+                    queue.deficit = Math.min(queue.deficit + queue.quantum, queue.quantum);
+            }
+        }
+    }
+    private void finish(@Nonnull Lane lane, long elapsed) {
+        RunQueue queue = lane.queue;
+        running--;
+        completed++;
+        lane.running = false;
+        queue.deficit = Math.max(queue.deficit - elapsed, -queue.quantum);
+        lane.virtualTime = Math.min(lane.virtualTime + elapsed / lane.weight, queue.virtualTime + MAX_LAG_SLICES * timeSliceNanos);
+        if (lane.tasks.isEmpty())
+            queue.active--;
+        else
+            requeue(lane);
+    }
+    private void requeue(@Nonnull Lane lane) {
+        lane.ticket = tickets++;
+        lane.queue.lanes.add(lane);
+        lane.queued = true;
+        runnable++;
+    }
+    private static final class RunQueue {
+        private final PriorityQueue<Lane> lanes;
+        private final long quantum;
+        private long deficit;
+        /* -- the virtual time of the lane served last, which only ever moves forward -- */
+        private long virtualTime;
+        /* -- lanes of this class that are queued or running -- */
+        private int active;
+        private RunQueue(long quantum) {
+            this.lanes = new PriorityQueue<>(VIRTUAL_TIME_ORDER);
+            this.quantum = quantum;
+        }
+        @Nonnull
+        private Lane poll() {
+            Lane lane = lanes.poll();
+            lane.queued = false;
+            virtualTime = Math.max(virtualTime, lane.virtualTime);
+            return lane;
+        }
+    }
+    private final class Lane implements Executor {
+        private final RunQueue queue;
+        private final int weight;
+        private final ArrayDeque<Runnable> tasks;
+        private long virtualTime;
+        private long ticket;
+        private boolean queued;
+        private boolean running;
+        private Lane(@Nonnull RunQueue queue, int weight) {
+            this.queue = queue;
+            this.weight = weight;
+            this.tasks = new ArrayDeque<>(2);
+        }
+        @Override
+        public void execute(@Nonnull Runnable task) {
+            submit(this, Objects.requireNonNull(task));
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package samophis.kunou.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A timer running any amount of delayed tasks on a single thread, with O(1) scheduling and cancellation.
+ * <br><p>Time is split into ticks, and the wheel is a ring of buckets, one per tick. A task lands in the bucket of the tick it expires in (plus however many full turns
+ * of the wheel it still has to wait), so scheduling never sorts anything, no matter how many tasks are pending. Scheduling and cancelling from other threads only push the task
+ * onto a lock-free {@link MpscQueue MpscQueue}; the timer thread moves it into (or out of) its bucket on the next tick.
+ * <br><br>The price is precision: tasks run on the first tick at or after their deadline, so they may run up to one tick late, and never early.
+ * Tasks run on the timer thread itself, so they must be short and must never block -- handing work off to a mailbox is exactly right.
+ * <br>The timer thread is a daemon, started on the first {@link #newTimeout(Runnable, long, TimeUnit) newTimeout}, and stops for good on {@link #stop()}.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class HashedWheelTimer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimer.class);
+    /** The tick duration used by {@link #HashedWheelTimer(String)}, in milliseconds. */
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    /** The amount of buckets used by {@link #HashedWheelTimer(String)}. */
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+    /* -- caps how many new timeouts one tick moves into the wheel, so a flood of them can't stall expiry -- */
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+    private static final int INIT = 0;
+    private static final int STARTED = 1;
+    private static final int STOPPED = 2;
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final MpscQueue<Timeout> additions;
+    private final MpscQueue<Timeout> cancellations;
+    private final AtomicInteger workerState;
+    private final AtomicLong pending;
+    private final CountDownLatch started;
+    private volatile long startTime;
+    private volatile Thread worker;
+    /* -- only ever touched by the timer thread, and read by stop once it's gone -- */
+    private long tick;
+    private long dropped;
+
+    /**
+     * Creates a new timer ticking every {@value #DEFAULT_TICK_MILLIS} milliseconds, with a wheel of {@value #DEFAULT_TICKS_PER_WHEEL} buckets.
+     * @param name The <b>not-null</b> name of the timer thread.
+     * @throws NullPointerException If {@code name} is null.
+     */
+    public HashedWheelTimer(@Nonnull String name) {
+        this(name, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    /**
+     * Creates a new timer.
+     * @param name The <b>not-null</b> name of the timer thread.
+     * @param tickDuration How long a tick lasts, i.e. the precision of the timer. Must be positive.
+     * @param unit The <b>not-null</b> unit of {@code tickDuration}.
+     * @param ticksPerWheel The amount of buckets in the wheel. Rounded up to a power of two. Must be positive and at most 2^30.
+     * @throws NullPointerException If {@code name} or {@code unit} are null.
+     * @throws IllegalArgumentException If {@code tickDuration} or {@code ticksPerWheel} are out of range.
+     */
+    public HashedWheelTimer(@Nonnull String name, long tickDuration, @Nonnull TimeUnit unit, int ticksPerWheel) {
+        this.name = Objects.requireNonNull(name);
+        Objects.requireNonNull(unit);
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException("tickDuration <= 0");
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30))
+            throw new IllegalArgumentException("ticksPerWheel out of range: " + ticksPerWheel);
+        int size = Integer.highestOneBit(ticksPerWheel) == ticksPerWheel ? ticksPerWheel : Integer.highestOneBit(ticksPerWheel) << 1;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            wheel[i] = new Bucket();
+        this.mask = size - 1;
+        this.additions = new MpscQueue<>();
+        this.cancellations = new MpscQueue<>();
+        this.workerState = new AtomicInteger(INIT);
+        this.pending = new AtomicLong(0);
+        this.started = new CountDownLatch(1);
+    }
+
+    /**
+     * Schedules a task to run once, after a delay.
+     * @param task The <b>not-null</b> task to run on the timer thread. Exceptions it throws are logged and otherwise ignored.
+     * @param delay How long to wait before running {@code task}. Zero or negative delays run it on the next tick.
+     * @param unit The <b>not-null</b> unit of {@code delay}.
+     * @return A <b>not-null</b> {@link Timeout Timeout} that can cancel the task.
+     * @throws NullPointerException If {@code task} or {@code unit} are null.
+     * @throws IllegalStateException If this timer was stopped.
+     */
+    @Nonnull
+    public Timeout newTimeout(@Nonnull Runnable task, long delay, @Nonnull TimeUnit unit) {
+        Objects.requireNonNull(task);
+        Objects.requireNonNull(unit);
+        start();
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(0, delay)) - startTime;
+        /* -- guards against overflow on absurdly long delays -- */
+        if (delay > 0 && deadline < 0)
+            deadline = Long.MAX_VALUE;
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.incrementAndGet();
+        additions.offer(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns the amount of tasks scheduled but not yet run or cancelled.
+     * @return The amount of pending tasks.
+     */
+    public long getPendingTimeouts() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the timer thread for good. Pending tasks are cancelled and never run; scheduling anything afterwards fails.
+     * <br><p>Calling this more than once, or from a task running on the timer thread, is harmless.</p>
+     * @return The amount of pending tasks that were cancelled.
+     */
+    public long stop() {
+        if (workerState.getAndSet(STOPPED) != STARTED)
+            return 0;
+        Thread current = worker;
+        /* -- the loop exits once this task returns, so everything still pending is dropped anyway -- */
+        if (current == Thread.currentThread())
+            return pending.get();
+        current.interrupt();
+        boolean interrupted = false;
+        while (current.isAlive()) {
+            try {
+                current.join(100);
+            } catch (InterruptedException exc) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        /* -- join makes everything the timer thread wrote visible here -- */
+        return dropped;
+    }
+    private void start() {
+        switch (workerState.get()) {
+            case INIT:
+                if (workerState.compareAndSet(INIT, STARTED)) {
+                    Thread thread = new Thread(this::work, name);
+                    /* -- pending timers must never keep the JVM alive on their own -- */
+                    thread.setDaemon(true);
+                    thread.setUncaughtExceptionHandler((thrd, thrw) -> LOGGER.error("Uncaught Exception in {}: ", thrd.getName(), thrw));
+                    worker = thread;
+                    thread.start();
+                }
+                break;
+            case STARTED:
+                break;
+            default:
+                throw new IllegalStateException("Timer " + name + " was stopped!");
+        }
+        /* -- deadlines are relative to the start time, so wait until the timer thread has set it -- */
+        while (startTime == 0) {
+            try {
+                started.await();
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while starting timer " + name + "!", exc);
+            }
+        }
+    }
+    private void work() {
+        long now = System.nanoTime();
+        startTime = now == 0 ? 1 : now;
+        started.countDown();
+        while (workerState.get() == STARTED) {
+            long deadline = waitForNextTick();
+            if (deadline < 0)
+                continue;
+            processCancellations();
+            transferAdditions();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+        /* -- everything still pending is dropped; cancel it so owners see it'll never run -- */
+        for (Bucket bucket : wheel)
+            bucket.clear();
+        Timeout timeout;
+        while ((timeout = additions.poll()) != null)
+            timeout.discard();
+        while (cancellations.poll() != null) {
+            /* -- already cancelled and counted down -- */
+        }
+    }
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long current = System.nanoTime() - startTime;
+            long sleepMillis = (deadline - current + 999999) / 1000000;
+            if (sleepMillis <= 0)
+                return current;
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException exc) {
+                if (workerState.get() == STOPPED)
+                    return -1;
+            }
+        }
+    }
+    private void processCancellations() {
+        Timeout timeout;
+        while ((timeout = cancellations.poll()) != null) {
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+    private void transferAdditions() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = additions.poll();
+            if (timeout == null)
+                return;
+            if (timeout.state != Timeout.ST_INIT)
+                continue;
+            long ticks = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            /* -- anything already overdue goes into the current bucket and expires right away -- */
+            wheel[(int) (Math.max(ticks, tick) & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * A task scheduled on a {@link HashedWheelTimer HashedWheelTimer}.
+     *
+     * @author SamOphis
+     * @since 0.2
+     */
+    public static final class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline;
+        private volatile int state;
+        /* -- the fields below are only ever touched by the timer thread -- */
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+        private Timeout(@Nonnull HashedWheelTimer timer, @Nonnull Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task, if it hasn't run yet. It's removed from the wheel on the next tick.
+         * @return Whether or not this call cancelled the task (false if it already ran or was cancelled).
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_CANCELLED))
+                return false;
+            timer.pending.decrementAndGet();
+            timer.cancellations.offer(this);
+            return true;
+        }
+
+        /**
+         * Checks whether or not the task was cancelled, either explicitly or because the timer was stopped.
+         * @return Whether or not the task was cancelled.
+         */
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        /**
+         * Checks whether or not the task already ran (or is running right now).
+         * @return Whether or not the task expired.
+         */
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+        private void expire() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_EXPIRED))
+                return;
+            timer.pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable throwable) {
+                LOGGER.error("Timer task failed in {}: ", timer.name, throwable);
+            }
+        }
+        private void discard() {
+            if (STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                timer.pending.decrementAndGet();
+                timer.dropped++;
+            }
+        }
+    }
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+        private void add(@Nonnull Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+                return;
+            }
+            tail.next = timeout;
+            timeout.prev = tail;
+            tail = timeout;
+        }
+        private void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= deadline)
+                        timeout.expire();
+                    else
+                        LOGGER.error("Timeout expired in the wrong bucket! Deadline = {}, tick deadline = {}", timeout.deadline, deadline);
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+        private void remove(@Nonnull Timeout timeout) {
+            /* -- already expired or moved out (e.g. cancelled right after running) -- */
+            if (timeout.bucket != this)
+                return;
+            if (timeout.prev != null)
+                timeout.prev.next = timeout.next;
+            else
+                head = timeout.next;
+            if (timeout.next != null)
+                timeout.next.prev = timeout.prev;
+            else
+                tail = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+        private void clear() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.discard();
+                timeout.prev = null;
+                timeout.next = null;
+                timeout.bucket = null;
+                timeout = next;
+            }
+            head = tail = null;
+        }
+    }
+}
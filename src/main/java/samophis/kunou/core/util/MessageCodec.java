@@ -0,0 +1,216 @@
+package samophis.kunou.core.util;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import samophis.kunou.core.modules.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Turns message payloads into compact binary records and back, for anything that has to carry them outside of the JVM's heap: durable mailboxes journal them
+ * and remote modules send them to another process.
+ * <br><p>A record is a type tag followed by the payload. Strings are stored as UTF-8 with a length prefix, byte buffers as their remaining bytes, and batches as a count
+ * followed by their elements. Follow-up code and reply channels live only in memory, so they're never part of a record. Records are read back in order from a heap buffer, so several of them can be written back to back.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class MessageCodec {
+    private static final byte STRINGS = 1;
+    private static final byte MESSAGE_STRINGS = 2;
+    private static final byte MESSAGE_STRING = 3;
+    private static final byte MESSAGE_BUFFER = 4;
+    private static final byte BATCH = 5;
+    private static final byte PUBLISHED = 6;
+    private MessageCodec() {}
+
+    /**
+     * Checks whether or not a payload can be turned into a record.
+     * <br><p>These are {@code String[]} arguments, batches of them (as a {@code List<String[]>}), {@link Message Messages} carrying a {@code String}, a {@code String[]} or a
+     * {@link ByteBuffer ByteBuffer}, and arrays of such messages.</p>
+     * @param payload The <b>not-null</b> payload.
+     * @return Whether or not {@link #encode(Object)} accepts the payload.
+     */
+    public static boolean isEncodable(@Nonnull Object payload) {
+        return sizeOf(payload) >= 0;
+    }
+
+    /**
+     * Turns a payload into a record.
+     * @param payload The <b>not-null</b> payload, which should be {@link #isEncodable(Object) encodable}.
+     * @return The <b>possibly-null</b> record; null if the payload can't be encoded.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static byte[] encode(@Nonnull Object payload) {
+        int size = sizeOf(payload);
+        if (size < 0)
+            return null;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        if (payload instanceof String[]) {
+            buffer.put(STRINGS);
+            putStrings(buffer, (String[]) payload);
+        } else if (payload instanceof Message) {
+            putMessage(buffer, (Message<?>) payload);
+        } else if (payload instanceof List) {
+            List<String[]> batch = (List<String[]>) payload;
+            buffer.put(BATCH).putInt(batch.size());
+            for (String[] args : batch)
+                putStrings(buffer, args);
+        } else {
+            Message<?>[] messages = (Message<?>[]) payload;
+            buffer.put(PUBLISHED).putInt(messages.length);
+            for (Message<?> message : messages)
+                putMessage(buffer, message);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reads the record at the position of a buffer back into its payload, leaving the position right after it.
+     * <br><p>Messages come back without their reply channel, batches as unmodifiable lists.</p>
+     * @param buffer The <b>not-null</b> heap buffer holding the record.
+     * @return The <b>not-null</b> payload.
+     * @throws IllegalStateException If the record has an unknown type.
+     * @throws java.nio.BufferUnderflowException If the record is cut short.
+     */
+    @Nonnull
+    public static Object decode(@Nonnull ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case STRINGS:
+                return getStrings(buffer);
+            case BATCH:
+                int size = buffer.getInt();
+                ObjectArrayList<String[]> batch = new ObjectArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    batch.add(getStrings(buffer));
+                return Collections.unmodifiableList(batch);
+            case PUBLISHED:
+                Message<?>[] messages = new Message<?>[buffer.getInt()];
+                for (int i = 0; i < messages.length; i++)
+                    messages[i] = getMessage(buffer, buffer.get());
+                return messages;
+            default:
+                return getMessage(buffer, type);
+        }
+    }
+    private static int sizeOf(@Nonnull Object payload) {
+        if (payload instanceof String[])
+            return 1 + sizeOf((String[]) payload);
+        if (payload instanceof Message)
+            return sizeOf((Message<?>) payload);
+        if (payload instanceof List) {
+            int size = 5;
+            for (Object args : (List<?>) payload)
+                size += sizeOf((String[]) args);
+            return size;
+        }
+        if (payload instanceof Message[]) {
+            int size = 5;
+            for (Message<?> message : (Message<?>[]) payload) {
+                int messageSize = sizeOf(message);
+                if (messageSize < 0)
+                    return -1;
+                size += messageSize;
+            }
+            return size;
+        }
+        return -1;
+    }
+    private static int sizeOf(@Nonnull Message<?> message) {
+        Object payload = message.getPayload();
+        if (payload instanceof String[])
+            return 1 + sizeOf((String[]) payload);
+        if (payload instanceof String)
+            return 5 + utf8Length((String) payload);
+        if (payload instanceof ByteBuffer)
+            return 5 + ((ByteBuffer) payload).remaining();
+        return -1;
+    }
+    private static int sizeOf(@Nonnull String[] args) {
+        int size = 4;
+        for (String arg : args)
+            size += 4 + (arg == null ? 0 : utf8Length(arg));
+        return size;
+    }
+    private static int utf8Length(@Nonnull String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                /* -- lone surrogates are encoded as '?', which takes one byte, but three is a safe upper bound and putString writes the real length -- */
+                length += 3;
+            }
+        }
+        return length;
+    }
+    private static void putMessage(@Nonnull ByteBuffer buffer, @Nonnull Message<?> message) {
+        Object payload = message.getPayload();
+        if (payload instanceof String[]) {
+            buffer.put(MESSAGE_STRINGS);
+            putStrings(buffer, (String[]) payload);
+        } else if (payload instanceof String) {
+            buffer.put(MESSAGE_STRING);
+            putString(buffer, (String) payload);
+        } else {
+            ByteBuffer contents = message.asBuffer();
+            buffer.put(MESSAGE_BUFFER).putInt(contents.remaining()).put(contents);
+        }
+    }
+    private static void putStrings(@Nonnull ByteBuffer buffer, @Nonnull String[] args) {
+        buffer.putInt(args.length);
+        for (String arg : args) {
+            if (arg == null)
+                buffer.putInt(-1);
+            else
+                putString(buffer, arg);
+        }
+    }
+    private static void putString(@Nonnull ByteBuffer buffer, @Nonnull String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+    @Nonnull
+    private static Message<?> getMessage(@Nonnull ByteBuffer buffer, byte type) {
+        switch (type) {
+            case MESSAGE_STRINGS:
+                return Message.ofStrings(getStrings(buffer));
+            case MESSAGE_STRING:
+                return Message.of(getString(buffer, buffer.getInt()));
+            case MESSAGE_BUFFER:
+                byte[] contents = new byte[buffer.getInt()];
+                buffer.get(contents);
+                return Message.ofBuffer(ByteBuffer.wrap(contents));
+            default:
+                throw new IllegalStateException("Unknown record type: " + type);
+        }
+    }
+    @Nonnull
+    private static String[] getStrings(@Nonnull ByteBuffer buffer) {
+        String[] args = new String[buffer.getInt()];
+        for (int i = 0; i < args.length; i++) {
+            int length = buffer.getInt();
+            args[i] = length < 0 ? null : getString(buffer, length);
+        }
+        return args;
+    }
+    @Nonnull
+    private static String getString(@Nonnull ByteBuffer buffer, int length) {
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
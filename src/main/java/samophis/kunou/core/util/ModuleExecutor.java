@@ -0,0 +1,178 @@
+package samophis.kunou.core.util;
+
+import samophis.kunou.core.modules.MailboxConfig;
+import samophis.kunou.core.modules.Module;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The execution engine a {@link samophis.kunou.core.modules.ModuleLoader ModuleLoader} drains its module mailboxes on.
+ * <br><p>Every loader owns exactly one ModuleExecutor, which hands each {@link Module Module} the {@link Executor Executor} ("lane") its events run on.
+ * Several modules usually share a lane, but implementations are free to give a module one of its own -- see {@link #withDedicatedLanes(ModuleExecutor, String...)}.
+ * <br><br>Built-in strategies are provided through the static factory methods below; custom ones only have to implement the three methods of this interface.</p>
+ *
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public interface ModuleExecutor {
+    /** The {@link #getTimeSliceNanos() time slice} of the built-in executors: one millisecond. */
+    long DEFAULT_TIME_SLICE_NANOS = 1_000_000L;
+
+    /**
+     * Returns the lane the events of a {@link Module Module} should be executed on.
+     * <br><p>This is called once, when the module is added to its loader, so implementations don't have to cache anything themselves.</p>
+     * @param module The <b>not-null</b> {@link Module Module} that needs a lane.
+     * @return The <b>not-null</b> {@link Executor Executor} every event of this module will be executed on.
+     * @throws NullPointerException If {@code module} is null.
+     */
+    @Nonnull
+    Executor getLane(@Nonnull Module module);
+
+    /**
+     * Returns the lane the events of a {@link Module Module} should be executed on, knowing the config of its mailbox.
+     * <br><p>This is what loaders actually call. By default it ignores {@code config}; {@link #newFairThreadPool(int) fair executors} use its
+     * {@link MailboxConfig#getSchedulingClass() scheduling class} and {@link MailboxConfig#getWeight() weight}.</p>
+     * @param module The <b>not-null</b> {@link Module Module} that needs a lane.
+     * @param config The <b>not-null</b> {@link MailboxConfig MailboxConfig} of its mailbox.
+     * @return The <b>not-null</b> {@link Executor Executor} every event of this module will be executed on.
+     * @throws NullPointerException If {@code module} or {@code config} are null.
+     */
+    @Nonnull
+    default Executor getLane(@Nonnull Module module, @Nonnull MailboxConfig config) {
+        Objects.requireNonNull(config);
+        return getLane(module);
+    }
+
+    /**
+     * Returns how long a mailbox may keep draining its backlog before handing its thread back, so other modules get their turn.
+     * <br><p>A drain stops at whichever comes first: this much time, or a fixed amount of events. An event that's already running is never interrupted.</p>
+     * @return The time slice in nanoseconds, {@value #DEFAULT_TIME_SLICE_NANOS} by default.
+     */
+    default long getTimeSliceNanos() {
+        return DEFAULT_TIME_SLICE_NANOS;
+    }
+
+    /**
+     * Stops this executor from accepting new work. Work that was already handed to a lane still runs to completion.
+     */
+    void shutdown();
+
+    /**
+     * Blocks until every lane has finished its work after a {@link #shutdown()}, the timeout elapses or the current thread is interrupted -- whichever happens first.
+     * @param timeout The maximum amount of time to wait.
+     * @param unit The <b>not-null</b> unit of {@code timeout}.
+     * @return Whether or not this executor fully terminated before the timeout elapsed.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Returns a point-in-time snapshot of the statistics of this executor's pools, used for metrics.
+     * <br><p>By default this returns {@link ExecutorStats#UNKNOWN}; the built-in executors all report real values.</p>
+     * @return A <b>not-null</b> statistics snapshot.
+     */
+    @Nonnull
+    default ExecutorStats getStats() {
+        return ExecutorStats.UNKNOWN;
+    }
+
+    /**
+     * Returns the JVM-wide default executor, backed by the fixed dispatcher threads of {@link ModuleThreadExecutor ModuleThreadExecutor}.
+     * <br><p>The dispatcher threads are shared {@link #newFairThreadPool(int) fairly} between modules, by scheduling class and weight.
+     * <br>It's shared by every loader created without an explicit executor, so {@link #shutdown()} does nothing here. Its threads are daemon threads, so they never keep the JVM from exiting;
+     * loaders still using it are shut down gracefully by the JVM shutdown hook of {@link ModuleThreadExecutor ModuleThreadExecutor}.</p>
+     * @return The shared, default ModuleExecutor.
+     */
+    static ModuleExecutor getDefault() {
+        return ModuleThreadExecutor.SHARED;
+    }
+
+    /**
+     * Creates a new executor running every module on a bounded, fixed pool of threads.
+     * <br><p>Good general-purpose choice for CPU-heavy modules: the thread count never grows past {@code threads}.</p>
+     * @param threads The amount of threads in the pool. Must be positive.
+     * @return A brand new ModuleExecutor owning its own pool.
+     * @throws IllegalArgumentException If {@code threads} isn't positive.
+     */
+    static ModuleExecutor newFixedThreadPool(int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads <= 0");
+        return new PooledModuleExecutor(Executors.newFixedThreadPool(threads, new ModuleThreadFactory("ModuleWorker")));
+    }
+
+    /**
+     * Creates a new executor running every module on a bounded, fixed pool of threads shared fairly between modules, with the {@value #DEFAULT_TIME_SLICE_NANOS}-nanosecond time slice.
+     * @param threads The amount of threads in the pool. Must be positive.
+     * @return A brand new ModuleExecutor owning its own pool.
+     * @throws IllegalArgumentException If {@code threads} isn't positive.
+     * @see #newFairThreadPool(int, long, TimeUnit)
+     */
+    static ModuleExecutor newFairThreadPool(int threads) {
+        return newFairThreadPool(threads, DEFAULT_TIME_SLICE_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a new executor running every module on a bounded, fixed pool of threads shared fairly between modules.
+     * <br><p>Rather than draining mailboxes in the order they have work, threads serve the most urgent {@link samophis.kunou.core.modules.SchedulingClass SchedulingClass}
+     * that hasn't used up its share of the current round. Within a class, modules are served in order of their virtual time, which advances by what they ran for divided by
+     * their {@link MailboxConfig#getWeight() weight}, so they share the class in proportion to their weights.
+     * What a module runs for is measured and charged to it, so a saturated module with expensive messages can't push a latency-sensitive one back by more than a few time slices.
+     * <br>Both are set through {@link MailboxConfig#withScheduling(samophis.kunou.core.modules.SchedulingClass, int)}.</p>
+     * @param threads The amount of threads in the pool. Must be positive.
+     * @param timeSlice How long a module may run before another one gets its turn. Must be positive.
+     * @param unit The <b>not-null</b> unit of {@code timeSlice}.
+     * @return A brand new ModuleExecutor owning its own pool.
+     * @throws NullPointerException If {@code unit} is null.
+     * @throws IllegalArgumentException If {@code threads} or {@code timeSlice} aren't positive.
+     */
+    static ModuleExecutor newFairThreadPool(int threads, long timeSlice, @Nonnull TimeUnit unit) {
+        Objects.requireNonNull(unit);
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads <= 0");
+        if (timeSlice <= 0)
+            throw new IllegalArgumentException("timeSlice <= 0");
+        return new FairModuleExecutor(threads, unit.toNanos(timeSlice), new ModuleThreadFactory("ModuleFair"), true);
+    }
+
+    /**
+     * Creates a new executor running every module on a work-stealing {@link java.util.concurrent.ForkJoinPool ForkJoinPool} in asynchronous (FIFO) mode.
+     * <br><p>Mailbox drains are independent, never-joined tasks, which is exactly what async mode is tuned for. Idle workers steal queued drains from busy ones.</p>
+     * @param parallelism The target amount of worker threads. Must be positive.
+     * @return A brand new ModuleExecutor owning its own pool.
+     * @throws IllegalArgumentException If {@code parallelism} isn't positive.
+     */
+    static ModuleExecutor newWorkStealingPool(int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism <= 0");
+        return new PooledModuleExecutor(ModuleThreadFactory.newForkJoinPool("ModuleStealer", parallelism));
+    }
+
+    /**
+     * Creates a new executor starting a fresh virtual thread for every mailbox drain.
+     * <br><p>Meant for blocking-heavy modules (I/O, sleeping, waiting on locks) where parking a platform thread would be wasteful.
+     * Virtual threads only exist on Java 21 and newer, so this is resolved reflectively at runtime.</p>
+     * @return A brand new ModuleExecutor using virtual threads.
+     * @throws UnsupportedOperationException If the running JVM does not support virtual threads.
+     */
+    static ModuleExecutor newVirtualThreadExecutor() {
+        return new PooledModuleExecutor(ModuleThreadFactory.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Wraps another executor, pinning the named modules to single-threaded lanes of their own.
+     * <br><p>Pinned modules never compete with other modules for threads, which is useful for latency-critical or thread-affine modules.
+     * Every other module keeps using the lanes of {@code delegate}. Shutting down the returned executor also shuts down {@code delegate}.</p>
+     * @param delegate The <b>not-null</b> executor used for every module that isn't pinned.
+     * @param moduleNames The <b>not-null</b> names of the modules to pin.
+     * @return A new ModuleExecutor with dedicated lanes for the named modules.
+     * @throws NullPointerException If {@code delegate}, {@code moduleNames} or any of the names are null.
+     */
+    static ModuleExecutor withDedicatedLanes(@Nonnull ModuleExecutor delegate, @Nonnull String... moduleNames) {
+        return new DedicatedLaneModuleExecutor(delegate, moduleNames);
+    }
+}
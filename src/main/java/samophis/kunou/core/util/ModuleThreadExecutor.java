@@ -6,12 +6,19 @@ import samophis.kunou.core.exceptions.ModuleException;
 
 import javax.annotation.Nonnull;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * The executor class that submits new Module Threads, sets them up, handles the executor service and the thread counter.
+ * The executor class that submits new Module Threads, sets them up, handles the executor services and the thread counters.
+ * <br><p>Module events (start-ups, messages and shut-downs) are drained from per-module mailboxes by a small, fixed set of dispatcher threads,
+ * shared fairly between modules by {@link samophis.kunou.core.modules.SchedulingClass scheduling class} and weight, while ordinary asynchronous code submitted through {@link samophis.kunou.core.modules.Module#runAsync(Runnable) Module#runAsync} runs in a cached thread pool.
+ * <br>The dispatcher threads back {@link ModuleExecutor#getDefault()}; loaders can use their own execution strategy instead through {@link ModuleExecutor ModuleExecutor}.</p>
  *
  * @author SamOphis
  * @since 0.1
@@ -20,27 +27,108 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class ModuleThreadExecutor {
     private static final Logger LOGGER = LoggerFactory.getLogger(ModuleThreadExecutor.class);
     private static final AtomicInteger COUNTER = new AtomicInteger(0);
+    private static final AtomicInteger DISPATCHER_COUNTER = new AtomicInteger(0);
+    /* -- the counters above only name threads; this one tracks how many module threads are actually alive -- */
+    private static final AtomicInteger LIVE = new AtomicInteger(0);
+    private static final int DISPATCHER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /* -- set explicitly rather than inherited from whoever started the pool; fairness between modules is the dispatcher's job, not the OS scheduler's -- */
     private static final ExecutorService SERVICE = Executors.newCachedThreadPool(runnable -> {
-        Thread thread = new Thread(runnable);
-        thread.setPriority(Thread.MAX_PRIORITY);
+        Thread thread = new Thread(tracked(runnable));
+        thread.setPriority(Thread.NORM_PRIORITY);
         thread.setName("ModuleThread-" + COUNTER.getAndIncrement());
         thread.setDaemon(false);
-        thread.setUncaughtExceptionHandler((thrd, thrw) -> {
-            LOGGER.error("Uncaught Exception in {}: {}", thrd.getName(), thrw.getMessage());
-            throw new ModuleException(thrw);
-        });
+        thread.setUncaughtExceptionHandler((thrd, thrw) -> LOGGER.error("Uncaught Exception in {}: ", thrd.getName(), new ModuleException(thrw)));
         return thread;
     });
+    private static final FairModuleExecutor DISPATCHER = new FairModuleExecutor(DISPATCHER_THREADS, ModuleExecutor.DEFAULT_TIME_SLICE_NANOS, runnable -> {
+        Thread thread = new Thread(tracked(runnable));
+        thread.setPriority(Thread.NORM_PRIORITY);
+        thread.setName("ModuleDispatcher-" + DISPATCHER_COUNTER.getAndIncrement());
+        /* -- idle dispatchers wait for work forever and nothing ever shuts the shared pool down, so they mustn't keep the JVM alive; the shutdown hook still drains through them -- */
+        thread.setDaemon(true);
+        thread.setUncaughtExceptionHandler((thrd, thrw) -> LOGGER.error("Uncaught Exception in {}: {}", thrd.getName(), thrw.getMessage()));
+        return thread;
+    }, false);
+    static final ModuleExecutor SHARED = DISPATCHER;
+    private static final Set<Runnable> SHUTDOWN_TASKS = ConcurrentHashMap.newKeySet();
+    /**
+     * Runs ordinary code in the cached module thread pool.
+     * @param moduleMethod The <b>not-null</b> code to run asynchronously.
+     * @throws NullPointerException If {@code moduleMethod} is null.
+     */
+    public static void runModuleMethod(@Nonnull Runnable moduleMethod) {
+        /* -- execute, not submit: a submitted task's exception is captured in a Future nobody reads and never reaches the handler -- */
+        SERVICE.execute(Objects.requireNonNull(moduleMethod));
+    }
+
+    /**
+     * Runs ordinary code in the cached module thread pool.
+     * @param moduleMethod The <b>not-null</b> code to run asynchronously.
+     * @param shouldDecrementCounter Ignored. This used to decrement the thread naming counter, which never reflected how many threads were alive.
+     * @throws NullPointerException If {@code moduleMethod} is null.
+     * @deprecated Use {@link #runModuleMethod(Runnable)}, and {@link #getLiveThreadCount()} to count module threads.
+     */
+    @Deprecated
     public static void runModuleMethod(@Nonnull Runnable moduleMethod, boolean shouldDecrementCounter) {
-        SERVICE.submit(Objects.requireNonNull(moduleMethod));
-        if (shouldDecrementCounter)
-            COUNTER.decrementAndGet();
+        runModuleMethod(moduleMethod);
+    }
+
+    /**
+     * Returns the amount of module threads currently alive in the whole JVM, across the shared pools and every {@link ModuleExecutor ModuleExecutor} built by KunouCore.
+     * <br><p>Virtual threads and threads of custom executors aren't counted.</p>
+     * @return The amount of live module threads.
+     */
+    public static int getLiveThreadCount() {
+        return LIVE.get();
+    }
+    /**
+     * Registers code to run when the JVM shuts down, before the module threads are stopped -- loaders use it to {@link samophis.kunou.core.modules.ModuleLoader#shutdown(java.time.Duration) shut down} gracefully.
+     * <br><p>Every task runs in parallel on a module thread, and the threads are only stopped once all of them have returned, so a task should bound how long it blocks.</p>
+     * @param task The <b>not-null</b> task to run.
+     * @throws NullPointerException If {@code task} is null.
+     */
+    public static void addShutdownTask(@Nonnull Runnable task) {
+        SHUTDOWN_TASKS.add(Objects.requireNonNull(task));
+    }
+
+    /**
+     * Unregisters a task added through {@link #addShutdownTask(Runnable)}.
+     * @param task The <b>not-null</b> task to remove.
+     * @throws NullPointerException If {@code task} is null.
+     */
+    public static void removeShutdownTask(@Nonnull Runnable task) {
+        SHUTDOWN_TASKS.remove(Objects.requireNonNull(task));
+    }
+    @Nonnull
+    static Runnable tracked(@Nonnull Runnable runnable) {
+        return () -> {
+            threadStarted();
+            try {
+                runnable.run();
+            } finally {
+                threadStopped();
+            }
+        };
+    }
+    static void threadStarted() {
+        LIVE.incrementAndGet();
+    }
+    static void threadStopped() {
+        LIVE.decrementAndGet();
     }
     static {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             LOGGER.info("Shutting down ModuleThreadExecutor!");
+            /* -- the pools must still be running here: a graceful shutdown needs them to drain mailboxes and run onDeath -- */
+            CompletableFuture<?>[] tasks = SHUTDOWN_TASKS.stream().map(task -> CompletableFuture.runAsync(task, SERVICE)).toArray(CompletableFuture<?>[]::new);
+            try {
+                CompletableFuture.allOf(tasks).join();
+            } catch (CompletionException exc) {
+                LOGGER.error("A shutdown task failed: ", exc.getCause());
+            }
             if (!SERVICE.isShutdown())
                 SERVICE.shutdownNow();
+            DISPATCHER.shutdownNow();
         }));
     }
     private ModuleThreadExecutor() {}
@@ -0,0 +1,85 @@
+package samophis.kunou.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ModuleThreadFactory implements ThreadFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModuleThreadFactory.class);
+    /* -- every pool gets its own id so threads of different loaders can be told apart in thread dumps -- */
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger(0);
+    private final String prefix;
+    private final AtomicInteger counter;
+    ModuleThreadFactory(@Nonnull String name) {
+        this.prefix = Objects.requireNonNull(name) + "-" + POOL_COUNTER.getAndIncrement() + "-";
+        this.counter = new AtomicInteger(0);
+    }
+    @Override
+    public Thread newThread(@Nonnull Runnable runnable) {
+        Thread thread = new Thread(ModuleThreadExecutor.tracked(runnable));
+        thread.setName(prefix + counter.getAndIncrement());
+        thread.setDaemon(false);
+        thread.setUncaughtExceptionHandler(ModuleThreadFactory::logUncaught);
+        return thread;
+    }
+    @Nonnull
+    static ForkJoinPool newForkJoinPool(@Nonnull String name, int parallelism) {
+        ModuleThreadFactory names = new ModuleThreadFactory(name);
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = new TrackedWorkerThread(pool);
+            thread.setName(names.prefix + names.counter.getAndIncrement());
+            return thread;
+        }, ModuleThreadFactory::logUncaught, true);
+    }
+    @Nonnull
+    static ExecutorStats statsOf(@Nonnull ExecutorService service) {
+        if (service instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) service;
+            return new ExecutorStats(pool.getPoolSize(), pool.getActiveCount(), pool.getQueue().size(), pool.getCompletedTaskCount());
+        }
+        if (service instanceof ForkJoinPool) {
+            ForkJoinPool pool = (ForkJoinPool) service;
+            /* -- fork/join pools don't count completed tasks, so that one stays unknown -- */
+            return new ExecutorStats(pool.getPoolSize(), pool.getActiveThreadCount(), pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount(), -1);
+        }
+        return ExecutorStats.UNKNOWN;
+    }
+    @Nonnull
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException exc) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer!", exc);
+        } catch (IllegalAccessException | InvocationTargetException exc) {
+            throw new UnsupportedOperationException("Virtual threads could not be enabled!", exc);
+        }
+    }
+    private static void logUncaught(@Nonnull Thread thread, @Nonnull Throwable throwable) {
+        LOGGER.error("Uncaught Exception in {}: {}", thread.getName(), throwable.getMessage());
+    }
+    private static final class TrackedWorkerThread extends ForkJoinWorkerThread {
+        private TrackedWorkerThread(@Nonnull ForkJoinPool pool) {
+            super(pool);
+        }
+        @Override
+        protected void onStart() {
+            super.onStart();
+            ModuleThreadExecutor.threadStarted();
+        }
+        @Override
+        protected void onTermination(Throwable exception) {
+            ModuleThreadExecutor.threadStopped();
+            super.onTermination(exception);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package samophis.kunou.core.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A lock-free, unbounded, multi-producer single-consumer FIFO queue.
+ * <br><p>Any amount of threads may call {@link #offer(Object)} concurrently, but only <b>one</b> thread at a time may call {@link #poll()} or {@link #isEmpty()}.
+ * <br><br>Elements normally go into a preallocated ring: a producer claims a slot with one compare-and-set and never allocates.
+ * Only when the ring is full do elements spill into a linked overflow list (one atomic swap and one small node per element), which the consumer drains once the ring is empty.
+ * While anything is waiting in the overflow list, producers keep using it too, so every producer's elements are still consumed in the order it offered them.
+ * <br><br>A queue can be {@link #close() closed} once, after which every offer fails atomically: an element is either in the queue before it was closed, or never gets in at all.</p>
+ *
+ * @param <E> The type of elements held in this queue.
+ * @author SamOphis
+ * @since 0.2
+ */
+
+public final class MpscQueue<E> {
+    /** The ring capacity used by {@link #MpscQueue()}. */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /* -- set on the producer index once closed, so claiming a ring slot and closing the queue can't interleave -- */
+    private static final long CLOSED = Long.MIN_VALUE;
+    private static final int RING_FULL = 0;
+    private static final int RING_OK = 1;
+    private static final int RING_CLOSED = 2;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscQueue, Node> TAIL = AtomicReferenceFieldUpdater.newUpdater(MpscQueue.class, Node.class, "tail");
+    private final AtomicReferenceArray<E> ring;
+    private final int mask;
+    private final AtomicLong producerIndex;
+    private final AtomicLong consumerIndex;
+    private final AtomicInteger overflowed;
+    private volatile boolean closed;
+    private volatile Node<E> tail;
+    private Node<E> head;
+    public MpscQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new queue with a ring of a given capacity.
+     * @param capacity The amount of elements the ring holds before spilling into the overflow list. Rounded up to a power of two.
+     * @throws IllegalArgumentException If {@code capacity} isn't positive or is larger than 2^30.
+     */
+    public MpscQueue(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30))
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.producerIndex = new AtomicLong();
+        this.consumerIndex = new AtomicLong();
+        this.overflowed = new AtomicInteger();
+        Node<E> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = stub;
+    }
+
+    /**
+     * Adds an element to the end of this queue. Safe to call from any thread.
+     * @param element The <b>not-null</b> element to add.
+     * @return Whether or not the element was added, which is always the case unless this queue was {@link #close() closed}.
+     * @throws NullPointerException If {@code element} is null.
+     */
+    public boolean offer(@Nonnull E element) {
+        Objects.requireNonNull(element);
+        if (overflowed.get() == 0) {
+            int result = offerRing(element);
+            if (result != RING_FULL)
+                return result == RING_OK;
+        }
+        /* -- counted before linking, so no producer can slip into the ring ahead of this element -- */
+        overflowed.incrementAndGet();
+        /* -- checked after counting: close() sets the flag before the consumer's last emptiness check, so either this element is seen or this producer sees the flag -- */
+        if (closed) {
+            overflowed.decrementAndGet();
+            return false;
+        }
+        offerLinked(element);
+        return true;
+    }
+
+    /**
+     * Closes this queue, making every later {@link #offer(Object)} fail. Elements that were already offered stay in the queue and can still be polled.
+     * <br><p>Safe to call from any thread, but the consumer should only trust {@link #isEmpty()} to mean "drained for good" once this has returned.</p>
+     */
+    public void close() {
+        closed = true;
+        long index;
+        do {
+            index = producerIndex.get();
+            if ((index & CLOSED) != 0)
+                return;
+        } while (!producerIndex.compareAndSet(index, index | CLOSED));
+    }
+
+    /**
+     * Checks whether or not this queue was {@link #close() closed}.
+     * @return Whether or not this queue was closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Removes and returns the element at the front of this queue. <b>Must only be called by the consumer thread.</b>
+     * <br><p>If a producer has claimed its place in the ring but hasn't stored its element yet, this spins briefly until it has, so FIFO order is never broken.</p>
+     * @return The <b>possibly-null</b> element at the front of this queue, or null if it is empty.
+     */
+    @Nullable
+    public E poll() {
+        E element = pollRing();
+        if (element != null || overflowed.get() == 0)
+            return element;
+        element = pollLinked();
+        if (element != null)
+            overflowed.decrementAndGet();
+        return element;
+    }
+
+    /**
+     * Checks whether or not this queue is empty. <b>Must only be called by the consumer thread.</b>
+     * @return Whether or not this queue is empty.
+     */
+    public boolean isEmpty() {
+        return (producerIndex.get() & ~CLOSED) == consumerIndex.get() && overflowed.get() == 0;
+    }
+
+    /**
+     * Returns an estimate of the amount of elements in this queue. Safe to call from any thread.
+     * @return The approximate amount of queued elements.
+     */
+    public int size() {
+        long consumed = consumerIndex.get();
+        long size = (producerIndex.get() & ~CLOSED) - consumed + overflowed.get();
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size));
+    }
+    private int offerRing(@Nonnull E element) {
+        int capacity = mask + 1;
+        long index;
+        do {
+            index = producerIndex.get();
+            if ((index & CLOSED) != 0)
+                return RING_CLOSED;
+            if (index - consumerIndex.get() >= capacity)
+                return RING_FULL;
+        } while (!producerIndex.compareAndSet(index, index + 1));
+        ring.lazySet((int) (index & mask), element);
+        return RING_OK;
+    }
+    @Nullable
+    private E pollRing() {
+        long index = consumerIndex.get();
+        int offset = (int) (index & mask);
+        E element = ring.get(offset);
+        if (element == null) {
+            if (index == (producerIndex.get() & ~CLOSED))
+                return null;
+            while ((element = ring.get(offset)) == null)
+                Thread.yield();
+        }
+        ring.lazySet(offset, null);
+        consumerIndex.lazySet(index + 1);
+        return element;
+    }
+    @SuppressWarnings("unchecked")
+    private void offerLinked(@Nonnull E element) {
+        Node<E> node = new Node<>(element);
+        Node<E> previous = TAIL.getAndSet(this, node);
+        previous.next = node;
+    }
+    @Nullable
+    private E pollLinked() {
+        Node<E> next = head.next;
+        if (next == null) {
+            if (head == tail)
+                return null;
+            while ((next = head.next) == null)
+                Thread.yield();
+        }
+        E element = next.element;
+        next.element = null;
+        head = next;
+        return element;
+    }
+    private static final class Node<E> {
+        private E element;
+        private volatile Node<E> next;
+        private Node(@Nullable E element) {
+            this.element = element;
+        }
+    }
+}
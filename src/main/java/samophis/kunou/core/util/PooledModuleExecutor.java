@@ -0,0 +1,35 @@
+package samophis.kunou.core.util;
+
+import samophis.kunou.core.modules.Module;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class PooledModuleExecutor implements ModuleExecutor {
+    private final ExecutorService service;
+    PooledModuleExecutor(@Nonnull ExecutorService service) {
+        this.service = Objects.requireNonNull(service);
+    }
+    @Nonnull
+    @Override
+    public Executor getLane(@Nonnull Module module) {
+        Objects.requireNonNull(module);
+        return service;
+    }
+    @Nonnull
+    @Override
+    public ExecutorStats getStats() {
+        return ModuleThreadFactory.statsOf(service);
+    }
+    @Override
+    public void shutdown() {
+        service.shutdown();
+    }
+    @Override
+    public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        return service.awaitTermination(timeout, Objects.requireNonNull(unit));
+    }
+}